@@ -21,7 +21,11 @@
 package com.ongres.benchmark;
 
 import com.codahale.metrics.MetricFilter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
@@ -30,26 +34,40 @@ import com.ongres.benchmark.App.InitialValueAsDefaultValueProvider;
 import com.ongres.benchmark.config.ConfigUtils;
 import com.ongres.benchmark.config.Version;
 import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.distributed.Coordinator;
+import com.ongres.benchmark.distributed.IntervalRecorder;
+import com.ongres.benchmark.distributed.Worker;
 import com.ongres.benchmark.jdbc.ConnectionSupplier;
 import com.ongres.benchmark.jdbc.HikariConnectionSupplier;
 import com.ongres.benchmark.jdbc.PostgresConnectionSupplier;
+import com.ongres.benchmark.workload.Workload;
 import com.zaxxer.hikari.HikariConfig;
 
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionFactory;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -65,6 +83,7 @@ import picocli.CommandLine.IDefaultValueProvider;
 import picocli.CommandLine.Model.ArgSpec;
 import reactor.core.publisher.BaseSubscriber;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
@@ -148,15 +167,38 @@ public class App  extends Options implements Callable<Void> {
     try (Closer closer = Closer.create()) {
       updateLogLevel(closer);
 
+      if (getConfig().isCoordinator()) {
+        new Coordinator(getConfig()).run();
+        return;
+      }
+
+      final Worker worker = getConfig().isWorker() ? startWorker(closer) : null;
+
       final BenchmarkRunner benchmark;
       
       if (getConfig().getTargetType().equals("mongo")) {
         benchmark = createMongoBenchmark(closer);
+      } else if (getConfig().getTargetType().equals("mongo-reactive")) {
+        benchmark = createReactiveMongoBenchmark(closer);
       } else if (getConfig().getTargetType().equals("postgres")) {
         benchmark = createPostgresBenchmark(closer);
+      } else if (getConfig().getTargetType().equals("postgres-reactive")) {
+        benchmark = createReactivePostgresBenchmark(closer);
+      } else if (getConfig().getTargetType().equals("noop")) {
+        benchmark = createNoopBenchmark(closer);
       } else {
         throw new IllegalArgumentException("Unknown benchmark target type " 
-            + getConfig().getTargetType() + ". Must be postgres or mongo");
+            + getConfig().getTargetType() + ". Must be postgres, postgres-reactive, mongo,"
+            + " mongo-reactive or noop");
+      }
+      benchmark.setDrainTimeout(getConfig().getDrainTimeoutAsDuration());
+      if (!getConfig().getWorkloadAsImmutableMap().isEmpty()) {
+        Workload workload = Workload.create(getConfig().getTargetType(),
+            benchmark.getBenchmark(), getConfig().getWorkloadAsImmutableMap());
+        logger.info("Workload " + workload.getOperations().stream()
+            .map(operation -> operation.getName() + ":" + operation.getWeight())
+            .collect(Collectors.joining(", ")));
+        benchmark.setWorkload(workload);
       }
       
       if (!getConfig().isSkipSetup()) {
@@ -169,29 +211,79 @@ public class App  extends Options implements Callable<Void> {
         return;
       }
       
-      Scheduler scheduler = Schedulers.newParallel(
-          "benchmark", getConfig().getParallelism(), false);
-      closer.register(() -> Unchecked.runnable(() -> scheduler.dispose()).run());
-      CompletableFuture<Void> termination = new CompletableFuture<Void>();
+      if (getConfig().isPrewarm()) {
+        logger.info("Benchmark prewarm");
+        benchmark.prewarm();
+      }
+
+      if (getConfig().getReferenceCacheSize() > 0 && getConfig().isReferenceCachePreload()) {
+        logger.info("Benchmark reference cache preload");
+        benchmark.preload();
+      }
 
       if (!getConfig().getMetricsAsDuration().orElse(Duration.ZERO).isZero()) {
         logger.info("Starting collecting metrics");
         startMetrics(closer);
       }
 
-      AppSubscriber future = Flux.range(0, 
-          getConfig().getIterations() != null 
-          ? getConfig().getIterations() : Integer.MAX_VALUE)
-          .parallel(getConfig().getParallelism())
-          .runOn(scheduler)
-          .doOnNext(Unchecked.consumer(ii -> benchmark.run()))
-          .sequential()
-          .doOnDiscard(Integer.class, i -> termination.complete(null))
-          .doOnCancel(() -> termination.complete(null))
-          .doOnTerminate(() -> termination.complete(null))
-          .subscribeWith(new AppSubscriber());
+      if (getConfig().isVirtualThreads()) {
+        logger.info("Running simulated users on virtual threads, concurrent iterations"
+            + " limited to " + getConfig().getMaxConnections());
+        benchmark.setMaxConcurrentIterations(getConfig().getMaxConnections());
+      }
+
+      final ThinkTime thinkTime = ThinkTime.create(getConfig());
+      if (!thinkTime.isZero() && !thinkTime.isInsideTransaction()) {
+        if (isOpenLoop()) {
+          logger.warn("Think time outside transaction is ignored when target rate is set");
+        } else {
+          benchmark.setThinkTime(thinkTime);
+        }
+      }
+
+      if (getConfig().isSearch()) {
+        Preconditions.checkArgument(worker == null,
+            "Search is not supported by distributed workers");
+        search(benchmark);
+        return;
+      }
+
+      if (worker != null) {
+        worker.awaitStart();
+        IntervalRecorder intervalRecorder = new IntervalRecorder();
+        benchmark.setIntervalRecorder(intervalRecorder);
+        worker.startReporting(intervalRecorder);
+      }
+
+      final CompletableFuture<Void> warmup = startWarmup(benchmark);
+      final Future<Void> future;
+      final Future<Void> termination;
+      if (!getConfig().getStagesAsImmutableList().isEmpty()) {
+        LoadDriver driver = startStages(benchmark, closer);
+        future = driver;
+        termination = driver.getTermination();
+      } else if (getConfig().getTargetRate() != null) {
+        OpenLoopDriver driver = startOpenLoop(benchmark);
+        future = driver;
+        termination = driver.getTermination();
+      } else if (getConfig().isVirtualThreads()) {
+        ClosedLoopDriver driver = new ClosedLoopDriver(benchmark, getConfig().getParallelism(),
+            getConfig().getParallelism(), getIterations(), getThreadFactory())
+            .start();
+        future = driver;
+        termination = driver.getTermination();
+      } else {
+        CompletableFuture<Void> closedLoopTermination = new CompletableFuture<Void>();
+        future = startClosedLoop(benchmark, closer, closedLoopTermination);
+        termination = closedLoopTermination;
+      }
+      ReportingStream reporting = null;
       try {
+        if (warmup != null) {
+          awaitWarmup(benchmark, warmup, future);
+        }
         logger.info("Benchmark started");
+        reporting = startReporting(benchmark);
 
         if (getConfig().isDisableTransaction()) {
           logger.info("Transactions are disabled");
@@ -205,6 +297,10 @@ public class App  extends Options implements Callable<Void> {
           try {
             future.get(getConfig().getDurationAsDuration().get().toSeconds(), TimeUnit.SECONDS);
           } catch (TimeoutException ex) {
+            future.cancel(false);
+            if (reporting != null) {
+              reporting.close();
+            }
             benchmark.close();
             return;
           }
@@ -213,35 +309,230 @@ public class App  extends Options implements Callable<Void> {
         }
       } finally {
         if (!future.isDone()) {
-          future.cancel();
+          future.cancel(false);
+        }
+        if (reporting != null) {
+          reporting.close();
         }
         termination.get();
+        if (worker != null) {
+          worker.done();
+        }
         logger.info("Benchmark completed");
       }
     }
   }
 
+  private Worker startWorker(Closer closer) throws Exception {
+    final Worker worker = closer.register(Worker.connect(getConfig()));
+    final Worker.Assignment assignment = worker.awaitAssignment();
+    getConfig().setUserIdOffset(assignment.getUserIdOffset());
+    if (assignment.getIndex() != 0) {
+      getConfig().setSkipSetup(true);
+      getConfig().setPrewarm(false);
+    }
+    return worker;
+  }
+
+  private Future<Void> startClosedLoop(BenchmarkRunner benchmark, Closer closer,
+      CompletableFuture<Void> termination) {
+    if (benchmark.isReactive()) {
+      return startReactiveClosedLoop(benchmark, termination);
+    }
+    Scheduler scheduler = Schedulers.newParallel(
+        "benchmark", getConfig().getParallelism(), false);
+    closer.register(() -> Unchecked.runnable(() -> scheduler.dispose()).run());
+    return Flux.range(0, 
+        (int) Math.min(getIterations(), Integer.MAX_VALUE))
+        .parallel(getConfig().getParallelism())
+        .runOn(scheduler)
+        .doOnNext(Unchecked.consumer(ii -> benchmark.run()))
+        .sequential()
+        .onErrorResume(BenchmarkClosedException.class, ex -> Mono.empty())
+        .doOnDiscard(Integer.class, i -> termination.complete(null))
+        .doOnCancel(() -> termination.complete(null))
+        .doOnTerminate(() -> termination.complete(null))
+        .subscribeWith(new AppSubscriber());
+  }
+
+  private Future<Void> startReactiveClosedLoop(BenchmarkRunner benchmark,
+      CompletableFuture<Void> termination) {
+    return Flux.range(0, 
+        (int) Math.min(getIterations(), Integer.MAX_VALUE))
+        .flatMap(ii -> benchmark.runReactive().thenReturn(ii), getConfig().getParallelism())
+        .onErrorResume(BenchmarkClosedException.class, ex -> Mono.empty())
+        .doOnDiscard(Integer.class, i -> termination.complete(null))
+        .doOnCancel(() -> termination.complete(null))
+        .doOnTerminate(() -> termination.complete(null))
+        .subscribeWith(new AppSubscriber());
+  }
+
+  private LoadDriver startStages(BenchmarkRunner benchmark, Closer closer) {
+    LoadProfile profile = new LoadProfile(getConfig().getStagesAsImmutableList());
+    logger.info("Stages: " + profile.size() + (profile.isOpenLoop() 
+        ? " (target rate, " 
+            + getConfig().getArrivalDistributionAsEnum().name().toLowerCase(Locale.US)
+            + " arrivals)"
+        : " (parallelism)"));
+    final LoadDriver driver;
+    if (profile.isOpenLoop()) {
+      driver = new OpenLoopDriver(benchmark, getConfig().getParallelism(),
+          profile.getLoad(0), getConfig().getArrivalDistributionAsEnum(), getIterations(),
+          getThreadFactory())
+          .start();
+    } else {
+      driver = new ClosedLoopDriver(benchmark, 
+          Math.max(1, (int) Math.ceil(profile.getMaxLoad())),
+          (int) Math.round(profile.getLoad(0)), getIterations(), getThreadFactory())
+          .start();
+    }
+    closer.register(new StageController(profile, driver, benchmark).start());
+    return driver;
+  }
+
+  private OpenLoopDriver startOpenLoop(BenchmarkRunner benchmark) {
+    Preconditions.checkArgument(getConfig().getTargetRate() > 0,
+        "Target rate must be greater than 0");
+    logger.info("Target rate: " + getConfig().getTargetRate() + " iterations/s ("
+        + getConfig().getArrivalDistributionAsEnum().name().toLowerCase(Locale.US)
+        + " arrivals)");
+    return new OpenLoopDriver(benchmark, getConfig().getParallelism(),
+        getConfig().getTargetRate(), getConfig().getArrivalDistributionAsEnum(),
+        getIterations(), getThreadFactory())
+        .start();
+  }
+
+  private void search(BenchmarkRunner benchmark) throws Exception {
+    final boolean openLoop = getConfig().getTargetRate() != null;
+    final double initialLoad = openLoop
+        ? getConfig().getTargetRate() : getConfig().getParallelism();
+    logger.info("Searching max " + (openLoop ? "rate" : "parallelism") + " with p"
+        + getConfig().getSearchPercentile() + " response time under "
+        + getConfig().getSearchSloAsDuration() + " (window "
+        + getConfig().getSearchWindowAsDuration() + ")");
+    final LoadDriver driver;
+    if (openLoop) {
+      driver = new OpenLoopDriver(benchmark, getConfig().getParallelism(), 0,
+          getConfig().getArrivalDistributionAsEnum(), Long.MAX_VALUE, getThreadFactory())
+          .start();
+    } else {
+      driver = new ClosedLoopDriver(benchmark, (int) Math.ceil(getConfig().getSearchMaxLoad()),
+          0, Long.MAX_VALUE, getThreadFactory())
+          .start();
+    }
+    try {
+      SaturationSearch search = new SaturationSearch(benchmark, driver, openLoop,
+          initialLoad, getConfig());
+      ImmutableList<SaturationSearch.Point> points = search.run();
+      if (driver.isDone()) {
+        driver.get();
+      }
+      logger.info("Saturation curve:");
+      points.stream()
+          .sorted(Comparator.comparingDouble(SaturationSearch.Point::getLoad))
+          .forEach(logger::info);
+      Optional<SaturationSearch.Point> knee = SaturationSearch.getKnee(points);
+      if (knee.isPresent()) {
+        logger.info("Knee: " + knee.get());
+      } else {
+        logger.info("No load met the SLO");
+      }
+      search.writeCsv(points, Paths.get(".", "saturation-search.csv"));
+    } finally {
+      driver.stop();
+      driver.getTermination().get();
+      logger.info("Benchmark completed");
+    }
+  }
+
+  private ReportingStream startReporting(BenchmarkRunner benchmark) {
+    if (getConfig().getReportingParallelism() <= 0) {
+      return null;
+    }
+    Workload reports = Workload.createReports(getConfig().getTargetType(),
+        benchmark.getBenchmark());
+    logger.info("Reporting with " + getConfig().getReportingParallelism() + " streams: "
+        + reports.getOperations().stream()
+        .map(report -> report.getName())
+        .collect(Collectors.joining(", ")));
+    return ReportingStream.start(benchmark.getBenchmark(), reports,
+        getConfig().getReportingParallelism(), getConfig().getReportingPauseAsDuration());
+  }
+
+  private CompletableFuture<Void> startWarmup(BenchmarkRunner benchmark) {
+    if (!getConfig().getWarmupAsDuration().isPresent()
+        && getConfig().getWarmupIterations() == null) {
+      return null;
+    }
+    Preconditions.checkArgument(getConfig().getWarmupIterations() == null
+        || getConfig().getWarmupIterations() > 0,
+        "Warm-up iterations must be greater than 0");
+    logger.info("Warm-up started"
+        + getConfig().getWarmupAsDuration().map(d -> ", duration: " + d).orElse("")
+        + (getConfig().getWarmupIterations() != null
+        ? ", iterations: " + getConfig().getWarmupIterations() : ""));
+    return benchmark.startWarmup(getConfig().getWarmupIterations() != null
+        ? getConfig().getWarmupIterations() : Long.MAX_VALUE);
+  }
+
+  private void awaitWarmup(BenchmarkRunner benchmark, CompletableFuture<Void> warmup,
+      Future<Void> future) throws Exception {
+    final Optional<Duration> duration = getConfig().getWarmupAsDuration();
+    final long start = System.nanoTime();
+    while (!warmup.isDone() && !future.isDone()) {
+      long wait = TimeUnit.MILLISECONDS.toNanos(100);
+      if (duration.isPresent()) {
+        long remaining = duration.get().toNanos() - (System.nanoTime() - start);
+        if (remaining <= 0) {
+          break;
+        }
+        wait = Math.min(wait, remaining);
+      }
+      try {
+        warmup.get(wait, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException ex) {
+        continue;
+      }
+    }
+    benchmark.endWarmup();
+    logger.info("Warm-up completed");
+    MetricsManager.reportWarmup(getMetricFilter());
+  }
+
+  private boolean isOpenLoop() {
+    return getConfig().getTargetRate() != null
+        || getConfig().getStagesAsImmutableList().stream()
+        .anyMatch(stage -> stage.getTargetRate() != null);
+  }
+
+  private long getIterations() {
+    if (getConfig().getIterations() == null) {
+      return Long.MAX_VALUE;
+    }
+    return getConfig().getIterations() + (getConfig().getWarmupIterations() != null
+        ? getConfig().getWarmupIterations() : 0);
+  }
+
+  private ThreadFactory getThreadFactory() {
+    if (getConfig().isVirtualThreads()) {
+      return VirtualThreads.factory("benchmark-");
+    }
+    return new ThreadFactoryBuilder().setNameFormat("benchmark-%d").setDaemon(true).build();
+  }
+
   private void startMetrics(Closer closer) {
     Closeable metricsReporter;
     switch (getConfig().getMetricsReporterAsEnum()) {
       case CSV:
         metricsReporter = MetricsManager.startCsvReporter(getConfig().getMetricsAsDuration()
-            .get().getSeconds(), TimeUnit.SECONDS, 
-            getConfig().getMetricsFilterAsImmutableList().isEmpty() 
-            ? MetricFilter.ALL 
-            : (name, metric) -> getConfig()
-              .getMetricsFilterAsImmutableList().contains(name));
+            .get().getSeconds(), TimeUnit.SECONDS, getMetricFilter());
         break;
       case JXM:
         metricsReporter = MetricsManager.startJmxResporter();
         break;
       case LOG:
         metricsReporter = MetricsManager.startSlf4jReporter(getConfig().getMetricsAsDuration()
-            .get().getSeconds(), TimeUnit.SECONDS, 
-            getConfig().getMetricsFilterAsImmutableList().isEmpty() 
-                ? MetricFilter.ALL 
-                : (name, metric) -> getConfig()
-                  .getMetricsFilterAsImmutableList().contains(name));
+            .get().getSeconds(), TimeUnit.SECONDS, getMetricFilter());
         break;
       default:
         throw new IllegalArgumentException();
@@ -249,6 +540,14 @@ public class App  extends Options implements Callable<Void> {
     closer.register(metricsReporter);
   }
 
+  private MetricFilter getMetricFilter() {
+    if (getConfig().getMetricsFilterAsImmutableList().isEmpty()) {
+      return MetricFilter.ALL;
+    }
+    return (name, metric) -> getConfig().getMetricsFilterAsImmutableList().stream()
+        .anyMatch(filter -> name.equals(filter) || name.startsWith(filter + "."));
+  }
+
   public class AppSubscriber extends BaseSubscriber<Object> implements Future<Void> {
     private final CompletableFuture<Void> future = new CompletableFuture<Void>();
     
@@ -283,7 +582,8 @@ public class App  extends Options implements Callable<Void> {
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-      throw new UnsupportedOperationException();
+      cancel();
+      return true;
     }
 
     @Override
@@ -309,12 +609,23 @@ public class App  extends Options implements Callable<Void> {
   }
 
   private BenchmarkRunner createPostgresBenchmark(Closer closer) {
+    PostgresFlightBenchmark benchmark = createPostgresFlightBenchmark();
+    closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
+    return new BenchmarkRunner(benchmark);
+  }
+
+  private PostgresFlightBenchmark createPostgresFlightBenchmark() {
     Properties jdbcProperties = new Properties();
     PGProperty.PG_HOST.set(jdbcProperties, getConfig().getTarget().getDatabase().getHost());
     PGProperty.PG_PORT.set(jdbcProperties, getConfig().getTarget().getDatabase().getPort());
     PGProperty.PG_DBNAME.set(jdbcProperties, getConfig().getTarget().getDatabase().getName());
     PGProperty.USER.set(jdbcProperties, getConfig().getTarget().getDatabase().getUser());
     PGProperty.PASSWORD.set(jdbcProperties, getConfig().getTarget().getDatabase().getPassword());
+    PGProperty.PREPARE_THRESHOLD.set(jdbcProperties, getConfig().getSqlPrepareThreshold());
+    PGProperty.PREPARED_STATEMENT_CACHE_QUERIES.set(jdbcProperties,
+        getConfig().getSqlPreparedStatementCacheQueries());
+    PGProperty.PREPARED_STATEMENT_CACHE_SIZE_MIB.set(jdbcProperties,
+        getConfig().getSqlPreparedStatementCacheSizeMib());
     HikariConfig config = new HikariConfig();
     config.setMinimumIdle(getConfig().getMinConnections());
     config.setMaximumPoolSize(getConfig().getMaxConnections());
@@ -332,14 +643,62 @@ public class App  extends Options implements Callable<Void> {
             return getConfig().getSqlIsolationLevelAsInt();
           }
         }, config);
-    PostgresFlightBenchmark benchmark = PostgresFlightBenchmark.create(connectionSupplier,
+    return PostgresFlightBenchmark.create(connectionSupplier,
         getConfig());
+  }
+
+  private BenchmarkRunner createReactivePostgresBenchmark(Closer closer) {
+    PostgresFlightBenchmark syncBenchmark = createPostgresFlightBenchmark();
+    ConnectionPool connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(
+        new PostgresqlConnectionFactory(PostgresqlConnectionConfiguration.builder()
+            .host(getConfig().getTarget().getDatabase().getHost())
+            .port(getConfig().getTarget().getDatabase().getPort())
+            .database(getConfig().getTarget().getDatabase().getName())
+            .username(getConfig().getTarget().getDatabase().getUser())
+            .password(getConfig().getTarget().getDatabase().getPassword())
+            .applicationName("benchmark")
+            .options(ImmutableMap.of("TimeZone", "UTC"))
+            .preparedStatementCacheQueries(getConfig().getSqlPreparedStatementCacheQueries())
+            .build()))
+        .initialSize(getConfig().getMinConnections())
+        .maxSize(getConfig().getMaxConnections())
+        .maxAcquireTime(getConfig().getConnectionWaitTimeoutAsDuration())
+        .maxIdleTime(getConfig().getConnectionIdleTimeoutAsDuration())
+        .build());
+    ReactivePostgresFlightBenchmark benchmark = ReactivePostgresFlightBenchmark.create(
+        connectionPool, syncBenchmark, getConfig());
     closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
     return new BenchmarkRunner(benchmark);
   }
 
   private BenchmarkRunner createMongoBenchmark(Closer closer) {
-    MongoClient client = MongoClients.create(MongoClientSettings.builder()
+    MongoClient client = MongoClients.create(getMongoClientSettings());
+    MongoFlightBenchmark benchmark = MongoFlightBenchmark.create(client, 
+        getConfig());
+    closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
+    return new BenchmarkRunner(benchmark);
+  }
+
+  private BenchmarkRunner createReactiveMongoBenchmark(Closer closer) {
+    MongoClient syncClient = MongoClients.create(getMongoClientSettings());
+    MongoFlightBenchmark syncBenchmark = MongoFlightBenchmark.create(syncClient, 
+        getConfig());
+    com.mongodb.reactivestreams.client.MongoClient client =
+        com.mongodb.reactivestreams.client.MongoClients.create(getMongoClientSettings());
+    ReactiveMongoFlightBenchmark benchmark = ReactiveMongoFlightBenchmark.create(client,
+        syncBenchmark, getConfig());
+    closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
+    return new BenchmarkRunner(benchmark);
+  }
+
+  private BenchmarkRunner createNoopBenchmark(Closer closer) {
+    NoopBenchmark benchmark = new NoopBenchmark();
+    closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
+    return new BenchmarkRunner(benchmark);
+  }
+
+  private MongoClientSettings getMongoClientSettings() {
+    return MongoClientSettings.builder()
         .applyConnectionString(new ConnectionString("mongodb://"
             + (getConfig().getTarget().getDatabase().getUser().isEmpty() ? "" 
                 : getConfig().getTarget().getDatabase().getUser() 
@@ -350,15 +709,12 @@ public class App  extends Options implements Callable<Void> {
         .applyToConnectionPoolSettings(builder -> builder
             .minSize(getConfig().getMinConnections())
             .maxSize(getConfig().getMaxConnections())
+            .maxWaitQueueSize(Math.max(500, getConfig().getParallelism()))
             .maxWaitTime(getConfig().getConnectionWaitTimeoutAsDuration().toMillis(), 
                 TimeUnit.MILLISECONDS)
             .maxConnectionIdleTime(getConfig().getConnectionIdleTimeoutAsDuration().toMillis(), 
                 TimeUnit.MILLISECONDS))
-        .build());
-    MongoFlightBenchmark benchmark = MongoFlightBenchmark.create(client, 
-        getConfig());
-    closer.register(() -> Unchecked.runnable(() -> benchmark.close()).run());
-    return new BenchmarkRunner(benchmark);
+        .build();
   }
 
   private void updateLogLevel(Closer closer) {
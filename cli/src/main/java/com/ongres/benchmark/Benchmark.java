@@ -20,42 +20,81 @@
 
 package com.ongres.benchmark;
 
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.ongres.benchmark.workload.Operation;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.lambda.Unchecked;
+
+import reactor.core.publisher.Mono;
 
 public abstract class Benchmark implements AutoCloseable {
 
-  private final ReadWriteLock closedLock = new ReentrantReadWriteLock();
-  private final Lock readClosedLock = closedLock.readLock();
-  private final Lock writeClosedLock = closedLock.writeLock();
-  private final AtomicInteger running = new AtomicInteger(0);
-  private volatile boolean closed = false;
+  private static final Logger logger = LogManager.getLogger();
+
+  private final RunGate gate = new RunGate();
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+  private volatile Duration drainTimeout = Duration.ofSeconds(30);
 
   /**
    * Setup and cleanup the database.
    */
   public abstract void setup();
 
+  /**
+   * Load the data read by iterations into the database caches. By default does nothing.
+   */
+  public void prewarm() {
+  }
+
+  /**
+   * Load the reference data read by iterations into the client-side cache. By default does
+   * nothing.
+   */
+  public void preload() {
+  }
+
+  /**
+   * Set how long closing waits for running iterations before cancelling them.
+   */
+  public void setDrainTimeout(Duration drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
   /**
    * Run a single client iteration.
+   *
+   * @throws BenchmarkClosedException if the benchmark is closed
    */
   public void run() {
-    readClosedLock.lock();
+    final int stripe = gate.enter();
+    if (stripe < 0) {
+      throw new BenchmarkClosedException();
+    }
     try {
-      if (closed) {
-        return;
-      }
+      iteration();
     } finally {
-      readClosedLock.unlock();
+      gate.exit(stripe);
+    }
+  }
+
+  /**
+   * Run a single client iteration that runs {@code operation}.
+   *
+   * @throws BenchmarkClosedException if the benchmark is closed
+   */
+  public void run(Operation operation) {
+    final int stripe = gate.enter();
+    if (stripe < 0) {
+      throw new BenchmarkClosedException();
     }
-    running.incrementAndGet();
     try {
-      iteration();
+      Unchecked.runnable(operation::run).run();
     } finally {
-      running.decrementAndGet();
+      gate.exit(stripe);
     }
   }
 
@@ -64,18 +103,58 @@ public abstract class Benchmark implements AutoCloseable {
    */
   protected abstract void iteration();
 
+  /**
+   * Return a {@code Mono} that run a single client iteration when subscribed, or fails with
+   * {@link BenchmarkClosedException} if the benchmark is closed.
+   */
+  public Mono<Void> runReactive() {
+    return Mono.defer(() -> {
+      final int stripe = gate.enter();
+      if (stripe < 0) {
+        return Mono.error(new BenchmarkClosedException());
+      }
+      return reactiveIteration()
+          .doFinally(signal -> gate.exit(stripe));
+    });
+  }
+
+  /**
+   * Return a {@code Mono} that run a single client iteration that runs {@code operation} when
+   * subscribed, or fails with {@link BenchmarkClosedException} if the benchmark is closed.
+   */
+  public Mono<Void> runReactive(Operation operation) {
+    return Mono.defer(() -> {
+      final int stripe = gate.enter();
+      if (stripe < 0) {
+        return Mono.error(new BenchmarkClosedException());
+      }
+      return operation.runReactive()
+          .doFinally(signal -> gate.exit(stripe));
+    });
+  }
+
+  /**
+   * Return a {@code Mono} that run a single client iteration when subscribed. By default the
+   * iteration is run blocking the subscribing thread.
+   */
+  protected Mono<Void> reactiveIteration() {
+    return Mono.fromRunnable(this::iteration);
+  }
+
+  /**
+   * Stop accepting iterations and wait up to the drain timeout for running ones to complete.
+   * Iterations still running are then cancelled by closing the internal resources they use.
+   */
   @Override
   public final void close() throws Exception {
-    writeClosedLock.lock();
-    try {
-      closed = true;
-      while (running.get() != 0) {
-        TimeUnit.MICROSECONDS.sleep(20);
-      }
-      internalClose();
-    } finally {
-      writeClosedLock.unlock();
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    if (!gate.close(drainTimeout)) {
+      logger.warn(gate.running() + " iterations still running after " + drainTimeout
+          + ", cancelling them");
     }
+    internalClose();
   }
 
   /**
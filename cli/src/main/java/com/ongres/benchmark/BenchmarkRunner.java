@@ -21,14 +21,32 @@
 package com.ongres.benchmark;
 
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.ongres.benchmark.distributed.IntervalRecorder;
+import com.ongres.benchmark.workload.Workload;
+import com.ongres.benchmark.workload.Workload.WeightedOperation;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 public class BenchmarkRunner implements Runnable, AutoCloseable {
 
   private final Benchmark benchmark;
-  private final Meter transactionMeter = MetricsManager.meter(Metric.ITERATIONS);
-  private final Meter retryMeter = MetricsManager.meter(Metric.RETRY);
-  private final Timer responseTimer = MetricsManager.timer(Metric.RESPONSE_TIME);
+  private volatile RunMetrics metrics = new RunMetrics(
+      MetricsManager.getMetricRegistry(), null, null);
+  private volatile RunMetrics stageMetrics = null;
+  private volatile Warmup warmup = null;
+  private Semaphore concurrencyLimit = null;
+  private ThinkTime thinkTime = null;
+  private IntervalRecorder intervalRecorder = null;
+  private Workload workload = null;
   
   public BenchmarkRunner(Benchmark benchmark) {
     super();
@@ -39,27 +57,325 @@ public class BenchmarkRunner implements Runnable, AutoCloseable {
     benchmark.setup();
   }
 
+  /**
+   * Limit the number of iterations running concurrently, so that simulated users in excess wait
+   * for their turn instead of timing out while waiting for a connection. Must be called before
+   * running any iteration.
+   */
+  public void setMaxConcurrentIterations(int maxConcurrentIterations) {
+    this.concurrencyLimit = new Semaphore(maxConcurrentIterations, true);
+  }
+
+  public Benchmark getBenchmark() {
+    return benchmark;
+  }
+
+  /**
+   * Run the operations of {@code workload} instead of the benchmark iteration. Must be called
+   * before running any iteration.
+   */
+  public void setWorkload(Workload workload) {
+    this.workload = workload;
+  }
+
+  /**
+   * Set how long closing waits for running iterations before cancelling them.
+   */
+  public void setDrainTimeout(Duration drainTimeout) {
+    benchmark.setDrainTimeout(drainTimeout);
+  }
+
+  /**
+   * Set the think time of a user between the end of an iteration and the start of the next,
+   * that is not accounted in response time nor service time. Must be called before running any
+   * iteration.
+   */
+  public void setThinkTime(ThinkTime thinkTime) {
+    this.thinkTime = thinkTime;
+  }
+
+  /**
+   * Also record the metrics of the following iterations, except during the warm-up, in
+   * {@code intervalRecorder}.
+   */
+  public void setIntervalRecorder(IntervalRecorder intervalRecorder) {
+    this.intervalRecorder = intervalRecorder;
+    if (warmup == null) {
+      this.metrics = new RunMetrics(MetricsManager.getMetricRegistry(), null, intervalRecorder);
+    }
+  }
+
+  /**
+   * Set the stage used to tag metrics of the following iterations, or {@code null} to not tag
+   * them.
+   */
+  public void setStage(String stage) {
+    this.stageMetrics = stage != null ? new RunMetrics(getMetricRegistry(), stage, null) : null;
+  }
+
+  /**
+   * Pre-load the data read by iterations into the database caches.
+   */
+  public void prewarm() {
+    benchmark.prewarm();
+  }
+
+  /**
+   * Pre-load the reference data read by iterations into the client-side cache.
+   */
+  public void preload() {
+    benchmark.preload();
+  }
+
+  /**
+   * Collect metrics of the following iterations in the warm-up registry until
+   * {@code iterations} iterations complete or {@link #endWarmup()} is called. Must be called
+   * before running any iteration.
+   * 
+   * @return a future that completes when the warm-up ends
+   */
+  public CompletableFuture<Void> startWarmup(long iterations) {
+    MetricRegistry registry = MetricsManager.getMetricRegistry();
+    for (Metric metric : Metric.values()) {
+      MetricsManager.remove(registry, metric, null);
+    }
+    Warmup warmup = new Warmup(iterations);
+    this.warmup = warmup;
+    this.metrics = new RunMetrics(MetricsManager.getWarmupMetricRegistry(), null, null);
+    return warmup.completion;
+  }
+
+  /**
+   * End the warm-up, if any, so that metrics of the following iterations are collected in
+   * the reported registry.
+   */
+  public void endWarmup() {
+    final Warmup warmup = this.warmup;
+    if (warmup == null) {
+      return;
+    }
+    synchronized (warmup) {
+      if (this.warmup == null) {
+        return;
+      }
+      this.metrics = new RunMetrics(MetricsManager.getMetricRegistry(), null, intervalRecorder);
+      final RunMetrics stageMetrics = this.stageMetrics;
+      if (stageMetrics != null) {
+        this.stageMetrics = new RunMetrics(MetricsManager.getMetricRegistry(),
+            stageMetrics.tag, null);
+      }
+      this.warmup = null;
+    }
+    warmup.completion.complete(null);
+  }
+
+  private MetricRegistry getMetricRegistry() {
+    return warmup != null
+        ? MetricsManager.getWarmupMetricRegistry() : MetricsManager.getMetricRegistry();
+  }
+
+  private void iterationCompleted() {
+    final Warmup warmup = this.warmup;
+    if (warmup != null && warmup.remaining.decrementAndGet() <= 0) {
+      endWarmup();
+    }
+  }
+
   @Override
   public void run() {
-    responseTimer.time(this::runWithRetry);
-    transactionMeter.mark();
+    run(System.nanoTime());
   }
 
-  private void runWithRetry() {
+  /**
+   * Run an iteration that was scheduled to start at {@code intendedStartTime} (as returned by
+   * {@code System.nanoTime()}). Response time is measured from the intended start time while
+   * service time is measured from the actual start time.
+   *
+   * @throws BenchmarkClosedException if the benchmark is closed, without recording the iteration
+   */
+  public void run(long intendedStartTime) {
+    final RunMetrics metrics = this.metrics;
+    final RunMetrics stageMetrics = this.stageMetrics;
+    final WeightedOperation operation = workload != null ? workload.next() : null;
+    final long startTime = System.nanoTime();
+    boolean closed = false;
+    try {
+      if (concurrencyLimit != null) {
+        runWithConcurrencyLimit(metrics, stageMetrics, operation);
+      } else {
+        runWithRetry(metrics, stageMetrics, operation);
+      }
+    } catch (BenchmarkClosedException ex) {
+      closed = true;
+      throw ex;
+    } finally {
+      if (!closed) {
+        recordTimes(metrics, stageMetrics, operation, intendedStartTime, startTime);
+      }
+    }
+    metrics.transactionMeter.mark();
+
+    if (stageMetrics != null) {
+      stageMetrics.transactionMeter.mark();
+    }
+    if (metrics.intervalRecorder != null) {
+      metrics.intervalRecorder.recordIteration();
+    }
+    iterationCompleted();
+    if (thinkTime != null) {
+      try {
+        thinkTime.sleep();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void recordTimes(RunMetrics metrics, RunMetrics stageMetrics,
+      WeightedOperation operation, long intendedStartTime, long startTime) {
+    final long endTime = System.nanoTime();
+    if (operation != null) {
+      metrics.operationTimer(operation).update(endTime - startTime, TimeUnit.NANOSECONDS);
+    }
+    metrics.serviceTimer.update(endTime - startTime, TimeUnit.NANOSECONDS);
+    metrics.responseTimer.update(endTime - intendedStartTime, TimeUnit.NANOSECONDS);
+    if (stageMetrics != null) {
+      stageMetrics.serviceTimer.update(endTime - startTime, TimeUnit.NANOSECONDS);
+      stageMetrics.responseTimer.update(endTime - intendedStartTime, TimeUnit.NANOSECONDS);
+    }
+    if (metrics.intervalRecorder != null) {
+      metrics.intervalRecorder.recordTimes(endTime - intendedStartTime, endTime - startTime);
+    }
+  }
+
+  private void runWithConcurrencyLimit(RunMetrics metrics, RunMetrics stageMetrics,
+      WeightedOperation operation) {
+    concurrencyLimit.acquireUninterruptibly();
+    try {
+      runWithRetry(metrics, stageMetrics, operation);
+    } finally {
+      concurrencyLimit.release();
+    }
+  }
+
+  private void runWithRetry(RunMetrics metrics, RunMetrics stageMetrics,
+      WeightedOperation operation) {
     while (true) {
       try {
-        benchmark.run();
+        if (operation != null) {
+          benchmark.run(operation.getOperation());
+        } else {
+          benchmark.run();
+        }
         break;
       } catch (RetryUserOperationException ex) {
-        retryMeter.mark();
+        metrics.retryMeter.mark();
+        if (operation != null) {
+          metrics.operationRetryMeter(operation).mark();
+        }
+        if (stageMetrics != null) {
+          stageMetrics.retryMeter.mark();
+        }
+        if (metrics.intervalRecorder != null) {
+          metrics.intervalRecorder.recordRetry();
+        }
         continue;
       }
     }
   }
 
+  /**
+   * Return {@code true} if the iterations of the benchmark are non-blocking.
+   */
+  public boolean isReactive() {
+    return benchmark instanceof ReactiveBenchmark;
+  }
+
+  /**
+   * Return a {@code Mono} that run an iteration when subscribed. Response time and service time
+   * are measured from the subscription. The {@code Mono} fails with
+   * {@link BenchmarkClosedException}, without recording the iteration, if the benchmark is
+   * closed.
+   */
+  public Mono<Void> runReactive() {
+    return Mono.defer(() -> {
+      final RunMetrics metrics = this.metrics;
+      final RunMetrics stageMetrics = this.stageMetrics;
+      final WeightedOperation operation = workload != null ? workload.next() : null;
+      final long startTime = System.nanoTime();
+      return (operation != null
+          ? benchmark.runReactive(operation.getOperation()) : benchmark.runReactive())
+          .doOnError(RetryUserOperationException.class, ex -> {
+            metrics.retryMeter.mark();
+            if (operation != null) {
+              metrics.operationRetryMeter(operation).mark();
+            }
+            if (stageMetrics != null) {
+              stageMetrics.retryMeter.mark();
+            }
+            if (metrics.intervalRecorder != null) {
+              metrics.intervalRecorder.recordRetry();
+            }
+          })
+          .retryWhen(Retry.indefinitely()
+              .filter(ex -> ex instanceof RetryUserOperationException))
+          .doOnError(ex -> !(ex instanceof BenchmarkClosedException),
+              ex -> recordTimes(metrics, stageMetrics, operation, startTime, startTime))
+          .doOnCancel(() -> recordTimes(metrics, stageMetrics, operation, startTime, startTime))
+          .doOnSuccess(result -> {
+            recordTimes(metrics, stageMetrics, operation, startTime, startTime);
+            metrics.transactionMeter.mark();
+            if (stageMetrics != null) {
+              stageMetrics.transactionMeter.mark();
+            }
+            if (metrics.intervalRecorder != null) {
+              metrics.intervalRecorder.recordIteration();
+            }
+            iterationCompleted();
+          })
+          .then(thinkTime != null ? thinkTime.delay() : Mono.empty());
+    });
+  }
+
   @Override
   public void close() throws Exception {
     benchmark.close();
   }
 
+  private static class RunMetrics {
+    private final MetricRegistry registry;
+    private final String tag;
+    private final Meter transactionMeter;
+    private final Meter retryMeter;
+    private final Timer responseTimer;
+    private final Timer serviceTimer;
+    private final IntervalRecorder intervalRecorder;
+
+    private RunMetrics(MetricRegistry registry, String tag, IntervalRecorder intervalRecorder) {
+      this.registry = registry;
+      this.tag = tag;
+      this.intervalRecorder = intervalRecorder;
+      this.transactionMeter = MetricsManager.meter(registry, Metric.ITERATIONS, tag);
+      this.retryMeter = MetricsManager.meter(registry, Metric.RETRY, tag);
+      this.responseTimer = MetricsManager.timer(registry, Metric.RESPONSE_TIME, tag);
+      this.serviceTimer = MetricsManager.timer(registry, Metric.SERVICE_TIME, tag);
+    }
+
+    private Timer operationTimer(WeightedOperation operation) {
+      return MetricsManager.timer(registry, Metric.OPERATION, operation.getName());
+    }
+
+    private Meter operationRetryMeter(WeightedOperation operation) {
+      return MetricsManager.meter(registry, Metric.OPERATION_RETRY, operation.getName());
+    }
+  }
+
+  private static class Warmup {
+    private final AtomicLong remaining;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private Warmup(long iterations) {
+      this.remaining = new AtomicLong(iterations);
+    }
+  }
 }
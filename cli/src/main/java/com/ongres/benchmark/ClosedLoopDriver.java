@@ -0,0 +1,172 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Drive a {@code BenchmarkRunner} in closed loop with one thread per simulated user. Up to
+ * {@code maxConcurrency} users are created and only the first {@code concurrency} of them are
+ * active, so that concurrency can be changed while running.
+ */
+public class ClosedLoopDriver implements LoadDriver {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final BenchmarkRunner runner;
+  private final Thread[] users;
+  private final AtomicLong remainingIterations;
+  private final AtomicInteger runningUsers;
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
+  private final CompletableFuture<Void> termination = new CompletableFuture<>();
+  private volatile int concurrency;
+  private volatile boolean stopped = false;
+
+  /**
+   * Create a closed loop driver that will run {@code iterations} iterations with up to
+   * {@code maxConcurrency} platform threads.
+   */
+  public ClosedLoopDriver(BenchmarkRunner runner, int maxConcurrency, int concurrency,
+      long iterations) {
+    this(runner, maxConcurrency, concurrency, iterations,
+        new ThreadFactoryBuilder().setNameFormat("benchmark-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Create a closed loop driver that will run {@code iterations} iterations with up to
+   * {@code maxConcurrency} threads created by {@code threadFactory}.
+   */
+  public ClosedLoopDriver(BenchmarkRunner runner, int maxConcurrency, int concurrency,
+      long iterations, ThreadFactory threadFactory) {
+    Preconditions.checkArgument(maxConcurrency > 0);
+    Preconditions.checkArgument(concurrency >= 0 && concurrency <= maxConcurrency);
+    this.runner = runner;
+    this.concurrency = concurrency;
+    this.remainingIterations = new AtomicLong(iterations);
+    this.runningUsers = new AtomicInteger(maxConcurrency);
+    this.users = new Thread[maxConcurrency];
+    for (int index = 0; index < maxConcurrency; index++) {
+      final int userIndex = index;
+      users[index] = threadFactory.newThread(() -> user(userIndex));
+    }
+  }
+
+  /**
+   * Start the simulated users.
+   */
+  public ClosedLoopDriver start() {
+    for (Thread user : users) {
+      user.start();
+    }
+    return this;
+  }
+
+  private void user(int userIndex) {
+    try {
+      while (!stopped) {
+        if (userIndex >= concurrency) {
+          LockSupport.park(this);
+          continue;
+        }
+        if (remainingIterations.getAndDecrement() <= 0) {
+          stop();
+          break;
+        }
+        runner.run();
+      }
+    } catch (BenchmarkClosedException ex) {
+      stop();
+    } catch (Throwable ex) {
+      logger.error("Iteration failed, stopping the benchmark", ex);
+      future.completeExceptionally(ex);
+      stop();
+    } finally {
+      if (runningUsers.decrementAndGet() == 0) {
+        future.complete(null);
+        termination.complete(null);
+      }
+    }
+  }
+
+  @Override
+  public void setLoad(double load) {
+    int previousConcurrency = concurrency;
+    int newConcurrency = (int) Math.max(0, Math.min(users.length, Math.round(load)));
+    concurrency = newConcurrency;
+    for (int index = previousConcurrency; index < newConcurrency; index++) {
+      LockSupport.unpark(users[index]);
+    }
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    for (Thread user : users) {
+      LockSupport.unpark(user);
+    }
+  }
+
+  @Override
+  public Future<Void> getTermination() {
+    return termination;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    stop();
+    return future.cancel(mayInterruptIfRunning);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return future.isCancelled();
+  }
+
+  @Override
+  public boolean isDone() {
+    return future.isDone();
+  }
+
+  @Override
+  public Void get() throws InterruptedException, ExecutionException {
+    return future.get();
+  }
+
+  @Override
+  public Void get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return future.get(timeout, unit);
+  }
+}
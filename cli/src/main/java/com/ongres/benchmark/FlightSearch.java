@@ -0,0 +1,84 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.data.Schedule;
+import com.ongres.benchmark.data.ScheduleGenerator;
+
+import java.time.LocalDate;
+
+/**
+ * Parameters of the flight search operation: the route of a schedule, picked with the schedule
+ * distribution, and the page size and number of pages to read.
+ */
+public class FlightSearch {
+
+  private final ScheduleGenerator scheduleGenerator;
+  private final KeyGenerator routeGenerator;
+  private final int pageSize;
+  private final int pages;
+
+  private FlightSearch(ScheduleGenerator scheduleGenerator, KeyGenerator routeGenerator,
+      int pageSize, int pages) {
+    this.scheduleGenerator = scheduleGenerator;
+    this.routeGenerator = routeGenerator;
+    this.pageSize = pageSize;
+    this.pages = pages;
+  }
+
+  /**
+   * Create an instance of {@class FlightSearch} with the routes of the schedules of
+   * {@code scheduleGenerator}, picked with {@code scheduleIdGenerator}.
+   */
+  public static FlightSearch create(Config config, ScheduleGenerator scheduleGenerator,
+      KeyGenerator scheduleIdGenerator) {
+    Preconditions.checkArgument(config.getFlightSearchPageSize() > 0,
+        "Flight search page size must be greater than 0");
+    Preconditions.checkArgument(config.getFlightSearchPages() > 0,
+        "Flight search pages must be greater than 0");
+    return new FlightSearch(scheduleGenerator, scheduleIdGenerator,
+        config.getFlightSearchPageSize(), config.getFlightSearchPages());
+  }
+
+  /**
+   * Return the schedule whose route is searched next.
+   */
+  public Schedule nextRoute() {
+    return scheduleGenerator.get(routeGenerator.next());
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public int getPages() {
+    return pages;
+  }
+
+  /**
+   * Return the bit of the day of week of {@code day} in a {@code days} mask.
+   */
+  static int dayBit(LocalDate day) {
+    return 1 << (day.getDayOfWeek().getValue() - 1);
+  }
+}
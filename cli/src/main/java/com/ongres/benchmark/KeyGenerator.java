@@ -0,0 +1,152 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.KeyDistribution;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generate keys between 0 (inclusive) and a number of items (exclusive) following a
+ * distribution. Each thread draws from its own {@code SplittableRandom} so that workers do not
+ * contend on a shared generator.
+ */
+public class KeyGenerator {
+
+  private static final int ZETA_EXACT_TERMS = 1000;
+  private static final SplittableRandom ROOT_RANDOM = new SplittableRandom();
+  private static final ThreadLocal<SplittableRandom> RANDOM =
+      ThreadLocal.withInitial(KeyGenerator::splitRandom);
+
+  private final KeyDistribution distribution;
+  private final int items;
+  private final double theta;
+  private final double zetan;
+  private final double alpha;
+  private final double eta;
+  private final int hotItems;
+  private final double hotAccessFraction;
+
+  private KeyGenerator(KeyDistribution distribution, int items, double theta,
+      double hotFraction, double hotAccessFraction) {
+    this.distribution = distribution;
+    this.items = items;
+    this.theta = theta;
+    if (distribution == KeyDistribution.ZIPFIAN || distribution == KeyDistribution.LATEST) {
+      this.zetan = zeta(items, theta);
+      this.alpha = 1 / (1 - theta);
+      this.eta = (1 - Math.pow(2d / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    } else {
+      this.zetan = 0;
+      this.alpha = 0;
+      this.eta = 0;
+    }
+    this.hotItems = Math.max(1, Math.min(items, (int) (items * hotFraction)));
+    this.hotAccessFraction = hotAccessFraction;
+  }
+
+  /**
+   * Create an instance of {@class KeyGenerator} for {@code items} keys.
+   */
+  public static KeyGenerator create(KeyDistribution distribution, int items, Config config) {
+    Preconditions.checkArgument(items > 0, "Number of keys must be greater than 0");
+    Preconditions.checkArgument(config.getZipfianTheta() >= 0 && config.getZipfianTheta() < 1,
+        "Zipfian theta must be between 0 and 1 (excluded)");
+    Preconditions.checkArgument(config.getHotspotFraction() > 0
+        && config.getHotspotFraction() <= 1,
+        "Hotspot fraction must be between 0 (excluded) and 1");
+    Preconditions.checkArgument(config.getHotspotAccessFraction() >= 0
+        && config.getHotspotAccessFraction() <= 1,
+        "Hotspot access fraction must be between 0 and 1");
+    return new KeyGenerator(distribution, items, config.getZipfianTheta(),
+        config.getHotspotFraction(), config.getHotspotAccessFraction());
+  }
+
+  private static synchronized SplittableRandom splitRandom() {
+    return ROOT_RANDOM.split();
+  }
+
+  /**
+   * Return the generalized harmonic number of order {@code theta} for {@code items}. The first
+   * {@link #ZETA_EXACT_TERMS} terms are summed and the rest is approximated with the
+   * Euler-Maclaurin formula, so that the cost does not grow with the number of keys.
+   */
+  static double zeta(int items, double theta) {
+    final int exactTerms = Math.min(items, ZETA_EXACT_TERMS);
+    double sum = 0;
+    for (int i = 1; i <= exactTerms; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    if (items > exactTerms) {
+      final double from = exactTerms;
+      final double to = items;
+      sum += (Math.pow(to, 1 - theta) - Math.pow(from, 1 - theta)) / (1 - theta)
+          + (Math.pow(to, -theta) - Math.pow(from, -theta)) / 2
+          - theta * (Math.pow(to, -theta - 1) - Math.pow(from, -theta - 1)) / 12;
+    }
+    return sum;
+  }
+
+  /**
+   * Return the next key.
+   */
+  public int next() {
+    return next(RANDOM.get());
+  }
+
+  /**
+   * Return the next key drawn from {@code random}.
+   */
+  int next(SplittableRandom random) {
+    switch (distribution) {
+      case ZIPFIAN:
+        return nextZipfian(random);
+      case LATEST:
+        return items - 1 - nextZipfian(random);
+      case HOTSPOT:
+        if (hotItems == items || random.nextDouble() < hotAccessFraction) {
+          return random.nextInt(hotItems);
+        }
+        return hotItems + random.nextInt(items - hotItems);
+      case UNIFORM:
+      default:
+        return random.nextInt(items);
+    }
+  }
+
+  /**
+   * Zipfian generator from Gray et al., "Quickly generating billion-record synthetic
+   * databases", where lower keys are the more popular.
+   */
+  private int nextZipfian(SplittableRandom random) {
+    final double u = random.nextDouble();
+    final double uz = u * zetan;
+    if (uz < 1) {
+      return 0;
+    }
+    if (uz < 1 + Math.pow(0.5, theta)) {
+      return Math.min(1, items - 1);
+    }
+    return Math.min(items - 1, (int) (items * Math.pow(eta * u - eta + 1, alpha)));
+  }
+}
@@ -0,0 +1,47 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import java.util.concurrent.Future;
+
+/**
+ * A driver that runs iterations of a {@code BenchmarkRunner} and whose load can be changed while
+ * it is running. The returned future is completed when the driver has finished issuing
+ * iterations.
+ */
+public interface LoadDriver extends Future<Void> {
+
+  /**
+   * Change the load applied by this driver.
+   */
+  public void setLoad(double load);
+
+  /**
+   * Stop issuing iterations. The driver completes normally once running iterations have
+   * finished.
+   */
+  public void stop();
+
+  /**
+   * Return a future that is completed when all threads of the driver have stopped.
+   */
+  public Future<Void> getTermination();
+}
@@ -0,0 +1,123 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.ongres.benchmark.config.model.Stage;
+
+import java.util.List;
+
+/**
+ * A sequence of stages that define how load changes over time. Each stage reaches its load
+ * either immediately or, when {@code ramp} is set, linearly from the load of the previous stage.
+ * Load is the target rate when stages define it (open loop) or the parallelism otherwise (closed
+ * loop).
+ */
+public class LoadProfile {
+
+  private final ImmutableList<Stage> stages;
+  private final long[] stageEnds;
+  private final boolean openLoop;
+
+  /**
+   * Create a load profile from the configured stages.
+   */
+  public LoadProfile(List<Stage> stages) {
+    Preconditions.checkArgument(!stages.isEmpty(), "At least one stage must be specified");
+    this.stages = ImmutableList.copyOf(stages);
+    this.openLoop = stages.get(0).getTargetRate() != null;
+    this.stageEnds = new long[stages.size()];
+    long end = 0;
+    for (int index = 0; index < stages.size(); index++) {
+      Stage stage = stages.get(index);
+      Preconditions.checkArgument(stage.getDuration() != null,
+          "Duration must be specified for stage " + getStageName(index));
+      Preconditions.checkArgument((stage.getTargetRate() != null) == openLoop
+          && (stage.getParallelism() != null) != openLoop,
+          "Stage " + getStageName(index) + " must specify either parallelism or target rate"
+              + " like the other stages");
+      Preconditions.checkArgument(stage.getLoad() >= 0,
+          "Load of stage " + getStageName(index) + " must not be negative");
+      end += stage.getDurationAsDuration().toNanos();
+      stageEnds[index] = end;
+    }
+  }
+
+  public boolean isOpenLoop() {
+    return openLoop;
+  }
+
+  public int size() {
+    return stages.size();
+  }
+
+  /**
+   * Return the stage name, or a name generated from the stage position if not specified.
+   */
+  public String getStageName(int index) {
+    if (stages.get(index).getName() != null) {
+      return stages.get(index).getName();
+    }
+    return "stage-" + index;
+  }
+
+  /**
+   * Return the index of the stage running after {@code elapsed} nanoseconds, or the number of
+   * stages if all of them are finished.
+   */
+  public int getStageIndex(long elapsed) {
+    for (int index = 0; index < stageEnds.length; index++) {
+      if (elapsed < stageEnds[index]) {
+        return index;
+      }
+    }
+    return stageEnds.length;
+  }
+
+  /**
+   * Return the load to apply after {@code elapsed} nanoseconds.
+   */
+  public double getLoad(long elapsed) {
+    int index = getStageIndex(elapsed);
+    if (index >= stages.size()) {
+      return stages.get(stages.size() - 1).getLoad();
+    }
+    Stage stage = stages.get(index);
+    if (!stage.isRamp()) {
+      return stage.getLoad();
+    }
+    double fromLoad = index == 0 ? 0 : stages.get(index - 1).getLoad();
+    long stageStart = index == 0 ? 0 : stageEnds[index - 1];
+    double fraction = (double) (elapsed - stageStart) / (stageEnds[index] - stageStart);
+    return fromLoad + (stage.getLoad() - fromLoad) * fraction;
+  }
+
+  /**
+   * Return the maximum load of all stages.
+   */
+  public double getMaxLoad() {
+    return stages.stream()
+        .mapToDouble(Stage::getLoad)
+        .max()
+        .getAsDouble();
+  }
+}
@@ -20,6 +20,7 @@
 
 package com.ongres.benchmark;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 
@@ -27,7 +28,26 @@ public enum Metric {
   
   ITERATIONS("iterations", Meter.class),
   RETRY("retry", Meter.class),
-  RESPONSE_TIME("response-time", Timer.class);
+  RESPONSE_TIME("response-time", Timer.class),
+  SERVICE_TIME("service-time", Timer.class),
+  OPERATION("operation", Timer.class),
+  OPERATION_RETRY("operation-retry", Meter.class),
+  REPORT("report", Timer.class),
+  REPORT_RETRY("report-retry", Meter.class),
+  ROUND_TRIPS("round-trips", Meter.class),
+  STATEMENT("statement", Timer.class),
+  PREPARED_LATENCY_DELTA("prepared-latency-delta", Gauge.class),
+  REFERENCE_CACHE_HIT("reference-cache-hit", Meter.class),
+  REFERENCE_CACHE_MISS("reference-cache-miss", Meter.class),
+  REFERENCE_CACHE_LOAD("reference-cache-load", Timer.class),
+  SCHEDULE_READ("schedule-read", Timer.class),
+  PARTITIONS_CREATED("partitions-created", Meter.class),
+  CAPACITY_CONFLICT("capacity-conflict", Meter.class),
+  CAPACITY_RETRY("capacity-retry", Meter.class),
+  SOLD_OUT("sold-out", Meter.class),
+  BOOKING_NOT_FOUND("booking-not-found", Meter.class),
+  SEAT_CONFLICT("seat-conflict", Meter.class),
+  STORAGE("storage", Gauge.class);
   
   private final String name;
   private final Class<? extends com.codahale.metrics.Metric> type;
@@ -21,6 +21,7 @@
 package com.ongres.benchmark;
 
 import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricFilter;
@@ -46,6 +47,7 @@ public class MetricsManager {
   private static final Logger logger = LoggerFactory.getLogger(MetricsManager.class);
 
   private static final MetricRegistry METRIC_REGISTRY = new MetricRegistry();
+  private static final MetricRegistry WARMUP_METRIC_REGISTRY = new MetricRegistry();
   
   private MetricsManager() {
     METRIC_REGISTRY.register("memory", new MemoryUsageGaugeSet());
@@ -55,6 +57,13 @@ public class MetricsManager {
     return METRIC_REGISTRY;
   }
 
+  /**
+   * Return the registry of the metrics collected during the warm-up, that are not reported.
+   */
+  public static MetricRegistry getWarmupMetricRegistry() {
+    return WARMUP_METRIC_REGISTRY;
+  }
+
   /**
    * Register a meter.
    */
@@ -72,6 +81,55 @@ public class MetricsManager {
         () -> new Timer(new HdrHistogramReservoir()));
   }
 
+  /**
+   * Register a meter tagged with {@code tag}.
+   */
+  public static Meter meter(Metric metric, String tag) {
+    return meter(METRIC_REGISTRY, metric, tag);
+  }
+
+  /**
+   * Register a timer tagged with {@code tag}.
+   */
+  public static Timer timer(Metric metric, String tag) {
+    return timer(METRIC_REGISTRY, metric, tag);
+  }
+
+  /**
+   * Register a meter in {@code registry} tagged with {@code tag} or not tagged if
+   * {@code null}.
+   */
+  public static Meter meter(MetricRegistry registry, Metric metric, String tag) {
+    Preconditions.checkArgument(metric.getType() == Meter.class);
+    return registry.meter(MetricRegistry.name(metric.getName(), tag));
+  }
+
+  /**
+   * Register a timer in {@code registry} tagged with {@code tag} or not tagged if
+   * {@code null}.
+   */
+  public static Timer timer(MetricRegistry registry, Metric metric, String tag) {
+    Preconditions.checkArgument(metric.getType() == Timer.class);
+    return registry.timer(MetricRegistry.name(metric.getName(), tag), 
+        () -> new Timer(new HdrHistogramReservoir()));
+  }
+
+  /**
+   * Remove a metric from {@code registry} tagged with {@code tag} or not tagged if
+   * {@code null}.
+   */
+  public static void remove(MetricRegistry registry, Metric metric, String tag) {
+    registry.remove(MetricRegistry.name(metric.getName(), tag));
+  }
+
+  /**
+   * Register {@code gauge} tagged with {@code tag}, if no gauge with that tag is registered.
+   */
+  public static void gauge(Metric metric, String tag, Gauge<?> gauge) {
+    Preconditions.checkArgument(metric.getType() == Gauge.class);
+    METRIC_REGISTRY.gauge(MetricRegistry.name(metric.getName(), tag), () -> gauge);
+  }
+
   /**
    * Register or get a histogram.
    */
@@ -96,6 +154,20 @@ public class MetricsManager {
     return reporter;
   }
   
+  /**
+   * Log the warm-up metrics once.
+   */
+  public static void reportWarmup(MetricFilter filter) {
+    Slf4jReporter.forRegistry(WARMUP_METRIC_REGISTRY)
+        .convertRatesTo(TimeUnit.SECONDS)
+        .convertDurationsTo(TimeUnit.MILLISECONDS)
+        .outputTo(logger)
+        .withLoggingLevel(LoggingLevel.INFO)
+        .filter(filter)
+        .build()
+        .report();
+  }
+  
   /**
    * Start a CSV reporter.
    */
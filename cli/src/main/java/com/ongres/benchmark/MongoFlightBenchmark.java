@@ -20,22 +20,44 @@
 
 package com.ongres.benchmark;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.mongodb.ClientSessionOptions;
 import com.mongodb.MongoCommandException;
 import com.mongodb.MongoException;
 import com.mongodb.TransactionOptions;
-import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.Variable;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+import com.ongres.benchmark.config.model.BookingMode;
+import com.ongres.benchmark.config.model.CapacityControl;
 import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.MongoSchema;
+import com.ongres.benchmark.data.BookingGenerator;
+import com.ongres.benchmark.data.ParallelLoader;
+import com.ongres.benchmark.data.Schedule;
+import com.ongres.benchmark.data.ScheduleGenerator;
 
 import java.nio.charset.StandardCharsets;
 import java.sql.Date;
@@ -43,41 +65,89 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.ObjLongConsumer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
 import org.bson.conversions.Bson;
 import org.jooq.lambda.Unchecked;
+import org.jooq.lambda.fi.util.function.CheckedConsumer;
 
 public class MongoFlightBenchmark extends Benchmark {
 
-  private static final int MAX_SCHEDULE_ID = 14185;
+  private static final int LOAD_CHUNK_SIZE = 10_000;
+  private static final int LOAD_BATCH_SIZE = 1_000;
+  private static final int MAX_BUCKET_SIZE = 100_000;
 
   private final Logger logger = LogManager.getLogger();
 
-  private final AtomicLong idGenerator = new AtomicLong(0);
-  private final Random random = new Random();
+  private final AtomicLong idGenerator;
   private final MongoClient client;
   private final MongoDatabase database;
   private final Config config;
+  private final ThinkTime thinkTime;
+  private final KeyGenerator scheduleIdGenerator;
+  private final KeyGenerator dayGenerator;
+  private final ScheduleGenerator scheduleGenerator;
+  private final FlightSearch flightSearch;
+  private final ReferenceCache referenceCache;
+  private final MongoSchema schema;
+  private final boolean denormalizedSchedule;
+  private final Timer scheduleRead;
+  private final Meter roundTrips;
+  private final CapacityControl capacityControl;
+  private final Meter capacityConflicts;
+  private final Meter capacityRetries;
+  private final Meter soldOut;
+  private final Meter bookingNotFound;
+  private final Meter seatConflicts;
+  private final StorageStatsSampler storageStatsSampler;
 
   private MongoFlightBenchmark(MongoClient client, MongoDatabase database, Config config) {
     super();
     this.client = client;
     this.database = database;
     this.config = config;
+    this.idGenerator = new AtomicLong(config.getUserIdOffset());
+    this.thinkTime = ThinkTime.create(config);
+    this.scheduleGenerator = ScheduleGenerator.create(config.getScaleFactor(),
+        LocalDate.now());
+    this.scheduleIdGenerator = KeyGenerator.create(config.getScheduleDistributionAsEnum(),
+        scheduleGenerator.getScheduleCount(), config);
+    this.dayGenerator = KeyGenerator.create(config.getDayDistributionAsEnum(),
+        config.getDayRange(), config);
+    this.flightSearch = FlightSearch.create(config, scheduleGenerator, scheduleIdGenerator);
+    this.referenceCache = ReferenceCache.create(config);
+    this.schema = config.getMongoSchemaAsEnum();
+    this.denormalizedSchedule = config.isMongoDenormalizedSchedule();
+    this.scheduleRead = MetricsManager.timer(Metric.SCHEDULE_READ,
+        denormalizedSchedule ? "denormalized" : "normalized");
+    this.roundTrips = MetricsManager.meter(Metric.ROUND_TRIPS);
+    this.capacityControl = config.getCapacityControlAsEnum();
+    final String capacityControlTag = capacityControl.name().toLowerCase(Locale.US);
+    this.capacityConflicts = MetricsManager.meter(Metric.CAPACITY_CONFLICT, capacityControlTag);
+    this.capacityRetries = MetricsManager.meter(Metric.CAPACITY_RETRY, capacityControlTag);
+    this.soldOut = MetricsManager.meter(Metric.SOLD_OUT, capacityControlTag);
+    this.bookingNotFound = MetricsManager.meter(Metric.BOOKING_NOT_FOUND);
+    this.seatConflicts = MetricsManager.meter(Metric.SEAT_CONFLICT);
+    this.storageStatsSampler = StorageStatsSampler.create(config, this::sampleStorageStats);
   }
 
   /**
@@ -87,10 +157,26 @@ public class MongoFlightBenchmark extends Benchmark {
       Config config) {
     Preconditions.checkArgument(config.getBookingSleep() >= 0);
     Preconditions.checkArgument(config.getDayRange() > 0);
+    Preconditions.checkArgument(config.getBookingModeAsEnum() == BookingMode.STATEMENTS,
+        "Booking mode " + config.getBookingMode() + " is not supported by Mongo");
+    Preconditions.checkArgument(config.getMongoBucketSize() > 0
+        && config.getMongoBucketSize() <= MAX_BUCKET_SIZE,
+        "Mongo bucket size must be between 1 and " + MAX_BUCKET_SIZE);
+    Preconditions.checkArgument(config.getCapacityControlAsEnum() == CapacityControl.NONE
+        || config.getMongoSchemaAsEnum() == MongoSchema.RELATIONAL,
+        "Capacity control requires the relational schema");
+    Preconditions.checkArgument(
+        config.getCapacityControlAsEnum() != CapacityControl.PESSIMISTIC
+        || !config.isDisableTransaction(),
+        "Pessimistic capacity control requires transactions");
+    Preconditions.checkArgument(config.getCapacityRetries() >= 0,
+        "Capacity retries must not be negative");
     MongoDatabase database = client.getDatabase(config.getTarget().getDatabase().getName());
-    return new MongoFlightBenchmark(client,
+    MongoFlightBenchmark benchmark = new MongoFlightBenchmark(client,
         database,
         config);
+    benchmark.storageStatsSampler.start();
+    return benchmark;
   }
 
   @Override
@@ -98,23 +184,358 @@ public class MongoFlightBenchmark extends Benchmark {
     Unchecked.runnable(this::setupDatabase).run();
   }
 
+  @Override
+  public void prewarm() {
+    for (String collection : new String[] { "schedule", "aircraft" }) {
+      long documents = 0;
+      for (Document document : database.getCollection(collection).find()
+          .hint(new Document("$natural", 1))) {
+        documents++;
+      }
+      logger.info("Prewarmed " + documents + " documents of " + collection);
+    }
+  }
+
+  @Override
+  public void preload() {
+    final Bson filter = Filters.lt("schedule_id", referenceCache.getMaximumSize());
+    final MongoIterable<Document> userSchedules = denormalizedSchedule
+        ? database.getCollection("schedule").find(filter)
+            .projection(getUserScheduleProjection())
+            .batchSize(config.getReportingFetchSize())
+        : database.getCollection("schedule").aggregate(getUserScheduleAggregate(filter))
+            .batchSize(config.getReportingFetchSize());
+    for (Document userSchedule : userSchedules) {
+      referenceCache.put(userSchedule.getInteger("schedule_id"), userSchedule);
+    }
+    logger.info("Preloaded " + referenceCache.size() + " schedules into the reference cache");
+  }
+
   @Override
   protected void iteration() {
+    Unchecked.runnable(this::book).run();
+  }
+
+  void book() throws Exception {
+    if (schema == MongoSchema.EMBEDDED) {
+      bookEmbedded();
+      roundTrips.mark();
+    } else if (config.isDisableTransaction()) {
+      userOperationWithoutTransaction();
+    } else {
+      userOperation();
+      roundTrips.mark();
+    }
+  }
+
+  /**
+   * Book embedding the seat and its payment in a bucket of the flight day with a single
+   * document update, that is atomic without a transaction.
+   */
+  private void bookEmbedded() throws Exception {
+    final Document userSchedule = getUserSchedule();
+    final Object userId = generateUserId();
+    final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+    final Date day = Date.valueOf(randomDay());
+    bookingSleep();
+    database.getCollection("flight_day").updateOne(
+        flightDayToUpdate(userSchedule, day),
+        flightDayUpdate(userSchedule, userId, currentTimestamp),
+        auditUpdateOptions());
+  }
+
+  /**
+   * Match a bucket of the flight day with room for another seat. When all the buckets are full
+   * the upsert creates a new one, so a flight day document never grows over
+   * {@code --mongo-bucket-size} seats. Concurrent bookings of a flight day without room may
+   * create more than one new bucket, which only leaves buckets partially filled.
+   */
+  Bson flightDayToUpdate(Document userSchedule, Date day) {
+    return Filters.and(
+        Filters.eq("schedule_id", userSchedule.get("schedule_id")),
+        Filters.eq("day", day),
+        Filters.lt("seats_occupied", config.getMongoBucketSize()));
+  }
+
+  Bson flightDayUpdate(Document userSchedule, Object userId, Timestamp currentTimestamp) {
+    return Updates.combine(
+        Updates.set("date", currentTimestamp),
+        Updates.inc("seats_occupied", 1),
+        Updates.push("seats", new Document()
+            .append("user_id", userId)
+            .append("amount", Schedule.paymentAmount(userSchedule.getString("duration")))
+            .append("date", currentTimestamp)));
+  }
+
+  MongoSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Return the collection with the seats of the users.
+   */
+  String getSeatCollection() {
+    return schema == MongoSchema.EMBEDDED ? "flight_day" : "seat";
+  }
+
+  /**
+   * Return the collection with the seats occupied of each schedule and day.
+   */
+  String getAuditCollection() {
+    return schema == MongoSchema.EMBEDDED ? "flight_day" : "audit";
+  }
+
+  /**
+   * Cancel a booking of a random user, deleting one of their seats and payments and releasing
+   * the seat in the audit document of its flight day.
+   */
+  void cancel() throws Exception {
+    if (config.isDisableTransaction()) {
+      cancel(null);
+    } else {
+      inTransaction(this::cancel);
+      roundTrips.mark();
+    }
+  }
+
+  private void cancel(ClientSession session) throws Exception {
+    final Object userId = randomBookingUserId();
+    final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+    final MongoCollection<Document> seat = database.getCollection("seat");
+    final MongoCollection<Document> payment = database.getCollection("payment");
+    final Bson userFilter = Filters.eq("user_id", userId);
+    final Document canceledSeat = session == null ? seat.findOneAndDelete(userFilter)
+        : seat.findOneAndDelete(session, userFilter);
+    if (canceledSeat == null) {
+      bookingNotFound.mark();
+      roundTrips.mark();
+      return;
+    }
+    bookingSleep();
+    if (session == null) {
+      payment.deleteOne(userFilter);
+    } else {
+      payment.deleteOne(session, userFilter);
+    }
+    releaseSeat(session, canceledSeat, currentTimestamp);
+    roundTrips.mark(3);
+  }
+
+  /**
+   * Move a booking of a random user to another flight and day, updating its seat and payment,
+   * taking a seat in the audit document of the new flight day (checking the capacity with the
+   * configured capacity control) and releasing the seat in the audit document of the old one.
+   * If the user already has a seat in the new flight day the booking is not moved, to keep a
+   * single seat per user and flight day as the Postgres primary key does.
+   */
+  void changeFlight() throws Exception {
     if (config.isDisableTransaction()) {
-      Unchecked.runnable(this::userOperationWithoutTransaction).run();
+      changeFlight(null);
+    } else {
+      inTransaction(this::changeFlight);
+      roundTrips.mark();
+    }
+  }
+
+  private void changeFlight(ClientSession session) throws Exception {
+    final Object userId = randomBookingUserId();
+    final MongoCollection<Document> seat = database.getCollection("seat");
+    final MongoCollection<Document> payment = database.getCollection("payment");
+    final Bson userFilter = Filters.eq("user_id", userId);
+    final List<Document> seats = (session == null ? seat.find(userFilter)
+        : seat.find(session, userFilter)).into(new ArrayList<>());
+    if (seats.isEmpty()) {
+      bookingNotFound.mark();
+      roundTrips.mark();
+      return;
+    }
+    final Document currentSeat = seats.get(0);
+    final Document userSchedule = session == null ? getUserSchedule()
+        : getUserSchedule(session);
+    final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+    final Date day = Date.valueOf(randomDay());
+    if (seats.stream().anyMatch(userSeat -> Objects.equals(
+        userSeat.get("schedule_id"), userSchedule.get("schedule_id"))
+        && userSeat.getDate("day").getTime() == day.getTime())) {
+      seatConflicts.mark();
+      roundTrips.mark();
+      return;
+    }
+    bookingSleep();
+    if (capacityControl == CapacityControl.NONE) {
+      if (session == null) {
+        insertAudit(userSchedule, day, currentTimestamp);
+      } else {
+        insertAudit(session, userSchedule, day, currentTimestamp);
+      }
+      roundTrips.mark();
+    } else if (!reserveSeat(session, userSchedule, day, currentTimestamp)) {
+      soldOut.mark();
+      roundTrips.mark();
+      return;
+    }
+    final Bson seatFilter = Filters.eq("_id", currentSeat.get("_id"));
+    final Bson seatUpdate = Updates.combine(
+        Updates.set("schedule_id", userSchedule.get("schedule_id")),
+        Updates.set("day", day),
+        Updates.set("date", currentTimestamp));
+    final Bson paymentUpdate = Updates.combine(
+        Updates.set("amount", Schedule.paymentAmount(userSchedule.getString("duration"))),
+        Updates.set("date", currentTimestamp));
+    if (session == null) {
+      seat.updateOne(seatFilter, seatUpdate);
+      payment.updateOne(userFilter, paymentUpdate);
     } else {
-      Unchecked.runnable(this::userOperation).run();
+      seat.updateOne(session, seatFilter, seatUpdate);
+      payment.updateOne(session, userFilter, paymentUpdate);
     }
+    releaseSeat(session, currentSeat, currentTimestamp);
+    roundTrips.mark(4);
   }
 
-  private Object generateUserId() {
+  /**
+   * Release the seat of the flight day of {@code seat} in its audit document.
+   */
+  private void releaseSeat(ClientSession session, Document seat, Timestamp currentTimestamp) {
+    updateAudit(session, Filters.and(
+        Filters.eq("schedule_id", seat.get("schedule_id")),
+        Filters.eq("day", seat.get("day")),
+        Filters.gt("seats_occupied", 0)),
+        Updates.combine(
+            Updates.set("date", currentTimestamp),
+            Updates.inc("seats_occupied", -1),
+            Updates.inc("version", 1)));
+  }
+
+  void viewItinerary() {
+    for (Document itinerary : database.getCollection(getSeatCollection())
+        .aggregate(getItineraryAggregate(randomUserId()))) {
+      itinerary.get("flight");
+    }
+  }
+
+  void search() {
+    final Schedule route = flightSearch.nextRoute();
+    final Date day = Date.valueOf(randomDay());
+    String lastDeparture = "";
+    int lastScheduleId = -1;
+    for (int page = 0; page < flightSearch.getPages(); page++) {
+      int flights = 0;
+      for (Document flight : database.getCollection("schedule")
+          .aggregate(getFlightSearchAggregate(route, day, lastDeparture, lastScheduleId))) {
+        flights++;
+        lastDeparture = flight.getString("departure");
+        lastScheduleId = flight.getInteger("schedule_id");
+      }
+      if (flights < flightSearch.getPageSize()) {
+        break;
+      }
+    }
+  }
+
+  void revenueReport() {
+    report(getSeatCollection(), getRevenueReportAggregate());
+  }
+
+  void loadFactorReport() {
+    report(getAuditCollection(), getLoadFactorReportAggregate());
+  }
+
+  private void report(String collection, List<Bson> pipeline) {
+    for (Document row : database.getCollection(collection)
+        .aggregate(pipeline)
+        .allowDiskUse(true)
+        .batchSize(config.getReportingFetchSize())) {
+      row.get("_id");
+    }
+  }
+
+  List<Bson> getRevenueReportAggregate() {
+    if (schema == MongoSchema.EMBEDDED) {
+      return Arrays.asList(
+          Aggregates.unwind("$seats"),
+          Aggregates.lookup("schedule", "schedule_id", "schedule_id", "schedule"),
+          Aggregates.unwind("$schedule"),
+          Aggregates.group(new Document()
+              .append("from_airport", "$schedule.from_airport")
+              .append("to_airport", "$schedule.to_airport")
+              .append("day", "$day"),
+              Accumulators.sum("seats", 1),
+              Accumulators.sum("revenue", "$seats.amount")));
+    }
+    return Arrays.asList(
+        Aggregates.lookup("payment", "user_id", "user_id", "payment"),
+        Aggregates.unwind("$payment"),
+        Aggregates.lookup("schedule", "schedule_id", "schedule_id", "schedule"),
+        Aggregates.unwind("$schedule"),
+        Aggregates.group(new Document()
+            .append("from_airport", "$schedule.from_airport")
+            .append("to_airport", "$schedule.to_airport")
+            .append("day", "$day"),
+            Accumulators.sum("seats", 1),
+            Accumulators.sum("revenue", "$payment.amount")));
+  }
+
+  List<Bson> getLoadFactorReportAggregate() {
+    return Arrays.asList(
+        Aggregates.lookup("schedule", "schedule_id", "schedule_id", "schedule"),
+        Aggregates.unwind("$schedule"),
+        Aggregates.lookup("aircraft", "schedule.aircraft", "iata", "aircraft"),
+        Aggregates.group(new Document()
+            .append("from_airport", "$schedule.from_airport")
+            .append("to_airport", "$schedule.to_airport")
+            .append("day", "$day"),
+            Accumulators.sum("seats_occupied", "$seats_occupied"),
+            Accumulators.sum("capacity", new Document("$toInt", new Document("$arrayElemAt",
+                Arrays.asList("$aircraft.capacity", 0))))),
+        Aggregates.project(new Document()
+            .append("seats_occupied", 1)
+            .append("capacity", 1)
+            .append("load_factor", new Document("$cond", Arrays.asList(
+                new Document("$eq", Arrays.asList("$capacity", 0)),
+                null,
+                new Document("$divide", Arrays.asList("$seats_occupied", "$capacity")))))));
+  }
+
+  FlightSearch getFlightSearch() {
+    return flightSearch;
+  }
+
+  Object generateUserId() {
     Object userId = idGenerator.getAndIncrement();
     return userId;
   }
 
-  private synchronized Object randomScheduleId() {
-    Object scheduleId = random.nextInt(MAX_SCHEDULE_ID);
-    return scheduleId;
+  Object randomUserId() {
+    final long generated = idGenerator.get() - config.getUserIdOffset();
+    if (generated <= 0) {
+      return config.getUserIdOffset();
+    }
+    Object userId = config.getUserIdOffset() + ThreadLocalRandom.current().nextLong(generated);
+    return userId;
+  }
+
+  /**
+   * Return the user id of a random booking, drawn uniformly from the history bookings loaded
+   * by setup, that have negative user ids, and the bookings generated by this run.
+   */
+  Object randomBookingUserId() {
+    final long history = config.getHistoryBookings();
+    final long generated = idGenerator.get() - config.getUserIdOffset();
+    if (history + generated <= 0) {
+      return config.getUserIdOffset();
+    }
+    final long index = ThreadLocalRandom.current().nextLong(history + generated);
+    Object userId = index < history ? -(index + 1) : config.getUserIdOffset() + index - history;
+    return userId;
+  }
+
+  int randomScheduleId() {
+    return scheduleIdGenerator.next();
+  }
+
+  LocalDate randomDay() {
+    return LocalDate.now().plus(dayGenerator.next(), ChronoUnit.DAYS);
   }
 
   private void setupDatabase() throws Exception {
@@ -124,43 +545,269 @@ public class MongoFlightBenchmark extends Benchmark {
     database.getCollection("seat").drop();
     database.getCollection("payment").drop();
     database.getCollection("audit").drop();
+    database.getCollection("flight_day").drop();
     CSVFormat csvFormat = CSVFormat.newFormat(';')
         .withNullString("\\N");
     logger.info("Importing aircraft");
     database.createCollection("aircraft");
-    MongoCollection<Document> aircraft = database.getCollection("aircraft");
-    CSVParser.parse(
+    final MongoCollection<Document> aircraft = database.getCollection("aircraft");
+    final Map<String, Document> aircraftByIata = new HashMap<>();
+    final String[] aircraftColumns = { "name", "icao", "iata", "capacity", "country" };
+    final List<Document> aircrafts = new ArrayList<>();
+    for (CSVRecord record : CSVParser.parse(
         MongoFlightBenchmark.class.getResourceAsStream("/aircrafts.txt"), 
-        StandardCharsets.UTF_8, csvFormat
-        .withHeader("name", "icao", "iata", "capacity", "country"))
-        .forEach(record -> aircraft.insertOne(new Document(
-            record.toMap().entrySet().stream()
-            .filter(e -> e.getValue() != null)
-            .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue())))));
-    aircraft.createIndex(Indexes.ascending("iata"));
-    logger.info("Importing schedule");
+        StandardCharsets.UTF_8, csvFormat.withHeader(aircraftColumns))) {
+      final Document document = new Document();
+      for (String column : aircraftColumns) {
+        final String value = record.get(column);
+        if (value != null) {
+          document.append(column, value);
+        }
+      }
+      aircrafts.add(document);
+      aircraftByIata.put(document.getString("iata"), document);
+    }
+    for (List<Document> batch : Lists.partition(aircrafts, LOAD_BATCH_SIZE)) {
+      insertMany(aircraft, batch);
+    }
     database.createCollection("schedule");
-    MongoCollection<Document> schedule = database.getCollection("schedule");
-    AtomicInteger scheduleId = new AtomicInteger(0);
-    CSVParser.parse(
-        MongoFlightBenchmark.class.getResourceAsStream("/schedule.txt"), 
-        StandardCharsets.UTF_8, csvFormat
-        .withHeader("from_airport", "to_airport", "valid_from", "valid_until", "days",
-            "departure", "arrival", "flight", "aircraft", "duration"))
-        .forEach(record -> schedule.insertOne(new Document(
-            Stream.concat(
-                ImmutableMap.of("schedule_id", scheduleId.getAndIncrement()).entrySet().stream(),
-                record.toMap().entrySet().stream())
-            .filter(e -> e.getValue() != null)
-            .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue())))));
-    schedule.createIndex(Indexes.ascending("schedule_id"));
+    final ParallelLoader loader = ParallelLoader.create(config.getLoadParallelism(),
+        LOAD_CHUNK_SIZE);
+    logger.info("Generating schedule with scale factor " + scheduleGenerator.getScaleFactor());
+    loader.load("schedules", scheduleGenerator.getScheduleCount(),
+        (from, to) -> loadSchedules(denormalizedSchedule ? aircraftByIata : null, from, to));
     logger.info("Creating seat, payment and audit");
     database.createCollection("seat");
     database.createCollection("payment");
     database.createCollection("audit");
+    database.createCollection("flight_day");
+    if (config.getHistoryBookings() > 0) {
+      final BookingGenerator bookingGenerator = BookingGenerator.create(scheduleGenerator,
+          LocalDate.now(), config.getDayRange(), config.getHistoryBookings());
+      final Timestamp historyTimestamp = Timestamp.from(Instant.now());
+      logger.info("Generating history of bookings");
+      if (schema == MongoSchema.EMBEDDED) {
+        loader.load("bookings", bookingGenerator.getBookingCount(),
+            (from, to) -> loadEmbeddedBookings(bookingGenerator, historyTimestamp, from, to));
+      } else {
+        loader.load("bookings", bookingGenerator.getBookingCount(),
+            (from, to) -> loadBookings(bookingGenerator, historyTimestamp, from, to));
+        database.getCollection("seat").aggregate(Arrays.asList(
+            Aggregates.group(new Document()
+                .append("schedule_id", "$schedule_id")
+                .append("day", "$day"),
+                Accumulators.max("date", "$date"),
+                Accumulators.sum("seats_occupied", 1)),
+            Aggregates.project(new Document()
+                .append("_id", 0)
+                .append("schedule_id", "$_id.schedule_id")
+                .append("day", "$_id.day")
+                .append("date", 1)
+                .append("seats_occupied", 1)),
+            Aggregates.out("audit")))
+            .allowDiskUse(true)
+            .toCollection();
+      }
+    }
+    loader.logTotal();
+    createIndexes();
+  }
+
+  /**
+   * Create the indexes once the data is loaded, so that each index is built with a single scan
+   * of its collection instead of being maintained on every insert. All the indexes of a
+   * collection are built by a single {@code createIndexes}.
+   */
+  private void createIndexes() {
+    final long startTime = System.nanoTime();
+    logger.info("Creating indexes");
+    database.getCollection("aircraft").createIndexes(Arrays.asList(
+        new IndexModel(Indexes.ascending("iata"))));
+    database.getCollection("schedule").createIndexes(Arrays.asList(
+        new IndexModel(denormalizedSchedule
+            ? Indexes.ascending("schedule_id", "duration", "capacity")
+            : Indexes.ascending("schedule_id")),
+        // Routes have a few flights each, the search filters the days mask and the validity
+        // window on the documents of the route
+        new IndexModel(Indexes.ascending("from_airport", "to_airport", "departure",
+            "schedule_id"))));
+    database.getCollection("seat").createIndexes(Arrays.asList(
+        new IndexModel(Indexes.ascending("user_id"))));
+    database.getCollection("payment").createIndexes(Arrays.asList(
+        new IndexModel(Indexes.ascending("user_id"))));
+    database.getCollection("audit").createIndexes(Arrays.asList(
+        new IndexModel(Indexes.ascending("schedule_id", "day"))));
+    database.getCollection("flight_day").createIndexes(Arrays.asList(
+        new IndexModel(Indexes.ascending("schedule_id", "day", "seats_occupied")),
+        new IndexModel(Indexes.ascending("seats.user_id"))));
+    logger.info("Created indexes in " + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+  }
+
+  /**
+   * Insert {@code documents} with an unordered {@code insertMany}, so the server does not have
+   * to apply them one after the other, returning the number of bytes sent. Documents are
+   * encoded once into raw BSON, that the driver sends as is.
+   */
+  private long insertMany(MongoCollection<Document> collection, List<Document> documents) {
+    final Codec<Document> codec = collection.getCodecRegistry().get(Document.class);
+    final List<RawBsonDocument> rawDocuments = new ArrayList<>(documents.size());
+    long bytes = 0;
+    for (Document document : documents) {
+      final RawBsonDocument rawDocument = new RawBsonDocument(document, codec);
+      bytes += rawDocument.getByteBuffer().remaining();
+      rawDocuments.add(rawDocument);
+    }
+    collection.withDocumentClass(RawBsonDocument.class)
+        .insertMany(rawDocuments, new InsertManyOptions().ordered(false));
+    return bytes;
+  }
+
+  /**
+   * Load the schedules from {@code from} to {@code to}, with the attributes of their aircraft
+   * if {@code aircraftByIata} is not {@code null}.
+   */
+  private long loadSchedules(Map<String, Document> aircraftByIata, long from, long to) {
+    final MongoCollection<Document> schedule = database.getCollection("schedule");
+    final List<Document> documents = new ArrayList<>(LOAD_BATCH_SIZE);
+    long bytes = 0;
+    for (long scheduleId = from; scheduleId < to; scheduleId++) {
+      final Document document = createSchedule(scheduleGenerator.get((int) scheduleId));
+      if (aircraftByIata != null) {
+        denormalizeAircraft(document, aircraftByIata.get(document.getString("aircraft")));
+      }
+      documents.add(document);
+      if (documents.size() >= LOAD_BATCH_SIZE) {
+        bytes += insertMany(schedule, documents);
+        documents.clear();
+      }
+    }
+    if (!documents.isEmpty()) {
+      bytes += insertMany(schedule, documents);
+    }
+    return bytes;
+  }
+
+  private Document createSchedule(Schedule schedule) {
+    Document document = new Document()
+        .append("schedule_id", schedule.getScheduleId())
+        .append("from_airport", schedule.getFromAirport())
+        .append("to_airport", schedule.getToAirport())
+        .append("valid_from", schedule.getValidFrom())
+        .append("valid_until", schedule.getValidUntil())
+        .append("days", schedule.getDays())
+        .append("days_mask", schedule.getDaysMask())
+        .append("departure", schedule.getDeparture())
+        .append("arrival", schedule.getArrival())
+        .append("flight", schedule.getFlight())
+        .append("aircraft", schedule.getAircraft())
+        .append("duration", schedule.getDuration());
+    document.values().removeIf(value -> value == null);
+    return document;
+  }
+
+  private void denormalizeAircraft(Document schedule, Document aircraft) {
+    if (aircraft == null) {
+      return;
+    }
+    if (aircraft.containsKey("capacity")) {
+      schedule.append("capacity", Integer.parseInt(aircraft.getString("capacity")));
+    }
+    if (aircraft.containsKey("name")) {
+      schedule.append("aircraft_name", aircraft.getString("name"));
+    }
+    if (aircraft.containsKey("country")) {
+      schedule.append("aircraft_country", aircraft.getString("country"));
+    }
+  }
+
+  private long loadBookings(BookingGenerator bookingGenerator, Timestamp timestamp,
+      long from, long to) {
+    final MongoCollection<Document> seat = database.getCollection("seat");
+    final MongoCollection<Document> payment = database.getCollection("payment");
+    final List<Document> seats = new ArrayList<>(LOAD_BATCH_SIZE);
+    final List<Document> payments = new ArrayList<>(LOAD_BATCH_SIZE);
+    long bytes = 0;
+    for (long index = from; index < to; index++) {
+      final BookingGenerator.Booking booking = bookingGenerator.get(index);
+      final Document userSchedule = new Document()
+          .append("schedule_id", booking.getSchedule().getScheduleId())
+          .append("duration", booking.getSchedule().getDuration());
+      seats.add(createSeat(userSchedule, booking.getUserId(),
+          Date.valueOf(booking.getDay()), timestamp));
+      payments.add(createPayment(userSchedule, booking.getUserId(), timestamp));
+      if (seats.size() >= LOAD_BATCH_SIZE) {
+        bytes += insertMany(seat, seats);
+        bytes += insertMany(payment, payments);
+        seats.clear();
+        payments.clear();
+      }
+    }
+    if (!seats.isEmpty()) {
+      bytes += insertMany(seat, seats);
+      bytes += insertMany(payment, payments);
+    }
+    return bytes;
+  }
+
+  /**
+   * Load bookings into the flight day buckets with the same update used by the embedded
+   * booking, so buckets respect the configured size. Updates are applied in order, since the
+   * bucket each one goes to depends on the previous ones, and their bytes are not counted.
+   */
+  private long loadEmbeddedBookings(BookingGenerator bookingGenerator, Timestamp timestamp,
+      long from, long to) {
+    final MongoCollection<Document> flightDay = database.getCollection("flight_day");
+    final List<WriteModel<Document>> updates = new ArrayList<>(LOAD_BATCH_SIZE);
+    for (long index = from; index < to; index++) {
+      final BookingGenerator.Booking booking = bookingGenerator.get(index);
+      final Document userSchedule = new Document()
+          .append("schedule_id", booking.getSchedule().getScheduleId())
+          .append("duration", booking.getSchedule().getDuration());
+      updates.add(new UpdateOneModel<>(
+          flightDayToUpdate(userSchedule, Date.valueOf(booking.getDay())),
+          flightDayUpdate(userSchedule, booking.getUserId(), timestamp),
+          auditUpdateOptions()));
+      if (updates.size() >= LOAD_BATCH_SIZE) {
+        flightDay.bulkWrite(updates);
+        updates.clear();
+      }
+    }
+    if (!updates.isEmpty()) {
+      flightDay.bulkWrite(updates);
+    }
+    return 0;
+  }
+
+  private void bookingSleep() throws InterruptedException {
+    if (thinkTime.isInsideTransaction()) {
+      thinkTime.sleep();
+    }
   }
 
   private void userOperation() throws Exception {
+    inTransaction(session -> {
+      final Document userSchedule = getUserSchedule(session);
+      final Object userId = generateUserId();
+      final Instant now = Instant.now();
+      final Timestamp currentTimestamp = Timestamp.from(now);
+      final Date day = Date.valueOf(randomDay());
+      bookingSleep();
+      if (capacityControl == CapacityControl.NONE) {
+        insertSeat(session, userSchedule, userId, day, currentTimestamp);
+        insertPayment(session, userSchedule, userId, currentTimestamp);
+        insertAudit(session, userSchedule, day, currentTimestamp);
+        roundTrips.mark(3);
+      } else if (reserveSeat(session, userSchedule, day, currentTimestamp)) {
+        insertSeat(session, userSchedule, userId, day, currentTimestamp);
+        insertPayment(session, userSchedule, userId, currentTimestamp);
+        roundTrips.mark(2);
+      } else {
+        soldOut.mark();
+      }
+    });
+  }
+
+  private void inTransaction(CheckedConsumer<ClientSession> operation) throws Exception {
     try (ClientSession session = client.startSession(
         ClientSessionOptions.builder()
         .causallyConsistent(!config.isMongoNotCasuallyConsistent())
@@ -171,65 +818,265 @@ public class MongoFlightBenchmark extends Benchmark {
           .writeConcern(config.getMongoWriteConcernAsWriteConcern())
           .build());
       try {
-        final Document userSchedule = getUserSchedule(session);
-        final Object userId = generateUserId();
-        final Instant now = Instant.now();
-        final Timestamp currentTimestamp = Timestamp.from(now);
-        final Date day = Date.valueOf(LocalDate.now().plus(
-            now.toEpochMilli() % config.getDayRange(), ChronoUnit.DAYS));
-        TimeUnit.SECONDS.sleep(config.getBookingSleep());
-        insertSeat(session, userSchedule, userId, currentTimestamp);
-        insertPayment(session, userSchedule, userId, currentTimestamp);
-        insertAudit(session, userSchedule, day, currentTimestamp);
+        operation.accept(session);
         session.commitTransaction();
-      } catch (Exception ex) {
+      } catch (Throwable ex) {
         try {
           session.abortTransaction();
         } catch (Exception abortEx) {
           logger.error(abortEx);
         }
-        if (ex instanceof MongoCommandException
-            && (((MongoCommandException) ex).hasErrorLabel(
-                MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)
-                || ((MongoCommandException) ex).hasErrorLabel(
-                    MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL))) {
+        if (isRetryable(ex)) {
           throw new RetryUserOperationException(ex);
         }
-        throw ex;
+        Throwables.throwIfInstanceOf(ex, Exception.class);
+        Throwables.throwIfUnchecked(ex);
+        throw new RuntimeException(ex);
       }
     }
   }
 
+  /**
+   * Return {@code true} if the transaction failed with an error that allows to retry it.
+   */
+  static boolean isRetryable(Throwable ex) {
+    return ex instanceof MongoCommandException
+        && (((MongoCommandException) ex).hasErrorLabel(
+            MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)
+            || ((MongoCommandException) ex).hasErrorLabel(
+                MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL));
+  }
+
   private void userOperationWithoutTransaction() throws Exception {
     final Document userSchedule = getUserSchedule();
     final Object userId = generateUserId();
     final Instant now = Instant.now();
     final Timestamp currentTimestamp = Timestamp.from(now);
-    final Date day = Date.valueOf(LocalDate.now().plus(
-        now.toEpochMilli() % config.getDayRange(), ChronoUnit.DAYS));
-    TimeUnit.SECONDS.sleep(config.getBookingSleep());
-    insertSeat(userSchedule, userId, currentTimestamp);
-    insertPayment(userSchedule, userId, currentTimestamp);
-    insertAudit(userSchedule, day, currentTimestamp);
+    final Date day = Date.valueOf(randomDay());
+    bookingSleep();
+    if (capacityControl == CapacityControl.NONE) {
+      insertSeat(userSchedule, userId, day, currentTimestamp);
+      insertPayment(userSchedule, userId, currentTimestamp);
+      insertAudit(userSchedule, day, currentTimestamp);
+      roundTrips.mark(3);
+    } else if (reserveSeat(null, userSchedule, day, currentTimestamp)) {
+      insertSeat(userSchedule, userId, day, currentTimestamp);
+      insertPayment(userSchedule, userId, currentTimestamp);
+      roundTrips.mark(2);
+    } else {
+      soldOut.mark();
+    }
+  }
+
+  /**
+   * Take a seat of the flight day in its audit document if the aircraft capacity allows it,
+   * with the configured capacity control. Return {@code false} if the flight day is sold out.
+   * The {@code session} is {@code null} when running without transactions.
+   */
+  private boolean reserveSeat(ClientSession session, Document userSchedule, Date day,
+      Timestamp currentTimestamp) {
+    final Document filter = auditToUpdate(userSchedule, day);
+    final int capacity = capacity(userSchedule);
+    createAudit(session, filter, currentTimestamp);
+    switch (capacityControl) {
+      case PESSIMISTIC:
+        return reserveSeatPessimistic(session, filter, capacity, currentTimestamp);
+      case OPTIMISTIC:
+        return reserveSeatOptimistic(session, filter, capacity, currentTimestamp);
+      case CONDITIONAL:
+      default:
+        return reserveSeatConditional(session, filter, capacity, currentTimestamp);
+    }
+  }
+
+  /**
+   * Take the seat with a {@code findOneAndUpdate} whose filter only matches while the seats
+   * occupied are below the capacity, that like {@code select ... for update} holds the document
+   * write lock until the transaction ends. No document is returned when the flight day is sold
+   * out. A booking that loses the lock race to a concurrent transaction fails with a write
+   * conflict, that is counted as a capacity conflict and retries the whole booking.
+   */
+  private boolean reserveSeatPessimistic(ClientSession session, Bson filter, int capacity,
+      Timestamp currentTimestamp) {
+    final Document audit;
+    try {
+      audit = database.getCollection("audit").findOneAndUpdate(session,
+          Filters.and(filter, Filters.lt("seats_occupied", capacity)),
+          Updates.combine(
+              Updates.set("date", currentTimestamp),
+              Updates.inc("seats_occupied", 1),
+              Updates.inc("version", 1)),
+          new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    } catch (MongoCommandException ex) {
+      if (isRetryable(ex)) {
+        capacityConflicts.mark();
+        capacityRetries.mark();
+      }
+      throw ex;
+    } finally {
+      roundTrips.mark();
+    }
+    return audit != null;
   }
 
-  private Document getUserSchedule(ClientSession session) {
-    AggregateIterable<Document> schedules = database.getCollection("schedule")
-        .aggregate(session,
-            getUserScheduleAggregate());
-    return schedules.first();
+  /**
+   * Read the audit document and increment the seats occupied only if its version did not
+   * change meanwhile, retrying up to {@code --capacity-retries} times on a conflict. Inside a
+   * transaction a concurrent change fails the update with a write conflict instead, that
+   * retries the whole booking.
+   */
+  private boolean reserveSeatOptimistic(ClientSession session, Bson filter, int capacity,
+      Timestamp currentTimestamp) {
+    final MongoCollection<Document> audit = database.getCollection("audit");
+    for (int retry = 0; ; retry++) {
+      final Document current = (session == null ? audit.find(filter)
+          : audit.find(session, filter)).first();
+      roundTrips.mark();
+      if (current.getInteger("seats_occupied", 0) >= capacity) {
+        return false;
+      }
+      final Integer version = current.getInteger("version");
+      final UpdateResult result = updateAudit(session, Filters.and(filter,
+          version == null ? Filters.exists("version", false) : Filters.eq("version", version)),
+          Updates.combine(
+              Updates.set("date", currentTimestamp),
+              Updates.inc("seats_occupied", 1),
+              Updates.inc("version", 1)));
+      roundTrips.mark();
+      if (result.getModifiedCount() == 1) {
+        return true;
+      }
+      capacityConflicts.mark();
+      if (retry >= config.getCapacityRetries()) {
+        throw new RetryUserOperationException(new IllegalStateException(
+            "Audit " + filter + " changed " + (retry + 1) + " times while booking"));
+      }
+      capacityRetries.mark();
+    }
   }
 
-  private Document getUserSchedule() {
-    AggregateIterable<Document> schedules = database.getCollection("schedule")
-        .aggregate(
-            getUserScheduleAggregate());
-    return schedules.first();
+  /**
+   * Increment the seats occupied with a single update whose filter only matches while the
+   * seats occupied are below the capacity.
+   */
+  private boolean reserveSeatConditional(ClientSession session, Bson filter, int capacity,
+      Timestamp currentTimestamp) {
+    final UpdateResult result = updateAudit(session, Filters.and(filter,
+        Filters.lt("seats_occupied", capacity)),
+        Updates.combine(
+            Updates.set("date", currentTimestamp),
+            Updates.inc("seats_occupied", 1),
+            Updates.inc("version", 1)));
+    roundTrips.mark();
+    if (result.getModifiedCount() == 0) {
+      capacityConflicts.mark();
+      return false;
+    }
+    return true;
   }
 
-  private List<Bson> getUserScheduleAggregate() {
+  /**
+   * Create the audit document of the flight day if it does not exist yet.
+   */
+  private void createAudit(ClientSession session, Bson filter, Timestamp currentTimestamp) {
+    final Bson update = Updates.combine(
+        Updates.setOnInsert("seats_occupied", 0),
+        Updates.setOnInsert("version", 0),
+        Updates.setOnInsert("date", currentTimestamp));
+    final MongoCollection<Document> audit = database.getCollection("audit");
+    if (session == null) {
+      audit.updateOne(filter, update, auditUpdateOptions());
+    } else {
+      audit.updateOne(session, filter, update, auditUpdateOptions());
+    }
+    roundTrips.mark();
+  }
+
+  private UpdateResult updateAudit(ClientSession session, Bson filter, Bson update) {
+    final MongoCollection<Document> audit = database.getCollection("audit");
+    if (session == null) {
+      return audit.updateOne(filter, update);
+    }
+    return audit.updateOne(session, filter, update);
+  }
+
+  /**
+   * Return the aircraft capacity of the schedule, that the normalized schedule read returns
+   * as the array of the looked up aircraft capacities and the denormalized one as a number.
+   */
+  private int capacity(Document userSchedule) {
+    Object capacity = userSchedule.get("capacity");
+    if (capacity instanceof List) {
+      capacity = ((List<?>) capacity).isEmpty() ? null : ((List<?>) capacity).get(0);
+    }
+    if (capacity == null) {
+      return Integer.MAX_VALUE;
+    }
+    if (capacity instanceof Number) {
+      return ((Number) capacity).intValue();
+    }
+    return Integer.parseInt(capacity.toString());
+  }
+
+  /**
+   * Return the schedule of a random flight from the reference cache, reading it on a cache miss.
+   * Only the read counts as a round trip.
+   */
+  private Document getUserSchedule(ClientSession session) throws Exception {
+    return referenceCache.get(randomScheduleId(),
+        scheduleId -> loadUserSchedule(session, scheduleId));
+  }
+
+  private Document getUserSchedule() throws Exception {
+    return referenceCache.get(randomScheduleId(),
+        scheduleId -> loadUserSchedule(null, scheduleId));
+  }
+
+  private Document loadUserSchedule(ClientSession session, int scheduleId) {
+    roundTrips.mark();
+    final MongoCollection<Document> schedule = database.getCollection("schedule");
+    final Timer.Context context = scheduleRead.time();
+    try {
+      if (denormalizedSchedule) {
+        final Bson filter = Filters.eq("schedule_id", scheduleId);
+        return (session == null ? schedule.find(filter) : schedule.find(session, filter))
+            .projection(getUserScheduleProjection())
+            .first();
+      }
+      final List<Bson> pipeline = getUserScheduleAggregate(scheduleId);
+      return (session == null ? schedule.aggregate(pipeline)
+          : schedule.aggregate(session, pipeline))
+          .first();
+    } finally {
+      context.stop();
+    }
+  }
+
+  boolean isDenormalizedSchedule() {
+    return denormalizedSchedule;
+  }
+
+  Timer getScheduleReadTimer() {
+    return scheduleRead;
+  }
+
+  /**
+   * Projection of the denormalized schedule covered by the
+   * {@code (schedule_id, duration, capacity)} index.
+   */
+  Bson getUserScheduleProjection() {
+    return Projections.fields(
+        Projections.include("schedule_id", "duration", "capacity"),
+        Projections.excludeId());
+  }
+
+  List<Bson> getUserScheduleAggregate(int scheduleId) {
+    return getUserScheduleAggregate(Filters.eq("schedule_id", scheduleId));
+  }
+
+  private List<Bson> getUserScheduleAggregate(Bson filter) {
     return Arrays.asList(
-        Aggregates.match(Filters.eq("schedule_id", randomScheduleId())),
+        Aggregates.match(filter),
         Aggregates.lookup("aircraft", "aircraft", "iata", "aircraft"),
         Aggregates.project(new Document()
             .append("schedule_id", 1)
@@ -237,21 +1084,101 @@ public class MongoFlightBenchmark extends Benchmark {
             .append("capacity", "$aircraft.capacity")));
   }
 
+  ReferenceCache getReferenceCache() {
+    return referenceCache;
+  }
+
+  List<Bson> getItineraryAggregate(Object userId) {
+    if (schema == MongoSchema.EMBEDDED) {
+      return Arrays.asList(
+          Aggregates.match(Filters.eq("seats.user_id", userId)),
+          Aggregates.unwind("$seats"),
+          Aggregates.match(Filters.eq("seats.user_id", userId)),
+          Aggregates.lookup("schedule", "schedule_id", "schedule_id", "schedule"),
+          Aggregates.unwind("$schedule"),
+          Aggregates.project(new Document()
+              .append("schedule_id", 1)
+              .append("date", "$seats.date")
+              .append("flight", "$schedule.flight")
+              .append("from_airport", "$schedule.from_airport")
+              .append("to_airport", "$schedule.to_airport")
+              .append("departure", "$schedule.departure")
+              .append("arrival", "$schedule.arrival")));
+    }
+    return Arrays.asList(
+        Aggregates.match(Filters.eq("user_id", userId)),
+        Aggregates.lookup("schedule", "schedule_id", "schedule_id", "schedule"),
+        Aggregates.unwind("$schedule"),
+        Aggregates.project(new Document()
+            .append("schedule_id", 1)
+            .append("date", 1)
+            .append("flight", "$schedule.flight")
+            .append("from_airport", "$schedule.from_airport")
+            .append("to_airport", "$schedule.to_airport")
+            .append("departure", "$schedule.departure")
+            .append("arrival", "$schedule.arrival")));
+  }
+
+  List<Bson> getFlightSearchAggregate(Schedule route, Date day,
+      String lastDeparture, int lastScheduleId) {
+    final String dayString = day.toLocalDate().toString();
+    return Arrays.asList(
+        Aggregates.match(Filters.and(
+            Filters.eq("from_airport", route.getFromAirport()),
+            Filters.eq("to_airport", route.getToAirport()),
+            Filters.or(
+                Filters.gt("departure", lastDeparture),
+                Filters.and(
+                    Filters.eq("departure", lastDeparture),
+                    Filters.gt("schedule_id", lastScheduleId))),
+            Filters.bitsAnySet("days_mask", FlightSearch.dayBit(day.toLocalDate())),
+            Filters.or(
+                Filters.exists("valid_from", false),
+                Filters.lte("valid_from", dayString)),
+            Filters.or(
+                Filters.exists("valid_until", false),
+                Filters.gte("valid_until", dayString)))),
+        Aggregates.sort(Sorts.ascending("departure", "schedule_id")),
+        Aggregates.limit(flightSearch.getPageSize()),
+        Aggregates.lookup("aircraft", "aircraft", "iata", "aircraft"),
+        Aggregates.lookup(getAuditCollection(),
+            Arrays.asList(new Variable<>("schedule_id", "$schedule_id")),
+            Arrays.asList(
+                Aggregates.match(Filters.and(
+                    Filters.eq("day", day),
+                    Filters.expr(new Document("$eq",
+                        Arrays.asList("$schedule_id", "$$schedule_id"))))),
+                Aggregates.project(Projections.include("seats_occupied"))),
+            "audit"),
+        Aggregates.project(new Document()
+            .append("schedule_id", 1)
+            .append("flight", 1)
+            .append("departure", 1)
+            .append("arrival", 1)
+            .append("available", new Document("$subtract", Arrays.asList(
+                new Document("$toInt", new Document("$arrayElemAt",
+                    Arrays.asList("$aircraft.capacity", 0))),
+                new Document("$sum", "$audit.seats_occupied"))))));
+  }
+
   private void insertSeat(ClientSession session, Document userSchedule,
-      Object userId, Timestamp currentTimestamp) {
+      Object userId, Date day, Timestamp currentTimestamp) {
     database.getCollection("seat").insertOne(session, 
-        createSeat(userSchedule, userId, currentTimestamp));
+        createSeat(userSchedule, userId, day, currentTimestamp));
   }
 
   private void insertSeat(Document userSchedule,
-      Object userId, Timestamp currentTimestamp) {
-    database.getCollection("seat").insertOne(createSeat(userSchedule, userId, currentTimestamp));
+      Object userId, Date day, Timestamp currentTimestamp) {
+    database.getCollection("seat").insertOne(
+        createSeat(userSchedule, userId, day, currentTimestamp));
   }
 
-  private Document createSeat(Document userSchedule, Object userId, Timestamp currentTimestamp) {
+  Document createSeat(Document userSchedule, Object userId, Date day,
+      Timestamp currentTimestamp) {
     return new Document()
         .append("user_id", userId)
         .append("schedule_id", userSchedule.get("schedule_id"))
+        .append("day", day)
         .append("date", currentTimestamp);
   }
 
@@ -267,14 +1194,10 @@ public class MongoFlightBenchmark extends Benchmark {
         createPayment(userSchedule, userId, currentTimestamp));
   }
 
-  private Document createPayment(Document userSchedule, Object userId, Timestamp currentTimestamp) {
+  Document createPayment(Document userSchedule, Object userId, Timestamp currentTimestamp) {
     return new Document()
         .append("user_id", userId)
-        .append("amount", Optional.ofNullable(userSchedule.getString("duration"))
-            .map(d -> d.split(":"))
-            .map(s -> Integer.parseInt(s[0]) * 60 + Integer.parseInt(s[1]))
-            .map(d -> Math.max(42, d * 42))
-            .orElse(42))
+        .append("amount", Schedule.paymentAmount(userSchedule.getString("duration")))
         .append("date", currentTimestamp);
   }
 
@@ -294,24 +1217,53 @@ public class MongoFlightBenchmark extends Benchmark {
         auditUpdateOptions());
   }
   
-  private Document auditToUpdate(Document userSchedule, Date day) {
+  Document auditToUpdate(Document userSchedule, Date day) {
     return new Document()
         .append("schedule_id", userSchedule.get("schedule_id"))
         .append("day", day);
   }
 
-  private Document auditUpdate(Timestamp currentTimestamp) {
+  Document auditUpdate(Timestamp currentTimestamp) {
     return new Document()
     .append("$set", new Document().append("date", currentTimestamp))
     .append("$inc", new Document().append("seats_occupied", 1));
   }
 
-  private UpdateOptions auditUpdateOptions() {
+  UpdateOptions auditUpdateOptions() {
     return new UpdateOptions().upsert(true);
   }
 
+  /**
+   * Sample the documents, sizes and bytes available for reuse in the files of the booking
+   * collections that exist, from their {@code collStats}.
+   */
+  private void sampleStorageStats(ObjLongConsumer<String> stats) {
+    final Set<String> collections = database.listCollectionNames().into(new HashSet<>());
+    for (String collection : new String[] { "seat", "payment", "audit", "flight_day" }) {
+      if (!collections.contains(collection)) {
+        continue;
+      }
+      final Document collStats = database.runCommand(new Document("collStats", collection));
+      stats.accept(collection + ".documents", longValue(collStats.get("count")));
+      stats.accept(collection + ".size", longValue(collStats.get("size")));
+      stats.accept(collection + ".storage-size", longValue(collStats.get("storageSize")));
+      stats.accept(collection + ".index-size", longValue(collStats.get("totalIndexSize")));
+      final Document wiredTiger = collStats.get("wiredTiger", Document.class);
+      if (wiredTiger != null && wiredTiger.containsKey("block-manager")) {
+        stats.accept(collection + ".reusable-bytes", longValue(
+            wiredTiger.get("block-manager", Document.class)
+            .get("file bytes available for reuse")));
+      }
+    }
+  }
+
+  private long longValue(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
   @Override
   protected void internalClose() throws Exception {
+    storageStatsSampler.close();
     client.close();
   }
 }
@@ -0,0 +1,79 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import com.ongres.benchmark.config.model.MongoSchema;
+import com.ongres.benchmark.workload.Operation;
+import com.ongres.benchmark.workload.WorkloadProvider;
+
+/**
+ * Operations of the {@code mongo} target.
+ */
+public class MongoWorkloadProvider implements WorkloadProvider {
+
+  @Override
+  public String getTarget() {
+    return "mongo";
+  }
+
+  @Override
+  public ImmutableMap<String, Operation> getOperations(Benchmark benchmark) {
+    final MongoFlightBenchmark flightBenchmark = (MongoFlightBenchmark) benchmark;
+    return ImmutableMap.<String, Operation>builder()
+        .put("book", flightBenchmark::book)
+        .put("view-itinerary", flightBenchmark::viewItinerary)
+        .put("search", flightBenchmark::search)
+        .putAll(isRelational(flightBenchmark)
+            ? ImmutableMap.of(
+                "cancel", flightBenchmark::cancel,
+                "change-flight", flightBenchmark::changeFlight)
+            : ImmutableMap.of())
+        .build();
+  }
+
+  @Override
+  public ImmutableMap<String, Operation> getReports(Benchmark benchmark) {
+    final MongoFlightBenchmark flightBenchmark = (MongoFlightBenchmark) benchmark;
+    return ImmutableMap.<String, Operation>builder()
+        .put("revenue", flightBenchmark::revenueReport)
+        .put("load-factor", flightBenchmark::loadFactorReport)
+        .build();
+  }
+
+  @Override
+  public ImmutableMap<String, String> getUnsupportedOperations(Benchmark benchmark) {
+    final MongoFlightBenchmark flightBenchmark = (MongoFlightBenchmark) benchmark;
+    if (isRelational(flightBenchmark)) {
+      return ImmutableMap.of();
+    }
+    final String reason = "it requires the relational schema (--mongo-schema relational)";
+    return ImmutableMap.of("cancel", reason, "change-flight", reason);
+  }
+
+  /**
+   * Cancellations and flight changes modify the seat, payment and audit collections of the
+   * relational schema.
+   */
+  private static boolean isRelational(MongoFlightBenchmark flightBenchmark) {
+    return flightBenchmark.getSchema() == MongoSchema.RELATIONAL;
+  }
+}
@@ -0,0 +1,40 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+/**
+ * Benchmark whose iterations do nothing, to measure the overhead of the harness (drivers, run
+ * gate, retry loop and metrics) that is otherwise accounted as database latency.
+ */
+public class NoopBenchmark extends Benchmark {
+
+  @Override
+  public void setup() {
+  }
+
+  @Override
+  protected void iteration() {
+  }
+
+  @Override
+  protected void internalClose() throws Exception {
+  }
+}
@@ -0,0 +1,238 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.ArrivalDistribution;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Drive a {@code BenchmarkRunner} in open loop. Iterations arrive on a timeline computed from the
+ * target rate, independently of the completion of previous iterations, and are queued to a pool
+ * of workers. Each iteration is run with the time it was intended to start so that the time
+ * spent waiting for a worker is accounted in the response time. The target rate can be changed
+ * while running; while it is zero no iteration is issued.
+ */
+public class OpenLoopDriver implements LoadDriver {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final BenchmarkRunner runner;
+  private final ArrivalDistribution arrivalDistribution;
+  private volatile double targetRate;
+  private final long iterations;
+  private final ThreadPoolExecutor workers;
+  private final Thread dispatcher;
+  private final SplittableRandom random = new SplittableRandom();
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
+  private final CompletableFuture<Void> termination = new CompletableFuture<>();
+  private volatile boolean stopped = false;
+  private volatile boolean cancelled = false;
+
+  /**
+   * Create an open loop driver that will run {@code iterations} iterations at
+   * {@code targetRate} iterations per second using {@code parallelism} workers.
+   */
+  public OpenLoopDriver(BenchmarkRunner runner, int parallelism, double targetRate,
+      ArrivalDistribution arrivalDistribution, long iterations) {
+    this(runner, parallelism, targetRate, arrivalDistribution, iterations,
+        new ThreadFactoryBuilder().setNameFormat("benchmark-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Create an open loop driver that will run {@code iterations} iterations at
+   * {@code targetRate} iterations per second using {@code parallelism} workers created by
+   * {@code threadFactory}.
+   */
+  public OpenLoopDriver(BenchmarkRunner runner, int parallelism, double targetRate,
+      ArrivalDistribution arrivalDistribution, long iterations, ThreadFactory threadFactory) {
+    Preconditions.checkArgument(parallelism > 0);
+    Preconditions.checkArgument(targetRate >= 0);
+    this.runner = runner;
+    this.arrivalDistribution = arrivalDistribution;
+    this.targetRate = targetRate;
+    this.iterations = iterations;
+    this.workers = new ThreadPoolExecutor(parallelism, parallelism,
+        0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    this.dispatcher = new Thread(this::dispatch, "benchmark-dispatcher");
+    this.dispatcher.setDaemon(true);
+  }
+
+  /**
+   * Start dispatching iterations.
+   */
+  public OpenLoopDriver start() {
+    dispatcher.start();
+    return this;
+  }
+
+  @Override
+  public Future<Void> getTermination() {
+    return termination;
+  }
+
+  private void dispatch() {
+    try {
+      long intendedStartTime = System.nanoTime();
+      for (long iteration = 0; iteration < iterations && !isStopped(); iteration++) {
+        intendedStartTime = waitNextArrival(intendedStartTime);
+        if (isStopped()) {
+          break;
+        }
+        final long iterationIntendedStartTime = intendedStartTime;
+        workers.execute(() -> runIteration(iterationIntendedStartTime));
+      }
+      workers.shutdown();
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      future.complete(null);
+    } catch (InterruptedException ex) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(ex);
+    } catch (Throwable ex) {
+      workers.shutdownNow();
+      future.completeExceptionally(ex);
+    } finally {
+      termination.complete(null);
+    }
+  }
+
+  /**
+   * Wait for the arrival that follows the one intended at {@code previousArrival} and return its
+   * intended start time. The interval is sampled once and scaled by the current target rate,
+   * that is read again each time the dispatcher is woken up so that rate changes take effect
+   * immediately.
+   */
+  private long waitNextArrival(long previousArrival) {
+    final double interval = nextInterval();
+    long lastArrival = previousArrival;
+    while (!isStopped()) {
+      final double rate = targetRate;
+      final long now = System.nanoTime();
+      if (rate <= 0) {
+        lastArrival = now;
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        continue;
+      }
+      final long arrival = lastArrival + (long) (interval * NANOS_PER_SECOND / rate);
+      if (arrival - now <= 0) {
+        return arrival;
+      }
+      LockSupport.parkNanos(this, arrival - now);
+    }
+    return lastArrival;
+  }
+
+  private boolean isStopped() {
+    return stopped || cancelled;
+  }
+
+  private void runIteration(long intendedStartTime) {
+    if (cancelled) {
+      return;
+    }
+    try {
+      runner.run(intendedStartTime);
+    } catch (BenchmarkClosedException ex) {
+      stop();
+    } catch (Throwable ex) {
+      logger.error("Iteration failed, stopping the benchmark", ex);
+      future.completeExceptionally(ex);
+      cancel(false);
+    }
+  }
+
+  /**
+   * Return the interval to the next arrival in units of the mean interval.
+   */
+  private double nextInterval() {
+    switch (arrivalDistribution) {
+      case CONSTANT:
+        return 1;
+      case POISSON:
+        return -Math.log(1 - random.nextDouble());
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  @Override
+  public void setLoad(double load) {
+    targetRate = Math.max(0, load);
+    LockSupport.unpark(dispatcher);
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    LockSupport.unpark(dispatcher);
+  }
+
+  /**
+   * Stop dispatching iterations and discard the ones waiting for a worker. Iterations already
+   * running are not interrupted.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    cancelled = true;
+    workers.getQueue().clear();
+    LockSupport.unpark(dispatcher);
+    return future.cancel(mayInterruptIfRunning);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return future.isCancelled();
+  }
+
+  @Override
+  public boolean isDone() {
+    return future.isDone();
+  }
+
+  @Override
+  public Void get() throws InterruptedException, ExecutionException {
+    return future.get();
+  }
+
+  @Override
+  public Void get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return future.get(timeout, unit);
+  }
+}
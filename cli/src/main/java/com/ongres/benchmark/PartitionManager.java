@@ -0,0 +1,290 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.PartitionInterval;
+import com.ongres.benchmark.jdbc.ConnectionSupplier;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Range partitions of the {@code seat} and {@code audit} tables by {@code day} and of the
+ * {@code payment} table by {@code date}.
+ *
+ * <p>Partitions are pre-created by the setup for the days bookings are made on, and rolled
+ * forward periodically during the run so that {@code --sql-partitions-ahead} partitions always
+ * exist past the last bookable day. Partitions are created with {@code partition of}, so they
+ * inherit the primary and foreign keys of their table.
+ */
+public class PartitionManager implements AutoCloseable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final ImmutableList<String> TABLES = ImmutableList.of("seat", "payment", "audit");
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+  private static final Pattern PARTITION_RELATION = Pattern.compile(
+      "\"Relation Name\": \"([a-z]+)_[0-9]{8}\"");
+
+  private final ConnectionSupplier connectionSupplier;
+  private final Config config;
+  private final PartitionInterval interval;
+  private final Meter partitionsCreated;
+  private ScheduledExecutorService rollForward;
+
+  private PartitionManager(ConnectionSupplier connectionSupplier, Config config) {
+    this.connectionSupplier = connectionSupplier;
+    this.config = config;
+    this.interval = config.getSqlPartitioningAsEnum();
+    this.partitionsCreated = MetricsManager.meter(Metric.PARTITIONS_CREATED);
+  }
+
+  /**
+   * Create an instance of {@class PartitionManager}.
+   */
+  public static PartitionManager create(ConnectionSupplier connectionSupplier, Config config) {
+    Preconditions.checkArgument(config.getSqlPartitionsAhead() >= 0,
+        "Partitions ahead must not be negative");
+    Preconditions.checkArgument(!config.getSqlPartitionCheckIntervalAsDuration().isNegative()
+        && !config.getSqlPartitionCheckIntervalAsDuration().isZero(),
+        "Partition check interval must be positive");
+    return new PartitionManager(connectionSupplier, config);
+  }
+
+  public boolean isEnabled() {
+    return interval != PartitionInterval.NONE;
+  }
+
+  /**
+   * Return the clause that partitions a table by {@code column}, empty if partitioning is
+   * disabled.
+   */
+  public String partitionBy(String column) {
+    if (!isEnabled()) {
+      return "";
+    }
+    return " partition by range (" + column + ")";
+  }
+
+  /**
+   * Create the partitions that cover from {@code from} to the last bookable day plus the
+   * partitions ahead, skipping those that already exist.
+   */
+  public void createPartitions(Connection connection, LocalDate from) throws SQLException {
+    if (!isEnabled()) {
+      return;
+    }
+    LocalDate last = floor(LocalDate.now().plusDays(config.getDayRange()));
+    for (int ahead = 0; ahead < config.getSqlPartitionsAhead(); ahead++) {
+      last = next(last);
+    }
+    int created = 0;
+    try (Statement statement = connection.createStatement()) {
+      for (String table : TABLES) {
+        final Set<String> partitions = getPartitions(connection, table);
+        for (LocalDate start = floor(from); !start.isAfter(last); start = next(start)) {
+          final String partition = table + "_" + start.format(PARTITION_SUFFIX);
+          if (partitions.contains(partition)) {
+            continue;
+          }
+          statement.execute("create table if not exists " + partition
+              + " partition of " + table
+              + " for values from ('" + start + "') to ('" + next(start) + "')");
+          created++;
+        }
+      }
+    }
+    if (created > 0) {
+      partitionsCreated.mark(created);
+      logger.info("Created " + created + " partitions up to " + last);
+    }
+  }
+
+  /**
+   * Start rolling partitions forward every {@code --sql-partition-check-interval}.
+   */
+  public synchronized void start() {
+    if (!isEnabled() || rollForward != null) {
+      return;
+    }
+    final long period = config.getSqlPartitionCheckIntervalAsDuration().toMillis();
+    rollForward = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("partition-roll-forward").setDaemon(true).build());
+    rollForward.scheduleWithFixedDelay(this::rollForward, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void rollForward() {
+    try (Connection connection = connectionSupplier.get()) {
+      if (!isPartitioned(connection)) {
+        return;
+      }
+      createPartitions(connection, LocalDate.now().minusDays(1));
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+    } catch (Exception ex) {
+      logger.warn("Error rolling partitions forward", ex);
+    }
+  }
+
+  /**
+   * Log the rows inserted into each partition during the run and how many partitions the
+   * planner scans for queries on a single day and on a single user.
+   */
+  public void report() {
+    if (!isEnabled()) {
+      return;
+    }
+    try (Connection connection = connectionSupplier.get()) {
+      if (!isPartitioned(connection)) {
+        return;
+      }
+      for (String table : TABLES) {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "select c.relname, s.n_tup_ins, s.n_live_tup"
+            + " from pg_inherits i"
+            + " inner join pg_class c on (c.oid = i.inhrelid)"
+            + " inner join pg_stat_user_tables s on (s.relid = c.oid)"
+            + " where i.inhparent = ?::regclass and s.n_tup_ins > 0"
+            + " order by c.relname")) {
+          statement.setString(1, table);
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+              logger.info("Partition " + resultSet.getString("relname")
+                  + " inserted " + resultSet.getLong("n_tup_ins")
+                  + " rows, " + resultSet.getLong("n_live_tup") + " live");
+            }
+          }
+        }
+      }
+      final String today = LocalDate.now().toString();
+      logPruning(connection, "audit", "select seats_occupied from audit"
+          + " where schedule_id = 0 and day = '" + today + "'");
+      logPruning(connection, "seat", "select schedule_id from seat"
+          + " where user_id = 0 and day = '" + today + "'");
+      logPruning(connection, "seat", "select schedule_id from seat where user_id = 0");
+      if (!connection.getAutoCommit()) {
+        connection.rollback();
+      }
+    } catch (Exception ex) {
+      logger.warn("Error reporting partitions", ex);
+    }
+  }
+
+  private void logPruning(Connection connection, String table, String query)
+      throws SQLException {
+    final int partitions = getPartitions(connection, table).size();
+    int scanned = 0;
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("explain (format json) " + query)) {
+      while (resultSet.next()) {
+        final Matcher matcher = PARTITION_RELATION.matcher(resultSet.getString(1));
+        while (matcher.find()) {
+          if (matcher.group(1).equals(table)) {
+            scanned++;
+          }
+        }
+      }
+    }
+    logger.info("Partition pruning: " + query + " scans " + scanned + " of " + partitions
+        + " partitions");
+  }
+
+  private boolean isPartitioned(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select count(*) from pg_partitioned_table"
+            + " where partrelid in (to_regclass('seat'), to_regclass('payment'),"
+            + " to_regclass('audit'))")) {
+      resultSet.next();
+      return resultSet.getInt(1) == TABLES.size();
+    }
+  }
+
+  private Set<String> getPartitions(Connection connection, String table) throws SQLException {
+    final Set<String> partitions = new HashSet<>();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "select c.relname from pg_inherits i"
+        + " inner join pg_class c on (c.oid = i.inhrelid)"
+        + " where i.inhparent = ?::regclass")) {
+      statement.setString(1, table);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          partitions.add(resultSet.getString(1));
+        }
+      }
+    }
+    return partitions;
+  }
+
+  private LocalDate floor(LocalDate day) {
+    switch (interval) {
+      case WEEK:
+        return day.with(DayOfWeek.MONDAY);
+      case MONTH:
+        return day.withDayOfMonth(1);
+      default:
+        return day;
+    }
+  }
+
+  private LocalDate next(LocalDate start) {
+    switch (interval) {
+      case WEEK:
+        return start.plusWeeks(1);
+      case MONTH:
+        return start.plusMonths(1);
+      default:
+        return start.plusDays(1);
+    }
+  }
+
+  /**
+   * Stop rolling partitions forward.
+   */
+  @Override
+  public synchronized void close() {
+    if (rollForward != null) {
+      rollForward.shutdownNow();
+      rollForward = null;
+    }
+  }
+}
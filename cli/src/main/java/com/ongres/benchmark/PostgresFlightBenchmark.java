@@ -20,9 +20,21 @@
 
 package com.ongres.benchmark;
 
+import com.codahale.metrics.Meter;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.BookingMode;
+import com.ongres.benchmark.config.model.CapacityControl;
 import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.CopyFormat;
+import com.ongres.benchmark.config.model.PartitionInterval;
+import com.ongres.benchmark.data.BookingGenerator;
+import com.ongres.benchmark.data.ParallelLoader;
+import com.ongres.benchmark.data.Schedule;
+import com.ongres.benchmark.data.ScheduleGenerator;
 import com.ongres.benchmark.jdbc.ConnectionSupplier;
+import com.ongres.benchmark.jdbc.CopyInWriter;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -34,34 +46,83 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
-import java.util.Optional;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bson.Document;
 import org.jooq.lambda.Unchecked;
+import org.jooq.lambda.fi.util.function.CheckedConsumer;
 import org.postgresql.copy.CopyManager;
 import org.postgresql.jdbc.PgConnection;
 import org.postgresql.util.PSQLException;
 
 public class PostgresFlightBenchmark extends Benchmark {
 
-  private static final int MAX_SCHEDULE_ID = 14185;
+  private static final int LOAD_CHUNK_SIZE = 10_000;
 
   private final Logger logger = LogManager.getLogger();
 
-  private final AtomicLong idGenerator = new AtomicLong();
-  private final Random random = new Random();
+  private final AtomicLong idGenerator;
   private final ConnectionSupplier connectionSupplier;
   private final Config config;
+  private final ThinkTime thinkTime;
+  private final KeyGenerator scheduleIdGenerator;
+  private final KeyGenerator dayGenerator;
+  private final ScheduleGenerator scheduleGenerator;
+  private final FlightSearch flightSearch;
+  private final ReferenceCache referenceCache;
+  private final PartitionManager partitionManager;
+  private final CapacityControl capacityControl;
+  private final Meter capacityConflicts;
+  private final Meter capacityRetries;
+  private final Meter soldOut;
+  private final Meter bookingNotFound;
+  private final Meter seatConflicts;
+  private final StorageStatsSampler storageStatsSampler;
+  private final BookingMode bookingMode;
+  private final String beginTransaction;
+  private final Meter roundTrips;
+  private final Map<String, StatementMetrics> statementMetrics = new ConcurrentHashMap<>();
 
   private PostgresFlightBenchmark(ConnectionSupplier connectionSupplier, Config config) {
     super();
     this.connectionSupplier = connectionSupplier;
     this.config = config;
+    this.idGenerator = new AtomicLong(config.getUserIdOffset());
+    this.thinkTime = ThinkTime.create(config);
+    this.scheduleGenerator = ScheduleGenerator.create(config.getScaleFactor(),
+        LocalDate.now());
+    this.scheduleIdGenerator = KeyGenerator.create(config.getScheduleDistributionAsEnum(),
+        scheduleGenerator.getScheduleCount(), config);
+    this.dayGenerator = KeyGenerator.create(config.getDayDistributionAsEnum(),
+        config.getDayRange(), config);
+    this.flightSearch = FlightSearch.create(config, scheduleGenerator, scheduleIdGenerator);
+    this.referenceCache = ReferenceCache.create(config);
+    this.partitionManager = PartitionManager.create(connectionSupplier, config);
+    this.capacityControl = config.getCapacityControlAsEnum();
+    final String capacityControlTag = capacityControl.name().toLowerCase(Locale.US);
+    this.capacityConflicts = MetricsManager.meter(Metric.CAPACITY_CONFLICT, capacityControlTag);
+    this.capacityRetries = MetricsManager.meter(Metric.CAPACITY_RETRY, capacityControlTag);
+    this.soldOut = MetricsManager.meter(Metric.SOLD_OUT, capacityControlTag);
+    this.bookingNotFound = MetricsManager.meter(Metric.BOOKING_NOT_FOUND);
+    this.seatConflicts = MetricsManager.meter(Metric.SEAT_CONFLICT);
+    this.storageStatsSampler = StorageStatsSampler.create(config, this::sampleStorageStats);
+    this.bookingMode = config.getBookingModeAsEnum();
+    this.beginTransaction = beginTransaction(config);
+    this.roundTrips = MetricsManager.meter(Metric.ROUND_TRIPS);
   }
 
   /**
@@ -71,7 +132,22 @@ public class PostgresFlightBenchmark extends Benchmark {
       Config config) {
     Preconditions.checkArgument(config.getBookingSleep() >= 0);
     Preconditions.checkArgument(config.getDayRange() > 0);
-    return new PostgresFlightBenchmark(connectionSupplier, config);
+    Preconditions.checkArgument(config.getCapacityControlAsEnum() == CapacityControl.NONE
+        || config.getBookingModeAsEnum() == BookingMode.STATEMENTS,
+        "Capacity control requires the statements booking mode");
+    Preconditions.checkArgument(
+        config.getCapacityControlAsEnum() != CapacityControl.PESSIMISTIC
+        || !config.isDisableTransaction(),
+        "Pessimistic capacity control requires transactions");
+    Preconditions.checkArgument(config.getCapacityRetries() >= 0,
+        "Capacity retries must not be negative");
+    Preconditions.checkArgument(!config.isSqlUnloggedLoad()
+        || config.getSqlPartitioningAsEnum() == PartitionInterval.NONE,
+        "Unlogged load is not supported with partitioning");
+    PostgresFlightBenchmark benchmark = new PostgresFlightBenchmark(connectionSupplier, config);
+    benchmark.partitionManager.start();
+    benchmark.storageStatsSampler.start();
+    return benchmark;
   }
 
   @Override
@@ -79,25 +155,68 @@ public class PostgresFlightBenchmark extends Benchmark {
     Unchecked.runnable(this::databaseSetup).run();
   }
 
+  @Override
+  public void prewarm() {
+    Unchecked.runnable(this::databasePrewarm).run();
+  }
+
+  @Override
+  public void preload() {
+    Unchecked.runnable(this::referenceCachePreload).run();
+  }
+
   @Override
   protected void iteration() {
-    Unchecked.runnable(this::userOperation).run();
+    Unchecked.runnable(this::book).run();
   }
 
-  private Object generateUserId() {
+  Object generateUserId() {
     Object userId = idGenerator.getAndIncrement();
     return userId;
   }
 
-  private synchronized Object randomScheduleId() {
-    Object scheduleId = random.nextInt(MAX_SCHEDULE_ID);
-    return scheduleId;
+  Object randomUserId() {
+    final long generated = idGenerator.get() - config.getUserIdOffset();
+    if (generated <= 0) {
+      return config.getUserIdOffset();
+    }
+    Object userId = config.getUserIdOffset() + ThreadLocalRandom.current().nextLong(generated);
+    return userId;
+  }
+
+  /**
+   * Return the user id of a random booking, drawn uniformly from the history bookings loaded
+   * by setup, that have negative user ids, and the bookings generated by this run.
+   */
+  Object randomBookingUserId() {
+    final long history = config.getHistoryBookings();
+    final long generated = idGenerator.get() - config.getUserIdOffset();
+    if (history + generated <= 0) {
+      return config.getUserIdOffset();
+    }
+    final long index = ThreadLocalRandom.current().nextLong(history + generated);
+    Object userId = index < history ? -(index + 1) : config.getUserIdOffset() + index - history;
+    return userId;
+  }
+
+  BookingMode getBookingMode() {
+    return bookingMode;
+  }
+
+  int randomScheduleId() {
+    return scheduleIdGenerator.next();
+  }
+
+  LocalDate randomDay() {
+    return LocalDate.now().plus(dayGenerator.next(), ChronoUnit.DAYS);
   }
 
   private void databaseSetup() throws Exception {
     try (Connection connection = connectionSupplier.get();
         Statement statement = connection.createStatement()) {
       logger.info("Cleanup schema");
+      statement.execute("drop function if exists book(bigint,int,date,timestamp)");
+      statement.execute("drop function if exists payment_amount(text)");
       statement.execute("drop table if exists audit");
       statement.execute("drop table if exists payment");
       statement.execute("drop table if exists seat");
@@ -105,6 +224,8 @@ public class PostgresFlightBenchmark extends Benchmark {
       statement.execute("drop sequence if exists schedule_id");
       statement.execute("drop table if exists aircraft");
       logger.info("Creating schema");
+      final String createLoadedTable = config.isSqlUnloggedLoad()
+          ? "create unlogged table " : "create table ";
       statement.execute("create extension if not exists \"uuid-ossp\"");
       statement.execute("create table aircraft ("
           + "name text, "
@@ -112,78 +233,898 @@ public class PostgresFlightBenchmark extends Benchmark {
           + "iata text, "
           + "capacity integer, "
           + "country text)");
-      statement.execute("create table schedule ("
+      statement.execute(createLoadedTable + "schedule ("
           + "from_airport text, "
           + "to_airport text, "
-          + "valid_from text, "
-          + "valid_until text, "
+          + "valid_from date, "
+          + "valid_until date, "
           + "days integer, "
           + "departure text, "
           + "arrival text, "
           + "flight text, "
           + "aircraft text, "
-          + "duration text)");
-      statement.execute("create table seat ("
+          + "duration text, "
+          + "schedule_id int not null, "
+          + "days_mask int)");
+      statement.execute(createLoadedTable + "seat ("
           + "user_id bigint not null,"
           + "schedule_id int not null,"
           + "day date not null,"
-          + "date timestamp without time zone,"
-          + "primary key (user_id,schedule_id,day))");
-      statement.execute("create table payment ("
+          + "date timestamp without time zone)"
+          + partitionManager.partitionBy("day"));
+      statement.execute(createLoadedTable + "payment ("
           + "user_id bigint,"
           + "amount money,"
-          + "date timestamp without time zone)");
-      statement.execute("create table audit ("
+          + "date timestamp without time zone)"
+          + partitionManager.partitionBy("date"));
+      statement.execute(createLoadedTable + "audit ("
           + "schedule_id int not null,"
           + "day date not null,"
           + "date timestamp without time zone,"
           + "seats_occupied int,"
-          + "primary key (schedule_id,day))");
+          + "version int not null default 0)"
+          + partitionManager.partitionBy("day"));
+      partitionManager.createPartitions(connection, config.getHistoryBookings() > 0
+          ? LocalDate.now().minusDays(BookingGenerator.HISTORY_DAYS)
+          : LocalDate.now().minusDays(1));
       if (!config.isDisableTransaction()) {
         connection.commit();
       }
-      logger.info("Importing data");
+      logger.info("Importing aircraft");
       PgConnection pgConnection = connection.unwrap(PgConnection.class);
       CopyManager copyManager = pgConnection.getCopyAPI();
       copyManager.copyIn("copy aircraft from stdin"
           + " with csv header delimiter ';' null '\\N'", 
           PostgresFlightBenchmark.class.getResourceAsStream("/aircrafts.txt"));
-      copyManager.copyIn("copy schedule from stdin"
-          + " with csv header delimiter ';' null '\\N'", 
-          PostgresFlightBenchmark.class.getResourceAsStream("/schedule.txt"));
       if (!config.isDisableTransaction()) {
         connection.commit();
       }
-      statement.execute("create sequence schedule_id minvalue 0");
-      statement.execute("alter table schedule add column schedule_id int"
-          + " primary key default nextval('schedule_id')");
-      statement.execute("alter table seat add"
-          + " foreign key (schedule_id) references schedule(schedule_id)");
-      statement.execute("alter table audit add"
-          + " foreign key (schedule_id) references schedule(schedule_id)");
+      if (config.getSqlCopyFormatAsEnum() == CopyFormat.BINARY
+          && config.getHistoryBookings() > 0) {
+        CopyInWriter.checkMoneyDigits(connection);
+      }
+    }
+    final ParallelLoader loader = ParallelLoader.create(
+        Math.min(config.getLoadParallelism(), config.getMaxConnections()), LOAD_CHUNK_SIZE);
+    logger.info("Generating schedule with scale factor " + scheduleGenerator.getScaleFactor());
+    loader.load("schedules", scheduleGenerator.getScheduleCount(), this::loadSchedules);
+    if (config.getHistoryBookings() > 0) {
+      final BookingGenerator bookingGenerator = BookingGenerator.create(scheduleGenerator,
+          LocalDate.now(), config.getDayRange(), config.getHistoryBookings());
+      final Timestamp historyTimestamp = Timestamp.from(Instant.now());
+      logger.info("Generating history of bookings");
+      loader.load("bookings", bookingGenerator.getBookingCount(),
+          (from, to) -> loadBookings(bookingGenerator, historyTimestamp, from, to));
+      executeInParallel("audit", Arrays.asList(Arrays.asList(
+          "insert into audit (schedule_id,day,date,seats_occupied)"
+          + " select schedule_id, day, max(date), count(*) from seat"
+          + " group by schedule_id, day")));
+    }
+    loader.logTotal();
+    final String setLogged = config.isSqlUnloggedLoad() ? "set logged" : null;
+    executeInParallel("keys and indexes", Arrays.asList(
+        Arrays.asList(
+            setLogged == null ? null : "alter table schedule " + setLogged,
+            "alter table schedule add primary key (schedule_id)",
+            // Routes have a few flights each, the search filters the days mask and the
+            // validity window on the rows of the route
+            "create index schedule_route on schedule"
+            + " (from_airport, to_airport, departure, schedule_id)"),
+        Arrays.asList("create index aircraft_iata on aircraft (iata)"),
+        Arrays.asList(
+            setLogged == null ? null : "alter table seat " + setLogged,
+            "alter table seat add primary key (user_id,schedule_id,day)"),
+        Arrays.asList(
+            setLogged == null ? null : "alter table payment " + setLogged,
+            "create index payment_user_id on payment (user_id)"),
+        Arrays.asList(
+            setLogged == null ? null : "alter table audit " + setLogged,
+            "alter table audit add primary key (schedule_id,day)")));
+    if (partitionManager.isEnabled()) {
+      // Foreign keys of partitioned tables can not be added not valid
+      executeInParallel("foreign keys", Arrays.asList(
+          Arrays.asList("alter table seat add constraint seat_schedule_id_fkey"
+              + " foreign key (schedule_id) references schedule(schedule_id)"),
+          Arrays.asList("alter table audit add constraint audit_schedule_id_fkey"
+              + " foreign key (schedule_id) references schedule(schedule_id)")));
+    } else {
+      executeInParallel("foreign keys", Arrays.asList(Arrays.asList(
+          "alter table seat add constraint seat_schedule_id_fkey"
+          + " foreign key (schedule_id) references schedule(schedule_id) not valid",
+          "alter table audit add constraint audit_schedule_id_fkey"
+          + " foreign key (schedule_id) references schedule(schedule_id) not valid")));
+      executeInParallel("foreign key validations", Arrays.asList(
+          Arrays.asList("alter table seat validate constraint seat_schedule_id_fkey"),
+          Arrays.asList("alter table audit validate constraint audit_schedule_id_fkey")));
+    }
+    try (Connection connection = connectionSupplier.get();
+        Statement statement = connection.createStatement()) {
+      statement.execute("create function payment_amount(p_duration text) returns int"
+          + " language sql immutable as $$"
+          + " select greatest(42, (split_part(p_duration, ':', 1)::int * 60"
+          + " + split_part(p_duration, ':', 2)::int) * 42)"
+          + " $$");
+      statement.execute("create function book(p_user_id bigint, p_schedule_id int,"
+          + " p_day date, p_date timestamp) returns void"
+          + " language plpgsql as $$"
+          + " declare"
+          + " v_duration text;"
+          + " begin"
+          + " select duration into strict v_duration"
+          + " from schedule"
+          + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+          + " where schedule.schedule_id = p_schedule_id"
+          + " limit 1;"
+          + " insert into seat (user_id,schedule_id,day,date)"
+          + " values (p_user_id,p_schedule_id,p_day,p_date);"
+          + " insert into payment (user_id,amount,date)"
+          + " values (p_user_id,payment_amount(v_duration),p_date);"
+          + " insert into audit (schedule_id,day,seats_occupied,date)"
+          + " values (p_schedule_id,p_day,1,p_date)"
+          + " on conflict (schedule_id,day)"
+          + " do update set seats_occupied = audit.seats_occupied + 1, date = p_date;"
+          + " end $$");
       if (!config.isDisableTransaction()) {
         connection.commit();
       }
     }
   }
 
-  private void userOperation() throws Exception {
+  /**
+   * Execute the statements of each of {@code steps} in order on its own connection, running the
+   * steps in parallel, and log the time spent by each statement and by all the steps. The
+   * {@code null} statements are skipped. Foreign keys are added {@code not valid} and
+   * validated in separate steps, since validating only takes a lock that does not conflict
+   * with the validation of the other tables referencing the same table.
+   */
+  private void executeInParallel(String name, List<List<String>> steps) throws Exception {
+    final long startTime = System.nanoTime();
+    logger.info("Building " + name);
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(steps.size(), Math.min(config.getLoadParallelism(), config.getMaxConnections())),
+        new ThreadFactoryBuilder().setNameFormat("setup-%d").setDaemon(true).build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (List<String> step : steps) {
+        futures.add(executor.submit(() -> {
+          try (Connection connection = connectionSupplier.get();
+              Statement statement = connection.createStatement()) {
+            for (String sql : step) {
+              if (sql == null) {
+                continue;
+              }
+              final long statementStartTime = System.nanoTime();
+              statement.execute(sql);
+              if (!config.isDisableTransaction()) {
+                connection.commit();
+              }
+              logger.info("Executed " + sql + " in "
+                  + (System.nanoTime() - statementStartTime) / 1_000_000 + "ms");
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          futures.forEach(otherFuture -> otherFuture.cancel(true));
+          if (ex.getCause() instanceof Exception) {
+            throw (Exception) ex.getCause();
+          }
+          throw ex;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    logger.info("Built " + name + " in " + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+  }
+
+  private long loadSchedules(long from, long to) throws Exception {
+    final long bytes;
     try (Connection connection = connectionSupplier.get()) {
-      try {
-        final Document userSchedule = getUserSchedule(connection);
-        final Object userId = generateUserId();
-        final Instant now = Instant.now();
-        final Timestamp currentTimestamp = Timestamp.from(now);
-        final Date day = Date.valueOf(LocalDate.now().plus(
-            now.toEpochMilli() % config.getDayRange(), ChronoUnit.DAYS));
-        TimeUnit.SECONDS.sleep(config.getBookingSleep());
+      try (CopyInWriter writer = CopyInWriter.create(connection, "schedule"
+          + " (from_airport,to_airport,valid_from,valid_until,days,departure,arrival,"
+          + "flight,aircraft,duration,schedule_id,days_mask)",
+          config.getSqlCopyFormatAsEnum())) {
+        for (long scheduleId = from; scheduleId < to; scheduleId++) {
+          final Schedule schedule = scheduleGenerator.get((int) scheduleId);
+          writer.value(schedule.getFromAirport())
+              .value(schedule.getToAirport())
+              .value(toDate(schedule.getValidFrom()))
+              .value(toDate(schedule.getValidUntil()))
+              .value(schedule.getDays() == null ? null : Integer.valueOf(schedule.getDays()))
+              .value(schedule.getDeparture())
+              .value(schedule.getArrival())
+              .value(schedule.getFlight())
+              .value(schedule.getAircraft())
+              .value(schedule.getDuration())
+              .value(schedule.getScheduleId())
+              .value(schedule.getDaysMask())
+              .endRow();
+        }
+        writer.finish();
+        bytes = writer.getBytesWritten();
+      }
+      if (!config.isDisableTransaction()) {
+        connection.commit();
+      }
+    }
+    return bytes;
+  }
+
+  private static LocalDate toDate(String date) {
+    return date == null ? null : LocalDate.parse(date);
+  }
+
+  private long loadBookings(BookingGenerator bookingGenerator, Timestamp timestamp,
+      long from, long to) throws Exception {
+    long bytes = 0;
+    try (Connection connection = connectionSupplier.get()) {
+      try (CopyInWriter writer = CopyInWriter.create(connection,
+          "seat (user_id,schedule_id,day,date)", config.getSqlCopyFormatAsEnum())) {
+        for (long index = from; index < to; index++) {
+          final BookingGenerator.Booking booking = bookingGenerator.get(index);
+          writer.value(booking.getUserId())
+              .value(booking.getSchedule().getScheduleId())
+              .value(booking.getDay())
+              .value(timestamp)
+              .endRow();
+        }
+        writer.finish();
+        bytes += writer.getBytesWritten();
+      }
+      try (CopyInWriter writer = CopyInWriter.create(connection,
+          "payment (user_id,amount,date)", config.getSqlCopyFormatAsEnum())) {
+        for (long index = from; index < to; index++) {
+          final BookingGenerator.Booking booking = bookingGenerator.get(index);
+          writer.value(booking.getUserId())
+              .money(booking.getSchedule().getPaymentAmount())
+              .value(timestamp)
+              .endRow();
+        }
+        writer.finish();
+        bytes += writer.getBytesWritten();
+      }
+      if (!config.isDisableTransaction()) {
+        connection.commit();
+      }
+    }
+    return bytes;
+  }
+
+  private void databasePrewarm() throws Exception {
+    try (Connection connection = connectionSupplier.get();
+        Statement statement = connection.createStatement()) {
+      statement.execute("create extension if not exists pg_prewarm");
+      for (String table : new String[] { "schedule", "aircraft" }) {
+        try (ResultSet resultSet = statement.executeQuery("select"
+            + " sum(pg_prewarm(c.oid)) from pg_class c"
+            + " where c.oid = '" + table + "'::regclass"
+            + " or c.oid in (select indexrelid from pg_index"
+            + " where indrelid = '" + table + "'::regclass)")) {
+          resultSet.next();
+          logger.info("Prewarmed " + resultSet.getLong(1) + " blocks of " + table
+              + " and its indexes");
+        }
+      }
+      if (!config.isDisableTransaction()) {
+        connection.commit();
+      }
+    }
+  }
+
+  private void referenceCachePreload() throws Exception {
+    stream("select schedule_id, duration, capacity"
+        + " from schedule"
+        + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+        + " where schedule.schedule_id < " + referenceCache.getMaximumSize(),
+        resultSet -> referenceCache.put(resultSet.getInt("schedule_id"),
+            getUserSchedule(resultSet)));
+    logger.info("Preloaded " + referenceCache.size() + " schedules into the reference cache");
+  }
+
+  private void bookingSleep() throws InterruptedException {
+    if (thinkTime.isInsideTransaction()) {
+      thinkTime.sleep();
+    }
+  }
+
+  void book() throws Exception {
+    switch (bookingMode) {
+      case PIPELINED:
+        bookPipelined();
+        break;
+      case FUNCTION:
+        bookWithFunction();
+        break;
+      case STATEMENTS:
+      default:
+        bookWithStatements();
+        break;
+    }
+  }
+
+  private void bookWithStatements() throws Exception {
+    inTransaction(connection -> {
+      final Document userSchedule = getUserSchedule(connection);
+      final Object userId = generateUserId();
+      final Instant now = Instant.now();
+      final Timestamp currentTimestamp = Timestamp.from(now);
+      final Date day = Date.valueOf(randomDay());
+      bookingSleep();
+      if (capacityControl == CapacityControl.NONE) {
         insertSeat(connection, userSchedule, userId, day, currentTimestamp);
         insertPayment(connection, userSchedule, userId, currentTimestamp);
         insertAudit(connection, userSchedule, day, currentTimestamp);
+        roundTrips.mark(3);
+      } else if (reserveSeat(connection, userSchedule, day, currentTimestamp)) {
+        insertSeat(connection, userSchedule, userId, day, currentTimestamp);
+        insertPayment(connection, userSchedule, userId, currentTimestamp);
+        roundTrips.mark(2);
+      } else {
+        soldOut.mark();
+      }
+    });
+    if (!config.isDisableTransaction()) {
+      roundTrips.mark();
+    }
+  }
+
+  /**
+   * Take a seat of the flight day in its audit row if the aircraft capacity allows it, with the
+   * configured capacity control. Return {@code false} if the flight day is sold out.
+   */
+  private boolean reserveSeat(Connection connection, Document userSchedule, Date day,
+      Timestamp currentTimestamp) throws SQLException {
+    final int scheduleId = userSchedule.getInteger("_id");
+    final int capacity = capacity(userSchedule);
+    switch (capacityControl) {
+      case PESSIMISTIC:
+        return reserveSeatPessimistic(connection, scheduleId, capacity, day, currentTimestamp);
+      case OPTIMISTIC:
+        return reserveSeatOptimistic(connection, scheduleId, capacity, day, currentTimestamp);
+      case CONDITIONAL:
+      default:
+        return reserveSeatConditional(connection, scheduleId, capacity, day, currentTimestamp);
+    }
+  }
+
+  /**
+   * Lock the audit row with {@code select ... for update}, so concurrent bookings of the flight
+   * day wait for this one to finish, and then check and increment the seats occupied. The lock
+   * is first tried with {@code skip locked}: when another booking holds it, the booking lost
+   * the lock race, that is counted as a capacity conflict and retried waiting for the lock.
+   */
+  private boolean reserveSeatPessimistic(Connection connection, int scheduleId, int capacity,
+      Date day, Timestamp currentTimestamp) throws SQLException {
+    createAudit(connection, scheduleId, day, currentTimestamp);
+    Integer seatsOccupied = lockAudit(connection, "lock-audit-skip-locked", scheduleId, day,
+        " for update skip locked");
+    if (seatsOccupied == null) {
+      capacityConflicts.mark();
+      capacityRetries.mark();
+      seatsOccupied = lockAudit(connection, "lock-audit", scheduleId, day, " for update");
+      Preconditions.checkState(seatsOccupied != null);
+    }
+    if (seatsOccupied >= capacity) {
+      return false;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "update audit set seats_occupied = seats_occupied + 1, version = version + 1, date = ?"
+        + " where schedule_id = ? and day = ?")) {
+      statement.setTimestamp(1, currentTimestamp);
+      statement.setInt(2, scheduleId);
+      statement.setDate(3, day);
+      execute("update-audit", statement, PreparedStatement::executeUpdate);
+    }
+    roundTrips.mark();
+    return true;
+  }
+
+  /**
+   * Return the seats occupied of the audit row locked with {@code lockClause}, or {@code null}
+   * if the row was skipped because it is locked.
+   */
+  private Integer lockAudit(Connection connection, String name, int scheduleId, Date day,
+      String lockClause) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "select seats_occupied from audit where schedule_id = ? and day = ?" + lockClause)) {
+      statement.setInt(1, scheduleId);
+      statement.setDate(2, day);
+      try (ResultSet resultSet = execute(name, statement, PreparedStatement::executeQuery)) {
+        roundTrips.mark();
+        return resultSet.next() ? resultSet.getInt("seats_occupied") : null;
+      }
+    }
+  }
+
+  /**
+   * Read the audit row without locking it and increment the seats occupied only if its version
+   * did not change meanwhile, retrying up to {@code --capacity-retries} times on a conflict.
+   * With repeatable read or serializable isolation a concurrent change fails the update with
+   * a serialization error instead, that retries the whole booking.
+   */
+  private boolean reserveSeatOptimistic(Connection connection, int scheduleId, int capacity,
+      Date day, Timestamp currentTimestamp) throws SQLException {
+    createAudit(connection, scheduleId, day, currentTimestamp);
+    for (int retry = 0; ; retry++) {
+      final int seatsOccupied;
+      final int version;
+      try (PreparedStatement statement = connection.prepareStatement(
+          "select seats_occupied, version from audit where schedule_id = ? and day = ?")) {
+        statement.setInt(1, scheduleId);
+        statement.setDate(2, day);
+        try (ResultSet resultSet = execute("read-audit", statement,
+            PreparedStatement::executeQuery)) {
+          Preconditions.checkState(resultSet.next());
+          seatsOccupied = resultSet.getInt("seats_occupied");
+          version = resultSet.getInt("version");
+        }
+      }
+      roundTrips.mark();
+      if (seatsOccupied >= capacity) {
+        return false;
+      }
+      final int updated;
+      try (PreparedStatement statement = connection.prepareStatement(
+          "update audit set seats_occupied = seats_occupied + 1, version = version + 1,"
+          + " date = ? where schedule_id = ? and day = ? and version = ?")) {
+        statement.setTimestamp(1, currentTimestamp);
+        statement.setInt(2, scheduleId);
+        statement.setDate(3, day);
+        statement.setInt(4, version);
+        updated = execute("update-audit-version", statement, PreparedStatement::executeUpdate);
+      }
+      roundTrips.mark();
+      if (updated == 1) {
+        return true;
+      }
+      capacityConflicts.mark();
+      if (retry >= config.getCapacityRetries()) {
+        throw new RetryUserOperationException(new IllegalStateException(
+            "Audit of schedule " + scheduleId + " on " + day + " changed " + (retry + 1)
+            + " times while booking"));
+      }
+      capacityRetries.mark();
+    }
+  }
+
+  /**
+   * Increment the seats occupied with a single upsert whose update only applies while the
+   * seats occupied are below the capacity.
+   */
+  private boolean reserveSeatConditional(Connection connection, int scheduleId, int capacity,
+      Date day, Timestamp currentTimestamp) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "insert into audit (schedule_id,day,seats_occupied,date) values (?,?,1,?)"
+        + " on conflict (schedule_id,day)"
+        + " do update set seats_occupied = audit.seats_occupied + 1,"
+        + " version = audit.version + 1, date = ?"
+        + " where audit.seats_occupied < ?")) {
+      statement.setInt(1, scheduleId);
+      statement.setDate(2, day);
+      statement.setTimestamp(3, currentTimestamp);
+      statement.setTimestamp(4, currentTimestamp);
+      statement.setInt(5, capacity);
+      final int updated = execute("upsert-audit-capacity", statement,
+          PreparedStatement::executeUpdate);
+      roundTrips.mark();
+      if (updated == 0) {
+        capacityConflicts.mark();
+        return false;
+      }
+      return true;
+    }
+  }
+
+  private void createAudit(Connection connection, int scheduleId, Date day,
+      Timestamp currentTimestamp) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "insert into audit (schedule_id,day,seats_occupied,date) values (?,?,0,?)"
+        + " on conflict (schedule_id,day) do nothing")) {
+      statement.setInt(1, scheduleId);
+      statement.setDate(2, day);
+      statement.setTimestamp(3, currentTimestamp);
+      execute("create-audit", statement, PreparedStatement::executeUpdate);
+    }
+    roundTrips.mark();
+  }
+
+  private int capacity(Document userSchedule) {
+    final Integer capacity = userSchedule.getInteger("capacity");
+    return capacity == null ? Integer.MAX_VALUE : capacity;
+  }
+
+  /**
+   * Send the three inserts of the booking as one multi-statement query, that the driver sends
+   * in a single round trip. The schedule is read by the payment insert, that computes the
+   * amount from its duration with the {@code payment_amount} function created by setup.
+   */
+  private void bookPipelined() throws Exception {
+    final int scheduleId = randomScheduleId();
+    final long userId = (Long) generateUserId();
+    final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+    final Date day = Date.valueOf(randomDay());
+    bookingSleep();
+    inPipeline(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(String.join(";",
+          pipeline(
+              "insert into seat (user_id,schedule_id,day,date) values (?,?,?,?)",
+              "insert into payment (user_id,amount,date)"
+              + " select ?, payment_amount(duration), ?"
+              + " from schedule"
+              + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+              + " where schedule.schedule_id = ?"
+              + " limit 1",
+              "insert into audit (schedule_id,day,seats_occupied,date) values (?,?,1,?)"
+              + " on conflict (schedule_id,day)"
+              + " do update set seats_occupied = audit.seats_occupied + 1, date = ?")))) {
+        statement.setLong(1, userId);
+        statement.setInt(2, scheduleId);
+        statement.setDate(3, day);
+        statement.setTimestamp(4, currentTimestamp);
+        statement.setLong(5, userId);
+        statement.setTimestamp(6, currentTimestamp);
+        statement.setInt(7, scheduleId);
+        statement.setInt(8, scheduleId);
+        statement.setDate(9, day);
+        statement.setTimestamp(10, currentTimestamp);
+        statement.setTimestamp(11, currentTimestamp);
+        execute("book-pipelined", statement, PreparedStatement::execute);
+      }
+    });
+    roundTrips.mark();
+  }
+
+  /**
+   * Book calling the {@code book} function created by setup, that reads the schedule and writes
+   * the booking, in a single round trip.
+   */
+  private void bookWithFunction() throws Exception {
+    final int scheduleId = randomScheduleId();
+    final long userId = (Long) generateUserId();
+    final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+    final Date day = Date.valueOf(randomDay());
+    bookingSleep();
+    inPipeline(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(String.join(";",
+          pipeline("select book(?,?,?,?)")))) {
+        statement.setLong(1, userId);
+        statement.setInt(2, scheduleId);
+        statement.setDate(3, day);
+        statement.setTimestamp(4, currentTimestamp);
+        execute("book-function", statement, PreparedStatement::execute);
+      }
+    });
+    roundTrips.mark();
+  }
+
+  /**
+   * Return {@code statements} preceded by a {@code begin} with the configured isolation level
+   * and followed by a {@code commit}, so that sent together in one request they run in an
+   * explicit transaction without a round trip for the commit. With transactions disabled the
+   * statements are returned as is and run in the implicit transaction of the request.
+   */
+  List<String> pipeline(String... statements) {
+    if (config.isDisableTransaction()) {
+      return Arrays.asList(statements);
+    }
+    List<String> pipeline = new ArrayList<>(statements.length + 2);
+    pipeline.add(beginTransaction);
+    pipeline.addAll(Arrays.asList(statements));
+    pipeline.add("commit");
+    return pipeline;
+  }
+
+  private static String beginTransaction(Config config) {
+    if (config.getSqlIsolationLevelAsInt() == Connection.TRANSACTION_NONE) {
+      return "begin";
+    }
+    return "begin isolation level "
+        + config.getSqlIsolationLevel().replaceAll("[ _-]+", " ").toLowerCase(Locale.US);
+  }
+
+  /**
+   * Cancel a booking of a random user, deleting one of their seats and payments and releasing
+   * the seat in the audit row of its flight day.
+   */
+  void cancel() throws Exception {
+    inTransaction(connection -> {
+      final long userId = (Long) randomBookingUserId();
+      final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+      final Document seat = deleteSeat(connection, userId);
+      if (seat == null) {
+        bookingNotFound.mark();
+        roundTrips.mark();
+        return;
+      }
+      bookingSleep();
+      deletePayment(connection, userId);
+      releaseSeat(connection, seat, currentTimestamp);
+      roundTrips.mark(3);
+    });
+    if (!config.isDisableTransaction()) {
+      roundTrips.mark();
+    }
+  }
+
+  /**
+   * Move a booking of a random user to another flight and day, updating its seat and payment,
+   * taking a seat in the audit row of the new flight day (checking the capacity with the
+   * configured capacity control) and releasing the seat in the audit row of the old one. All the
+   * seats of the user are locked, and if the user already has a seat in the new flight day the
+   * booking is not moved, since the seat would violate the primary key.
+   */
+  void changeFlight() throws Exception {
+    inTransaction(connection -> {
+      final long userId = (Long) randomBookingUserId();
+      final List<Document> seats = lockSeats(connection, userId);
+      if (seats.isEmpty()) {
+        bookingNotFound.mark();
+        roundTrips.mark();
+        return;
+      }
+      final Document seat = seats.get(0);
+      final Document userSchedule = getUserSchedule(connection);
+      final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+      final Date day = Date.valueOf(randomDay());
+      if (hasSeat(seats, userSchedule.getInteger("_id"), day)) {
+        seatConflicts.mark();
+        roundTrips.mark();
+        return;
+      }
+      bookingSleep();
+      if (capacityControl == CapacityControl.NONE) {
+        insertAudit(connection, userSchedule, day, currentTimestamp);
+        roundTrips.mark();
+      } else if (!reserveSeat(connection, userSchedule, day, currentTimestamp)) {
+        soldOut.mark();
+        roundTrips.mark();
+        return;
+      }
+      moveSeat(connection, userId, seat, userSchedule, day, currentTimestamp);
+      updatePayment(connection, userId, userSchedule, currentTimestamp);
+      releaseSeat(connection, seat, currentTimestamp);
+      roundTrips.mark(4);
+    });
+    if (!config.isDisableTransaction()) {
+      roundTrips.mark();
+    }
+  }
+
+  /**
+   * Delete one of the seats of {@code userId}, returning its schedule and day or {@code null}
+   * if the user has no seat.
+   */
+  private Document deleteSeat(Connection connection, long userId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "delete from seat where user_id = ? and (schedule_id, day) ="
+        + " (select schedule_id, day from seat where user_id = ? limit 1)"
+        + " returning schedule_id, day")) {
+      statement.setLong(1, userId);
+      statement.setLong(2, userId);
+      try (ResultSet resultSet = execute("delete-seat", statement,
+          PreparedStatement::executeQuery)) {
+        return resultSet.next() ? getSeat(resultSet) : null;
+      }
+    }
+  }
+
+  /**
+   * Lock all the seats of {@code userId}, returning their schedule and day.
+   */
+  private List<Document> lockSeats(Connection connection, long userId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "select schedule_id, day from seat where user_id = ? for update")) {
+      statement.setLong(1, userId);
+      try (ResultSet resultSet = execute("lock-seats", statement,
+          PreparedStatement::executeQuery)) {
+        final List<Document> seats = new ArrayList<>();
+        while (resultSet.next()) {
+          seats.add(getSeat(resultSet));
+        }
+        return seats;
+      }
+    }
+  }
+
+  private boolean hasSeat(List<Document> seats, int scheduleId, Date day) {
+    return seats.stream().anyMatch(seat -> seat.getInteger("schedule_id") == scheduleId
+        && seat.get("day", Date.class).toLocalDate().equals(day.toLocalDate()));
+  }
+
+  private Document getSeat(ResultSet resultSet) throws SQLException {
+    return new Document()
+        .append("schedule_id", resultSet.getInt("schedule_id"))
+        .append("day", resultSet.getDate("day"));
+  }
+
+  private void moveSeat(Connection connection, long userId, Document seat,
+      Document userSchedule, Date day, Timestamp currentTimestamp) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "update seat set schedule_id = ?, day = ?, date = ?"
+        + " where user_id = ? and schedule_id = ? and day = ?")) {
+      statement.setInt(1, userSchedule.getInteger("_id"));
+      statement.setDate(2, day);
+      statement.setTimestamp(3, currentTimestamp);
+      statement.setLong(4, userId);
+      statement.setInt(5, seat.getInteger("schedule_id"));
+      statement.setDate(6, seat.get("day", Date.class));
+      execute("move-seat", statement, PreparedStatement::executeUpdate);
+    }
+  }
+
+  /**
+   * Delete one of the payments of {@code userId}, identified by its table and ctid since
+   * payments have no key.
+   */
+  private void deletePayment(Connection connection, long userId) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "delete from payment where user_id = ? and (tableoid, ctid) ="
+        + " (select tableoid, ctid from payment where user_id = ? limit 1)")) {
+      statement.setLong(1, userId);
+      statement.setLong(2, userId);
+      execute("delete-payment", statement, PreparedStatement::executeUpdate);
+    }
+  }
+
+  private void updatePayment(Connection connection, long userId, Document userSchedule,
+      Timestamp currentTimestamp) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "update payment set amount = ?, date = ? where user_id = ? and (tableoid, ctid) ="
+        + " (select tableoid, ctid from payment where user_id = ? limit 1)")) {
+      statement.setInt(1, paymentAmount(userSchedule));
+      statement.setTimestamp(2, currentTimestamp);
+      statement.setLong(3, userId);
+      statement.setLong(4, userId);
+      execute("update-payment", statement, PreparedStatement::executeUpdate);
+    }
+  }
+
+  private void releaseSeat(Connection connection, Document seat, Timestamp currentTimestamp)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "update audit set seats_occupied = seats_occupied - 1, version = version + 1, date = ?"
+        + " where schedule_id = ? and day = ? and seats_occupied > 0")) {
+      statement.setTimestamp(1, currentTimestamp);
+      statement.setInt(2, seat.getInteger("schedule_id"));
+      statement.setDate(3, seat.get("day", Date.class));
+      execute("release-seat", statement, PreparedStatement::executeUpdate);
+    }
+  }
+
+  void viewItinerary() throws Exception {
+    inTransaction(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "select seat.schedule_id, seat.day, schedule.flight, schedule.from_airport,"
+          + " schedule.to_airport, schedule.departure, schedule.arrival"
+          + " from seat"
+          + " inner join schedule on (seat.schedule_id = schedule.schedule_id)"
+          + " where seat.user_id = ?"
+          + " order by seat.day, schedule.departure")) {
+        statement.setLong(1, (Long) randomUserId());
+        try (ResultSet resultSet = execute("view-itinerary", statement,
+            PreparedStatement::executeQuery)) {
+          while (resultSet.next()) {
+            resultSet.getString("flight");
+          }
+        }
+      }
+    });
+  }
+
+  void search() throws Exception {
+    final Schedule route = flightSearch.nextRoute();
+    final LocalDate day = randomDay();
+    inTransaction(connection -> {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "select schedule.schedule_id, schedule.flight, schedule.departure, schedule.arrival,"
+          + " aircraft.capacity - coalesce(audit.seats_occupied, 0) as available"
+          + " from schedule"
+          + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+          + " left join audit on (audit.schedule_id = schedule.schedule_id and audit.day = ?)"
+          + " where schedule.from_airport = ? and schedule.to_airport = ?"
+          + " and schedule.days_mask & ? <> 0"
+          + " and (schedule.valid_from is null or schedule.valid_from <= ?)"
+          + " and (schedule.valid_until is null or schedule.valid_until >= ?)"
+          + " and (schedule.departure, schedule.schedule_id) > (?, ?)"
+          + " order by schedule.departure, schedule.schedule_id"
+          + " limit ?")) {
+        String lastDeparture = "";
+        int lastScheduleId = -1;
+        for (int page = 0; page < flightSearch.getPages(); page++) {
+          statement.setDate(1, Date.valueOf(day));
+          statement.setString(2, route.getFromAirport());
+          statement.setString(3, route.getToAirport());
+          statement.setInt(4, FlightSearch.dayBit(day));
+          statement.setDate(5, Date.valueOf(day));
+          statement.setDate(6, Date.valueOf(day));
+          statement.setString(7, lastDeparture);
+          statement.setInt(8, lastScheduleId);
+          statement.setInt(9, flightSearch.getPageSize());
+          int flights = 0;
+          try (ResultSet resultSet = execute("search", statement,
+              PreparedStatement::executeQuery)) {
+            while (resultSet.next()) {
+              flights++;
+              lastDeparture = resultSet.getString("departure");
+              lastScheduleId = resultSet.getInt("schedule_id");
+            }
+          }
+          if (flights < flightSearch.getPageSize()) {
+            break;
+          }
+        }
+      }
+    });
+  }
+
+  void revenueReport() throws Exception {
+    report("select schedule.from_airport, schedule.to_airport, seat.day,"
+        + " count(*) as seats, sum(payment.amount) as revenue"
+        + " from seat"
+        + " inner join payment on (payment.user_id = seat.user_id)"
+        + " inner join schedule on (schedule.schedule_id = seat.schedule_id)"
+        + " group by schedule.from_airport, schedule.to_airport, seat.day");
+  }
+
+  void loadFactorReport() throws Exception {
+    report("select schedule.from_airport, schedule.to_airport, audit.day,"
+        + " sum(audit.seats_occupied) as seats_occupied, sum(aircraft.capacity) as capacity,"
+        + " sum(audit.seats_occupied)::float / nullif(sum(aircraft.capacity), 0)"
+        + " as load_factor"
+        + " from audit"
+        + " inner join schedule on (schedule.schedule_id = audit.schedule_id)"
+        + " inner join (select iata, max(capacity) as capacity from aircraft group by iata)"
+        + " as aircraft on (aircraft.iata = schedule.aircraft)"
+        + " group by schedule.from_airport, schedule.to_airport, audit.day");
+  }
+
+  /**
+   * Run a report query streaming its results. The driver only fetches rows with a cursor
+   * inside a transaction, so the report always runs in one even if transactions are disabled.
+   */
+  private void report(String query) throws Exception {
+    stream(query, resultSet -> resultSet.getObject(resultSet.getMetaData().getColumnCount()));
+  }
+
+  private void stream(String query, CheckedConsumer<ResultSet> rowConsumer) throws Exception {
+    inTransaction(connection -> {
+      final boolean autoCommit = connection.getAutoCommit();
+      if (autoCommit) {
+        connection.setAutoCommit(false);
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.setFetchSize(config.getReportingFetchSize());
+        try (ResultSet resultSet = statement.executeQuery(query)) {
+          while (resultSet.next()) {
+            rowConsumer.accept(resultSet);
+          }
+        }
+      } finally {
+        if (autoCommit) {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+      }
+    });
+  }
+
+  FlightSearch getFlightSearch() {
+    return flightSearch;
+  }
+
+  private void inTransaction(CheckedConsumer<Connection> operation) throws Exception {
+    try (Connection connection = connectionSupplier.get()) {
+      try {
+        operation.accept(connection);
         if (!config.isDisableTransaction()) {
           connection.commit();
         }
-      } catch (Exception ex) {
+      } catch (Throwable ex) {
         if (!config.isDisableTransaction()) {
           try {
             connection.rollback();
@@ -191,43 +1132,105 @@ public class PostgresFlightBenchmark extends Benchmark {
             logger.error(abortEx);
           }
         }
-        if (ex instanceof PSQLException
-            && (((PSQLException) ex).getSQLState().equals("40001"))) {
-          throw new RetryUserOperationException(ex);
+        throw translate(ex);
+      }
+    }
+  }
+
+  /**
+   * Run {@code operation} with auto-commit, for statements built with {@link #pipeline} that
+   * begin and commit their own transaction. If the operation fails the transaction the pipeline
+   * may have left open is rolled back.
+   */
+  private void inPipeline(CheckedConsumer<Connection> operation) throws Exception {
+    try (Connection connection = connectionSupplier.get()) {
+      final boolean autoCommit = connection.getAutoCommit();
+      if (!autoCommit) {
+        connection.setAutoCommit(true);
+      }
+      try {
+        operation.accept(connection);
+      } catch (Throwable ex) {
+        if (!config.isDisableTransaction()) {
+          try (Statement statement = connection.createStatement()) {
+            statement.execute("rollback");
+          } catch (Exception abortEx) {
+            logger.error(abortEx);
+          }
         }
-        if (ex instanceof PSQLException) {
-          throw new RuntimeException("PSQLException: " 
-              + ex.getMessage() + " (" + ((PSQLException) ex).getSQLState() + ")", ex);
+        throw translate(ex);
+      } finally {
+        if (!autoCommit) {
+          connection.setAutoCommit(false);
         }
-        throw ex;
       }
     }
   }
 
-  private Document getUserSchedule(Connection connection) throws SQLException {
-    try (Statement statement = connection.createStatement();
-        ResultSet resultSet = statement.executeQuery("select schedule_id, duration, capacity"
+  private Exception translate(Throwable ex) {
+    if (ex instanceof PSQLException
+        && (((PSQLException) ex).getSQLState().equals("40001")
+            || ((PSQLException) ex).getSQLState().equals("40P01"))) {
+      return new RetryUserOperationException(ex);
+    }
+    if (ex instanceof PSQLException) {
+      return new RuntimeException("PSQLException: " 
+          + ex.getMessage() + " (" + ((PSQLException) ex).getSQLState() + ")", ex);
+    }
+    Throwables.throwIfUnchecked(ex);
+    if (ex instanceof Exception) {
+      return (Exception) ex;
+    }
+    return new RuntimeException(ex);
+  }
+
+  /**
+   * Return the schedule of a random flight from the reference cache, reading it on a cache miss.
+   * Only the read counts as a round trip.
+   */
+  private Document getUserSchedule(Connection connection) throws Exception {
+    return referenceCache.get(randomScheduleId(),
+        scheduleId -> loadUserSchedule(connection, scheduleId));
+  }
+
+  private Document loadUserSchedule(Connection connection, int scheduleId)
+      throws SQLException {
+    roundTrips.mark();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "select schedule_id, duration, capacity"
             + " from schedule "
             + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
-            + " where schedule.schedule_id = " + randomScheduleId()
+            + " where schedule.schedule_id = ?"
             + " limit 1")) {
-      Preconditions.checkState(resultSet.next());
-      return new Document()
-                  .append("_id", resultSet.getString("schedule_id"))
-                  .append("duration", resultSet.getString("duration"))
-                  .append("capacity", resultSet.getString("capacity"));
+      statement.setInt(1, scheduleId);
+      try (ResultSet resultSet = execute("get-user-schedule", statement,
+          PreparedStatement::executeQuery)) {
+        Preconditions.checkState(resultSet.next());
+        return getUserSchedule(resultSet);
+      }
     }
   }
 
+  private Document getUserSchedule(ResultSet resultSet) throws SQLException {
+    return new Document()
+                .append("_id", resultSet.getInt("schedule_id"))
+                .append("duration", resultSet.getString("duration"))
+                .append("capacity", resultSet.getObject("capacity", Integer.class));
+  }
+
+  ReferenceCache getReferenceCache() {
+    return referenceCache;
+  }
+
   private void insertSeat(Connection connection, Document userSchedule,
       Object userId, Date day, Timestamp currentTimestamp) throws SQLException {
     try (PreparedStatement statement = connection.prepareStatement(
         "insert into seat (user_id,schedule_id,day,date) values (?,?,?,?)")) {
-      statement.setString(1, userId.toString());
-      statement.setString(2, userSchedule.getString("_id"));
+      statement.setLong(1, (Long) userId);
+      statement.setInt(2, userSchedule.getInteger("_id"));
       statement.setDate(3, day);
       statement.setTimestamp(4, currentTimestamp);
-      statement.executeUpdate();
+      execute("insert-seat", statement, PreparedStatement::executeUpdate);
     }
   }
 
@@ -235,33 +1238,87 @@ public class PostgresFlightBenchmark extends Benchmark {
       Object userId, Timestamp currentTimestamp) throws SQLException {
     try (PreparedStatement statement = connection.prepareStatement(
         "insert into payment (user_id,amount,date) values (?,?,?)")) {
-      statement.setString(1, userId.toString());
-      statement.setInt(2, Optional.ofNullable(userSchedule.getString("duration"))
-          .map(d -> d.split(":"))
-          .map(s -> Integer.parseInt(s[0]) * 60 + Integer.parseInt(s[1]))
-          .map(d -> Math.max(42, d * 42))
-          .orElse(42));
+      statement.setLong(1, (Long) userId);
+      statement.setInt(2, paymentAmount(userSchedule));
       statement.setTimestamp(3, currentTimestamp);
-      statement.executeUpdate();
+      execute("insert-payment", statement, PreparedStatement::executeUpdate);
     }
   }
 
+  int paymentAmount(Document userSchedule) {
+    return Schedule.paymentAmount(userSchedule.getString("duration"));
+  }
+
   private void insertAudit(Connection connection, Document userSchedule,
       Date day, Timestamp currentTimestamp) throws SQLException {
     try (PreparedStatement statement = connection.prepareStatement(
         "insert into audit (schedule_id,day,seats_occupied,date) values (?,?,1,?)"
         + " on conflict (schedule_id,day)"
         + " do update set seats_occupied = audit.seats_occupied + 1, date = ?")) {
-      statement.setString(1, userSchedule.getString("_id"));
+      statement.setInt(1, userSchedule.getInteger("_id"));
       statement.setDate(2, day);
       statement.setTimestamp(3, currentTimestamp);
       statement.setTimestamp(4, currentTimestamp);
-      statement.executeUpdate();
+      execute("insert-audit", statement, PreparedStatement::executeUpdate);
+    }
+  }
+
+  /**
+   * Execute {@code statement} recording it in the metrics of the statement {@code name}. The
+   * SQL of each statement is constant so the driver reuses its server-side prepared statement
+   * on each pooled connection once it has been executed {@code --sql-prepare-threshold} times.
+   */
+  private <T> T execute(String name, PreparedStatement statement,
+      StatementMetrics.Execution<T> execution) throws SQLException {
+    return statementMetrics.computeIfAbsent(name, StatementMetrics::create)
+        .execute(statement, execution);
+  }
+
+  /**
+   * Sample the tuples, vacuums and sizes of the booking tables, adding up the partitions of
+   * partitioned tables, and the autovacuum workers running.
+   */
+  private void sampleStorageStats(ObjLongConsumer<String> stats) throws Exception {
+    try (Connection connection = connectionSupplier.get();
+        Statement statement = connection.createStatement()) {
+      try (ResultSet resultSet = statement.executeQuery(
+          "select coalesce(p.relname, s.relname) as name,"
+          + " sum(s.n_live_tup) as live_tuples, sum(s.n_dead_tup) as dead_tuples,"
+          + " sum(s.n_tup_upd) as updated_tuples, sum(s.n_tup_hot_upd) as hot_updated_tuples,"
+          + " sum(s.n_tup_del) as deleted_tuples, sum(s.vacuum_count) as vacuums,"
+          + " sum(s.autovacuum_count) as autovacuums,"
+          + " sum(s.autoanalyze_count) as autoanalyzes,"
+          + " sum(pg_total_relation_size(s.relid)) as size"
+          + " from pg_stat_user_tables s"
+          + " left join pg_inherits i on (i.inhrelid = s.relid)"
+          + " left join pg_class p on (p.oid = i.inhparent)"
+          + " where coalesce(p.relname, s.relname) in ('seat', 'payment', 'audit')"
+          + " group by 1")) {
+        while (resultSet.next()) {
+          final String name = resultSet.getString("name");
+          for (String column : new String[] { "live_tuples", "dead_tuples", "updated_tuples",
+              "hot_updated_tuples", "deleted_tuples", "vacuums", "autovacuums", "autoanalyzes",
+              "size" }) {
+            stats.accept(name + "." + column.replace('_', '-'), resultSet.getLong(column));
+          }
+        }
+      }
+      try (ResultSet resultSet = statement.executeQuery(
+          "select count(*) from pg_stat_activity where backend_type = 'autovacuum worker'")) {
+        resultSet.next();
+        stats.accept("autovacuum-workers", resultSet.getLong(1));
+      }
+      if (!config.isDisableTransaction()) {
+        connection.commit();
+      }
     }
   }
 
   @Override
   protected void internalClose() throws Exception {
+    storageStatsSampler.close();
+    partitionManager.close();
+    partitionManager.report();
     connectionSupplier.close();
   }
 }
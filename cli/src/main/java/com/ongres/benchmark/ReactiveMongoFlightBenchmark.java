@@ -0,0 +1,296 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.TransactionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import com.ongres.benchmark.config.model.CapacityControl;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.MongoSchema;
+import com.ongres.benchmark.data.Schedule;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same benchmark as {@code MongoFlightBenchmark} implemented with the reactive streams driver,
+ * so that an iteration does not block any thread. Setup and document creation are delegated to
+ * a {@code MongoFlightBenchmark}.
+ */
+public class ReactiveMongoFlightBenchmark extends ReactiveBenchmark {
+
+  private final Logger logger = LogManager.getLogger();
+
+  private final MongoClient client;
+  private final MongoDatabase database;
+  private final MongoFlightBenchmark syncBenchmark;
+  private final Config config;
+  private final ThinkTime thinkTime;
+  private final Meter roundTrips;
+
+  private ReactiveMongoFlightBenchmark(MongoClient client, MongoDatabase database,
+      MongoFlightBenchmark syncBenchmark, Config config) {
+    super();
+    this.client = client;
+    this.database = database;
+    this.syncBenchmark = syncBenchmark;
+    this.config = config;
+    this.thinkTime = ThinkTime.create(config);
+    this.roundTrips = MetricsManager.meter(Metric.ROUND_TRIPS);
+  }
+
+  /**
+   * Create an instance of {@class ReactiveMongoFlightBenchmark}.
+   */
+  public static ReactiveMongoFlightBenchmark create(MongoClient client,
+      MongoFlightBenchmark syncBenchmark, Config config) {
+    Preconditions.checkArgument(config.getBookingSleep() >= 0);
+    Preconditions.checkArgument(config.getDayRange() > 0);
+    Preconditions.checkArgument(config.getCapacityControlAsEnum() == CapacityControl.NONE,
+        "Capacity control is not supported by reactive benchmarks");
+    MongoDatabase database = client.getDatabase(config.getTarget().getDatabase().getName());
+    return new ReactiveMongoFlightBenchmark(client,
+        database,
+        syncBenchmark,
+        config);
+  }
+
+  @Override
+  public void setup() {
+    syncBenchmark.setup();
+  }
+
+  @Override
+  public void prewarm() {
+    syncBenchmark.prewarm();
+  }
+
+  @Override
+  public void preload() {
+    syncBenchmark.preload();
+  }
+
+  @Override
+  protected Mono<Void> reactiveIteration() {
+    return book();
+  }
+
+  Mono<Void> book() {
+    if (syncBenchmark.getSchema() == MongoSchema.EMBEDDED) {
+      return embeddedOperation()
+          .doOnSuccess(ignored -> roundTrips.mark());
+    }
+    return inTransaction(this::userOperation)
+        .doOnSuccess(ignored -> roundTrips.mark(config.isDisableTransaction() ? 3 : 4));
+  }
+
+  Mono<Void> viewItinerary() {
+    return Flux.from(database.getCollection(syncBenchmark.getSeatCollection())
+        .aggregate(syncBenchmark.getItineraryAggregate(syncBenchmark.randomUserId())))
+        .then();
+  }
+
+  Mono<Void> search() {
+    final Schedule route = syncBenchmark.getFlightSearch().nextRoute();
+    final Date day = Date.valueOf(syncBenchmark.randomDay());
+    return searchPages(route, day, "", -1, syncBenchmark.getFlightSearch().getPages());
+  }
+
+  private Mono<Void> searchPages(Schedule route, Date day,
+      String lastDeparture, int lastScheduleId, int pages) {
+    final int pageSize = syncBenchmark.getFlightSearch().getPageSize();
+    return Flux.from(database.getCollection("schedule")
+        .aggregate(syncBenchmark.getFlightSearchAggregate(
+            route, day, lastDeparture, lastScheduleId)))
+        .collectList()
+        .flatMap(flights -> {
+          if (flights.size() < pageSize || pages <= 1) {
+            return Mono.empty();
+          }
+          final Document last = flights.get(flights.size() - 1);
+          return searchPages(route, day, last.getString("departure"),
+              last.getInteger("schedule_id"), pages - 1);
+        });
+  }
+
+  /**
+   * Reports run on their own threads, so they are run blocking with the setup benchmark.
+   */
+  void revenueReport() throws Exception {
+    syncBenchmark.revenueReport();
+  }
+
+  void loadFactorReport() throws Exception {
+    syncBenchmark.loadFactorReport();
+  }
+
+  private Mono<Void> inTransaction(Function<ClientSession, Mono<Void>> operation) {
+    if (config.isDisableTransaction()) {
+      return operation.apply(null);
+    }
+    return Mono.from(client.startSession(
+        ClientSessionOptions.builder()
+        .causallyConsistent(!config.isMongoNotCasuallyConsistent())
+        .build()))
+        .flatMap(session -> {
+          session.startTransaction(TransactionOptions.builder()
+              .readPreference(config.getMongoReadPreferenceAsReadPreference())
+              .readConcern(config.getMongoReadConcernAsReadConcern())
+              .writeConcern(config.getMongoWriteConcernAsWriteConcern())
+              .build());
+          return operation.apply(session)
+              .then(Mono.defer(() -> Mono.from(session.commitTransaction())))
+              .onErrorResume(ex -> abortTransaction(session)
+                  .then(Mono.error(MongoFlightBenchmark.isRetryable(ex)
+                      ? new RetryUserOperationException(ex) : ex)))
+              .doFinally(signal -> session.close());
+        });
+  }
+
+  private Mono<Void> abortTransaction(ClientSession session) {
+    return Mono.from(session.abortTransaction())
+        .onErrorResume(abortEx -> {
+          logger.error(abortEx);
+          return Mono.empty();
+        });
+  }
+
+  private Mono<Void> userOperation(ClientSession session) {
+    return getUserSchedule(session)
+        .switchIfEmpty(Mono.error(() -> new IllegalStateException("Schedule not found")))
+        .flatMap(userSchedule -> {
+          final Object userId = syncBenchmark.generateUserId();
+          final Instant now = Instant.now();
+          final Timestamp currentTimestamp = Timestamp.from(now);
+          final Date day = Date.valueOf(syncBenchmark.randomDay());
+          return bookingSleep()
+              .then(insert(session, "seat",
+                  syncBenchmark.createSeat(userSchedule, userId, day, currentTimestamp)))
+              .then(insert(session, "payment",
+                  syncBenchmark.createPayment(userSchedule, userId, currentTimestamp)))
+              .then(insertAudit(session, userSchedule, day, currentTimestamp));
+        });
+  }
+
+  private Mono<Void> embeddedOperation() {
+    return getUserSchedule(null)
+        .switchIfEmpty(Mono.error(() -> new IllegalStateException("Schedule not found")))
+        .flatMap(userSchedule -> {
+          final Object userId = syncBenchmark.generateUserId();
+          final Timestamp currentTimestamp = Timestamp.from(Instant.now());
+          final Date day = Date.valueOf(syncBenchmark.randomDay());
+          return bookingSleep()
+              .then(Mono.from(database.getCollection("flight_day").updateOne(
+                  syncBenchmark.flightDayToUpdate(userSchedule, day),
+                  syncBenchmark.flightDayUpdate(userSchedule, userId, currentTimestamp),
+                  syncBenchmark.auditUpdateOptions())))
+              .then();
+        });
+  }
+
+  /**
+   * Return the schedule of a random flight from the reference cache, reading it on a cache miss.
+   * Only the read counts as a round trip.
+   */
+  private Mono<Document> getUserSchedule(ClientSession session) {
+    return syncBenchmark.getReferenceCache().getReactive(syncBenchmark.randomScheduleId(),
+        scheduleId -> loadUserSchedule(session, scheduleId));
+  }
+
+  private Mono<Document> loadUserSchedule(ClientSession session, int scheduleId) {
+    return Mono.defer(() -> {
+      final long start = System.nanoTime();
+      return readUserSchedule(session, scheduleId)
+          .doOnSuccess(ignored -> {
+            syncBenchmark.getScheduleReadTimer()
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            roundTrips.mark();
+          });
+    });
+  }
+
+  private Mono<Document> readUserSchedule(ClientSession session, int scheduleId) {
+    final MongoCollection<Document> schedule = database.getCollection("schedule");
+    if (syncBenchmark.isDenormalizedSchedule()) {
+      final Bson filter = Filters.eq("schedule_id", scheduleId);
+      return Mono.from((session == null ? schedule.find(filter) : schedule.find(session, filter))
+          .projection(syncBenchmark.getUserScheduleProjection())
+          .first());
+    }
+    final List<Bson> pipeline = syncBenchmark.getUserScheduleAggregate(scheduleId);
+    return Mono.from((session == null ? schedule.aggregate(pipeline)
+        : schedule.aggregate(session, pipeline))
+        .first());
+  }
+
+  private Mono<Void> bookingSleep() {
+    if (!thinkTime.isInsideTransaction()) {
+      return Mono.empty();
+    }
+    return thinkTime.delay();
+  }
+
+  private Mono<Void> insert(ClientSession session, String collection, Document document) {
+    if (session == null) {
+      return Mono.from(database.getCollection(collection).insertOne(document)).then();
+    }
+    return Mono.from(database.getCollection(collection).insertOne(session, document)).then();
+  }
+
+  private Mono<Void> insertAudit(ClientSession session, Document userSchedule,
+      Date day, Timestamp currentTimestamp) {
+    if (session == null) {
+      return Mono.from(database.getCollection("audit").updateOne(
+          syncBenchmark.auditToUpdate(userSchedule, day),
+          syncBenchmark.auditUpdate(currentTimestamp),
+          syncBenchmark.auditUpdateOptions())).then();
+    }
+    return Mono.from(database.getCollection("audit").updateOne(session,
+        syncBenchmark.auditToUpdate(userSchedule, day),
+        syncBenchmark.auditUpdate(currentTimestamp),
+        syncBenchmark.auditUpdateOptions())).then();
+  }
+
+  @Override
+  protected void internalClose() throws Exception {
+    client.close();
+    syncBenchmark.close();
+  }
+}
@@ -0,0 +1,407 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.ongres.benchmark.config.model.CapacityControl;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.data.Schedule;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.R2dbcException;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same benchmark as {@code PostgresFlightBenchmark} implemented with R2DBC, so that an iteration
+ * does not block any thread. Setup is delegated to a {@code PostgresFlightBenchmark}.
+ */
+public class ReactivePostgresFlightBenchmark extends ReactiveBenchmark {
+
+  private final Logger logger = LogManager.getLogger();
+
+  private final ConnectionPool connectionPool;
+  private final PostgresFlightBenchmark syncBenchmark;
+  private final Config config;
+  private final ThinkTime thinkTime;
+  private final IsolationLevel isolationLevel;
+  private final Meter roundTrips;
+
+  private ReactivePostgresFlightBenchmark(ConnectionPool connectionPool,
+      PostgresFlightBenchmark syncBenchmark, Config config) {
+    super();
+    this.connectionPool = connectionPool;
+    this.syncBenchmark = syncBenchmark;
+    this.config = config;
+    this.isolationLevel = getIsolationLevel(config);
+    this.thinkTime = ThinkTime.create(config);
+    this.roundTrips = MetricsManager.meter(Metric.ROUND_TRIPS);
+  }
+
+  /**
+   * Create an instance of {@class ReactivePostgresFlightBenchmark}.
+   */
+  public static ReactivePostgresFlightBenchmark create(ConnectionPool connectionPool,
+      PostgresFlightBenchmark syncBenchmark, Config config) {
+    Preconditions.checkArgument(config.getBookingSleep() >= 0);
+    Preconditions.checkArgument(config.getDayRange() > 0);
+    Preconditions.checkArgument(config.getCapacityControlAsEnum() == CapacityControl.NONE,
+        "Capacity control is not supported by reactive benchmarks");
+    return new ReactivePostgresFlightBenchmark(connectionPool, syncBenchmark, config);
+  }
+
+  private static IsolationLevel getIsolationLevel(Config config) {
+    switch (config.getSqlIsolationLevelAsInt()) {
+      case java.sql.Connection.TRANSACTION_READ_UNCOMMITTED:
+        return IsolationLevel.READ_UNCOMMITTED;
+      case java.sql.Connection.TRANSACTION_READ_COMMITTED:
+        return IsolationLevel.READ_COMMITTED;
+      case java.sql.Connection.TRANSACTION_REPEATABLE_READ:
+        return IsolationLevel.REPEATABLE_READ;
+      case java.sql.Connection.TRANSACTION_SERIALIZABLE:
+        return IsolationLevel.SERIALIZABLE;
+      default:
+        throw new IllegalArgumentException("Isolation level " + config.getSqlIsolationLevel()
+            + " is not supported by R2DBC");
+    }
+  }
+
+  @Override
+  public void setup() {
+    syncBenchmark.setup();
+  }
+
+  @Override
+  public void prewarm() {
+    syncBenchmark.prewarm();
+  }
+
+  @Override
+  public void preload() {
+    syncBenchmark.preload();
+  }
+
+  @Override
+  protected Mono<Void> reactiveIteration() {
+    return book();
+  }
+
+  Mono<Void> book() {
+    switch (syncBenchmark.getBookingMode()) {
+      case PIPELINED:
+        return inPipeline(this::bookingPipelined)
+            .doOnSuccess(ignored -> roundTrips.mark());
+      case FUNCTION:
+        return inPipeline(this::bookingWithFunction)
+            .doOnSuccess(ignored -> roundTrips.mark());
+      case STATEMENTS:
+      default:
+        return inTransaction(this::booking)
+            .doOnSuccess(ignored -> roundTrips.mark(config.isDisableTransaction() ? 3 : 4));
+    }
+  }
+
+  Mono<Void> viewItinerary() {
+    return inTransaction(connection -> Flux.from(connection.createStatement(
+        "select seat.schedule_id, seat.day, schedule.flight, schedule.from_airport,"
+        + " schedule.to_airport, schedule.departure, schedule.arrival"
+        + " from seat"
+        + " inner join schedule on (seat.schedule_id = schedule.schedule_id)"
+        + " where seat.user_id = $1"
+        + " order by seat.day, schedule.departure")
+        .bind(0, syncBenchmark.randomUserId())
+        .execute())
+        .flatMap(result -> result.map((row, rowMetadata) -> row.get("flight", String.class)))
+        .then());
+  }
+
+  Mono<Void> search() {
+    final Schedule route = syncBenchmark.getFlightSearch().nextRoute();
+    final LocalDate day = syncBenchmark.randomDay();
+    return inTransaction(connection -> searchPages(connection, route, day, "", -1,
+        syncBenchmark.getFlightSearch().getPages()));
+  }
+
+  private Mono<Void> searchPages(Connection connection, Schedule route,
+      LocalDate day, String lastDeparture, int lastScheduleId, int pages) {
+    final int pageSize = syncBenchmark.getFlightSearch().getPageSize();
+    return Flux.from(connection.createStatement(
+        "select schedule.schedule_id, schedule.flight, schedule.departure, schedule.arrival,"
+        + " aircraft.capacity - coalesce(audit.seats_occupied, 0) as available"
+        + " from schedule"
+        + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+        + " left join audit on (audit.schedule_id = schedule.schedule_id and audit.day = $1)"
+        + " where schedule.from_airport = $2 and schedule.to_airport = $3"
+        + " and schedule.days_mask & $4 <> 0"
+        + " and (schedule.valid_from is null or schedule.valid_from <= $5)"
+        + " and (schedule.valid_until is null or schedule.valid_until >= $5)"
+        + " and (schedule.departure, schedule.schedule_id) > ($6, $7)"
+        + " order by schedule.departure, schedule.schedule_id"
+        + " limit $8")
+        .bind(0, day)
+        .bind(1, route.getFromAirport())
+        .bind(2, route.getToAirport())
+        .bind(3, FlightSearch.dayBit(day))
+        .bind(4, day)
+        .bind(5, lastDeparture)
+        .bind(6, lastScheduleId)
+        .bind(7, pageSize)
+        .execute())
+        .flatMap(result -> result.map((row, rowMetadata) -> new Document()
+            .append("schedule_id", row.get("schedule_id", Integer.class))
+            .append("departure", row.get("departure", String.class))))
+        .collectList()
+        .flatMap(flights -> {
+          if (flights.size() < pageSize || pages <= 1) {
+            return Mono.empty();
+          }
+          final Document last = flights.get(flights.size() - 1);
+          return searchPages(connection, route, day, last.getString("departure"),
+              last.getInteger("schedule_id"), pages - 1);
+        });
+  }
+
+  /**
+   * Reports run on their own threads, so they are run blocking with the setup benchmark.
+   */
+  void revenueReport() throws Exception {
+    syncBenchmark.revenueReport();
+  }
+
+  void loadFactorReport() throws Exception {
+    syncBenchmark.loadFactorReport();
+  }
+
+  /**
+   * Run {@code operation} for statements built with {@link PostgresFlightBenchmark#pipeline}
+   * that begin and commit their own transaction. If the operation fails the transaction the
+   * pipeline may have left open is rolled back.
+   */
+  private Mono<Void> inPipeline(Function<Connection, Mono<Void>> operation) {
+    return Mono.usingWhen(connectionPool.create(),
+        connection -> Mono.defer(() -> operation.apply(connection))
+            .onErrorResume(ex -> rollbackPipeline(connection)
+                .then(Mono.error(isRetryable(ex) ? new RetryUserOperationException(ex) : ex))),
+        Connection::close);
+  }
+
+  private Mono<Void> rollbackPipeline(Connection connection) {
+    if (config.isDisableTransaction()) {
+      return Mono.empty();
+    }
+    return Flux.from(connection.createStatement("rollback").execute())
+        .flatMap(result -> result.getRowsUpdated())
+        .then()
+        .onErrorResume(abortEx -> {
+          logger.error(abortEx);
+          return Mono.empty();
+        });
+  }
+
+  /**
+   * Send all the {@code statements} as a batch, that is sent as one multi-statement simple
+   * query.
+   */
+  private Mono<Void> executePipeline(Connection connection, List<String> statements) {
+    final Batch batch = connection.createBatch();
+    statements.forEach(batch::add);
+    return Flux.from(batch.execute())
+        .flatMap(result -> result.getRowsUpdated())
+        .then();
+  }
+
+  private Mono<Void> inTransaction(Function<Connection, Mono<Void>> operation) {
+    return Mono.usingWhen(connectionPool.create(),
+        connection -> inTransaction(connection, operation),
+        Connection::close);
+  }
+
+  private Mono<Void> inTransaction(Connection connection,
+      Function<Connection, Mono<Void>> operation) {
+    if (config.isDisableTransaction()) {
+      return operation.apply(connection);
+    }
+    return Mono.from(connection.beginTransaction())
+        .then(Mono.from(connection.setTransactionIsolationLevel(isolationLevel)))
+        .then(Mono.defer(() -> operation.apply(connection)))
+        .then(Mono.defer(() -> Mono.from(connection.commitTransaction())))
+        .onErrorResume(ex -> Mono.from(connection.rollbackTransaction())
+            .onErrorResume(abortEx -> {
+              logger.error(abortEx);
+              return Mono.empty();
+            })
+            .then(Mono.error(isRetryable(ex) ? new RetryUserOperationException(ex) : ex)));
+  }
+
+  private boolean isRetryable(Throwable ex) {
+    return ex instanceof R2dbcException
+        && "40001".equals(((R2dbcException) ex).getSqlState());
+  }
+
+  private Mono<Void> booking(Connection connection) {
+    return getUserSchedule(connection)
+        .switchIfEmpty(Mono.error(() -> new IllegalStateException("Schedule not found")))
+        .flatMap(userSchedule -> {
+          final long userId = (Long) syncBenchmark.generateUserId();
+          final Instant now = Instant.now();
+          final LocalDateTime currentTimestamp = LocalDateTime.ofInstant(now, ZoneOffset.UTC);
+          final LocalDate day = syncBenchmark.randomDay();
+          return bookingSleep()
+              .then(insertSeat(connection, userSchedule, userId, day, currentTimestamp))
+              .then(insertPayment(connection, userSchedule, userId, currentTimestamp))
+              .then(insertAudit(connection, userSchedule, day, currentTimestamp));
+        });
+  }
+
+  /**
+   * Send the three inserts of the booking as a batch, that is sent as one multi-statement
+   * simple query. The schedule is read by the payment insert, that computes the amount from its
+   * duration. Values are all numbers and dates generated by the benchmark, so they are inlined
+   * in the query.
+   */
+  private Mono<Void> bookingPipelined(Connection connection) {
+    final int scheduleId = syncBenchmark.randomScheduleId();
+    final long userId = (Long) syncBenchmark.generateUserId();
+    final LocalDateTime currentTimestamp = LocalDateTime.ofInstant(Instant.now(),
+        ZoneOffset.UTC);
+    final LocalDate day = syncBenchmark.randomDay();
+    return bookingSleep()
+        .then(executePipeline(connection, syncBenchmark.pipeline(
+            "insert into seat (user_id,schedule_id,day,date) values ("
+                + userId + "," + scheduleId + ",'" + day + "','" + currentTimestamp + "')",
+            "insert into payment (user_id,amount,date)"
+                + " select " + userId + ", payment_amount(duration), '" + currentTimestamp + "'"
+                + " from schedule"
+                + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+                + " where schedule.schedule_id = " + scheduleId
+                + " limit 1",
+            "insert into audit (schedule_id,day,seats_occupied,date) values ("
+                + scheduleId + ",'" + day + "',1,'" + currentTimestamp + "')"
+                + " on conflict (schedule_id,day)"
+                + " do update set seats_occupied = audit.seats_occupied + 1,"
+                + " date = '" + currentTimestamp + "'")));
+  }
+
+  /**
+   * Book calling the {@code book} function created by setup, that reads the schedule and writes
+   * the booking, in the same batch that begins and commits the transaction.
+   */
+  private Mono<Void> bookingWithFunction(Connection connection) {
+    final int scheduleId = syncBenchmark.randomScheduleId();
+    final long userId = (Long) syncBenchmark.generateUserId();
+    final LocalDateTime currentTimestamp = LocalDateTime.ofInstant(Instant.now(),
+        ZoneOffset.UTC);
+    final LocalDate day = syncBenchmark.randomDay();
+    return bookingSleep()
+        .then(executePipeline(connection, syncBenchmark.pipeline(
+            "select book(" + userId + "," + scheduleId + ",'" + day + "','"
+                + currentTimestamp + "')")));
+  }
+
+  /**
+   * Return the schedule of a random flight from the reference cache, reading it on a cache miss.
+   * Only the read counts as a round trip.
+   */
+  private Mono<Document> getUserSchedule(Connection connection) {
+    return syncBenchmark.getReferenceCache().getReactive(syncBenchmark.randomScheduleId(),
+        scheduleId -> loadUserSchedule(connection, scheduleId));
+  }
+
+  private Mono<Document> loadUserSchedule(Connection connection, int scheduleId) {
+    return Mono.from(connection.createStatement("select schedule_id, duration, capacity"
+        + " from schedule "
+        + " inner join aircraft on (schedule.aircraft = aircraft.iata)"
+        + " where schedule.schedule_id = $1"
+        + " limit 1")
+        .bind(0, scheduleId)
+        .execute())
+        .flatMap(result -> Mono.from(result.map((row, rowMetadata) -> new Document()
+            .append("_id", row.get("schedule_id", Integer.class))
+            .append("duration", row.get("duration", String.class))
+            .append("capacity", row.get("capacity", Integer.class)))))
+        .doOnSuccess(ignored -> roundTrips.mark());
+  }
+
+  private Mono<Void> bookingSleep() {
+    if (!thinkTime.isInsideTransaction()) {
+      return Mono.empty();
+    }
+    return thinkTime.delay();
+  }
+
+  private Mono<Void> insertSeat(Connection connection, Document userSchedule,
+      long userId, LocalDate day, LocalDateTime currentTimestamp) {
+    return execute(connection.createStatement(
+        "insert into seat (user_id,schedule_id,day,date) values ($1,$2,$3,$4)")
+        .bind(0, userId)
+        .bind(1, userSchedule.getInteger("_id"))
+        .bind(2, day)
+        .bind(3, currentTimestamp));
+  }
+
+  private Mono<Void> insertPayment(Connection connection, Document userSchedule,
+      long userId, LocalDateTime currentTimestamp) {
+    return execute(connection.createStatement(
+        "insert into payment (user_id,amount,date) values ($1,$2,$3)")
+        .bind(0, userId)
+        .bind(1, syncBenchmark.paymentAmount(userSchedule))
+        .bind(2, currentTimestamp));
+  }
+
+  private Mono<Void> insertAudit(Connection connection, Document userSchedule,
+      LocalDate day, LocalDateTime currentTimestamp) {
+    return execute(connection.createStatement(
+        "insert into audit (schedule_id,day,seats_occupied,date) values ($1,$2,1,$3)"
+        + " on conflict (schedule_id,day)"
+        + " do update set seats_occupied = audit.seats_occupied + 1, date = $3")
+        .bind(0, userSchedule.getInteger("_id"))
+        .bind(1, day)
+        .bind(2, currentTimestamp));
+  }
+
+  private Mono<Void> execute(io.r2dbc.spi.Statement statement) {
+    return Mono.from(statement.execute())
+        .flatMap(result -> Mono.from(result.getRowsUpdated()))
+        .then();
+  }
+
+  @Override
+  protected void internalClose() throws Exception {
+    connectionPool.dispose();
+    syncBenchmark.close();
+  }
+}
@@ -0,0 +1,63 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import com.ongres.benchmark.workload.Operation;
+import com.ongres.benchmark.workload.WorkloadProvider;
+
+/**
+ * Operations of the {@code postgres-reactive} target.
+ */
+public class ReactivePostgresWorkloadProvider implements WorkloadProvider {
+
+  @Override
+  public String getTarget() {
+    return "postgres-reactive";
+  }
+
+  @Override
+  public ImmutableMap<String, Operation> getOperations(Benchmark benchmark) {
+    final ReactivePostgresFlightBenchmark flightBenchmark =
+        (ReactivePostgresFlightBenchmark) benchmark;
+    return ImmutableMap.<String, Operation>builder()
+        .put("book", Operation.reactive(flightBenchmark::book))
+        .put("view-itinerary", Operation.reactive(flightBenchmark::viewItinerary))
+        .put("search", Operation.reactive(flightBenchmark::search))
+        .build();
+  }
+
+  @Override
+  public ImmutableMap<String, Operation> getReports(Benchmark benchmark) {
+    final ReactivePostgresFlightBenchmark flightBenchmark =
+        (ReactivePostgresFlightBenchmark) benchmark;
+    return ImmutableMap.<String, Operation>builder()
+        .put("revenue", flightBenchmark::revenueReport)
+        .put("load-factor", flightBenchmark::loadFactorReport)
+        .build();
+  }
+
+  @Override
+  public ImmutableMap<String, String> getUnsupportedOperations(Benchmark benchmark) {
+    final String reason = "it is only implemented by the non reactive target";
+    return ImmutableMap.of("cancel", reason, "change-flight", reason);
+  }
+}
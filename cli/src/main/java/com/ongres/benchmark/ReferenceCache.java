@@ -0,0 +1,142 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ongres.benchmark.config.model.Config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.bson.Document;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Client-side read-through cache of the schedule and aircraft data read by each booking, keyed
+ * by schedule id. Schedules are immutable during the benchmark so entries are never invalidated,
+ * only evicted when the cache grows over its maximum size.
+ *
+ * <p>When the maximum size is 0 the cache is disabled and every lookup goes to the database.
+ */
+public class ReferenceCache {
+
+  private final Cache<Integer, Document> cache;
+  private final long maximumSize;
+  private final Meter hits;
+  private final Meter misses;
+  private final Timer load;
+
+  private ReferenceCache(long maximumSize) {
+    this.maximumSize = maximumSize;
+    this.cache = maximumSize > 0
+        ? CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build()
+        : null;
+    this.hits = MetricsManager.meter(Metric.REFERENCE_CACHE_HIT);
+    this.misses = MetricsManager.meter(Metric.REFERENCE_CACHE_MISS);
+    this.load = MetricsManager.timer(Metric.REFERENCE_CACHE_LOAD);
+  }
+
+  /**
+   * Create an instance of {@class ReferenceCache}.
+   */
+  public static ReferenceCache create(Config config) {
+    Preconditions.checkArgument(config.getReferenceCacheSize() >= 0,
+        "Reference cache size must not be negative");
+    return new ReferenceCache(config.getReferenceCacheSize());
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  public long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Return the cached schedule {@code scheduleId} or load it with {@code loader} and cache it.
+   */
+  public Document get(int scheduleId, Loader loader) throws Exception {
+    if (cache == null) {
+      return loader.load(scheduleId);
+    }
+    Document schedule = cache.getIfPresent(scheduleId);
+    if (schedule != null) {
+      hits.mark();
+      return schedule;
+    }
+    misses.mark();
+    schedule = load.time(() -> loader.load(scheduleId));
+    if (schedule != null) {
+      cache.put(scheduleId, schedule);
+    }
+    return schedule;
+  }
+
+  /**
+   * Return the cached schedule {@code scheduleId} or load it with {@code loader} and cache it.
+   */
+  public Mono<Document> getReactive(int scheduleId,
+      IntFunction<Mono<Document>> loader) {
+    if (cache == null) {
+      return loader.apply(scheduleId);
+    }
+    final Document schedule = cache.getIfPresent(scheduleId);
+    if (schedule != null) {
+      hits.mark();
+      return Mono.just(schedule);
+    }
+    misses.mark();
+    return Mono.defer(() -> {
+      final long start = System.nanoTime();
+      return loader.apply(scheduleId)
+          .doOnNext(loaded -> {
+            load.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            cache.put(scheduleId, loaded);
+          });
+    });
+  }
+
+  /**
+   * Add the schedule {@code scheduleId} to the cache, used to preload it.
+   */
+  public void put(int scheduleId, Document schedule) {
+    Preconditions.checkState(cache != null, "Reference cache is disabled");
+    cache.put(scheduleId, schedule);
+  }
+
+  public long size() {
+    return cache == null ? 0 : cache.size();
+  }
+
+  @FunctionalInterface
+  public interface Loader {
+    Document load(int scheduleId) throws Exception;
+  }
+}
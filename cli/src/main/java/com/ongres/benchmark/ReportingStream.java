@@ -0,0 +1,120 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.workload.Workload;
+import com.ongres.benchmark.workload.Workload.WeightedOperation;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Run the reports of a benchmark in a loop on their own threads, alongside the benchmark load,
+ * until closed. Each report is measured by its own {@code report.<name>} timer, so that it does
+ * not affect the iterations metrics.
+ */
+public class ReportingStream implements AutoCloseable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final Benchmark benchmark;
+  private final Workload reports;
+  private final long pauseNanos;
+  private final Thread[] streams;
+  private volatile boolean stopped = false;
+
+  private ReportingStream(Benchmark benchmark, Workload reports, int parallelism,
+      Duration pause) {
+    this.benchmark = benchmark;
+    this.reports = reports;
+    this.pauseNanos = pause.toNanos();
+    this.streams = new Thread[parallelism];
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("reporting-%d").setDaemon(true).build();
+    for (int index = 0; index < parallelism; index++) {
+      streams[index] = threadFactory.newThread(this::stream);
+    }
+  }
+
+  /**
+   * Create and start {@code parallelism} reporting streams that run the {@code reports} of
+   * {@code benchmark} pausing {@code pause} between reports.
+   */
+  public static ReportingStream start(Benchmark benchmark, Workload reports, int parallelism,
+      Duration pause) {
+    Preconditions.checkArgument(parallelism > 0);
+    Preconditions.checkArgument(!pause.isNegative(), "Reporting pause must not be negative");
+    ReportingStream reportingStream = new ReportingStream(benchmark, reports, parallelism,
+        pause);
+    for (Thread stream : reportingStream.streams) {
+      stream.start();
+    }
+    return reportingStream;
+  }
+
+  private void stream() {
+    while (!stopped) {
+      final WeightedOperation report = reports.next();
+      final long startTime = System.nanoTime();
+      try {
+        benchmark.run(report.getOperation());
+      } catch (RetryUserOperationException ex) {
+        MetricsManager.meter(Metric.REPORT_RETRY, report.getName()).mark();
+        continue;
+      } catch (BenchmarkClosedException ex) {
+        return;
+      } catch (RuntimeException ex) {
+        if (!stopped) {
+          logger.error("Report " + report.getName() + " failed, stopping reporting stream", ex);
+        }
+        return;
+      }
+      if (stopped) {
+        return;
+      }
+      final Timer timer = MetricsManager.timer(Metric.REPORT, report.getName());
+      timer.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      if (pauseNanos > 0) {
+        LockSupport.parkNanos(this, pauseNanos);
+      }
+    }
+  }
+
+  /**
+   * Stop running new reports. Reports already running are left to the benchmark close, that
+   * waits for them up to the drain timeout and then cancels them.
+   */
+  @Override
+  public void close() {
+    stopped = true;
+    for (Thread stream : streams) {
+      LockSupport.unpark(stream);
+    }
+  }
+}
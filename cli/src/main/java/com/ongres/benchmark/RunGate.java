@@ -0,0 +1,118 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gate that lets iterations run until it is closed and then waits for the running ones to
+ * complete. Running iterations are counted in stripes selected by thread and padded to their
+ * own cache line, so that entering and exiting the gate neither takes a lock nor contends on a
+ * shared counter.
+ */
+class RunGate {
+
+  private static final int PADDING = 16;
+
+  private final AtomicLongArray counters;
+  private final int mask;
+  private volatile boolean closed = false;
+  private volatile Thread closer = null;
+
+  RunGate() {
+    this(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  RunGate(int minStripes) {
+    int stripes = 1;
+    while (stripes < minStripes) {
+      stripes <<= 1;
+    }
+    this.counters = new AtomicLongArray(stripes * PADDING);
+    this.mask = stripes - 1;
+  }
+
+  /**
+   * Enter the gate.
+   *
+   * @return the stripe to pass to {@link #exit(int)} or {@code -1} if the gate is closed
+   */
+  int enter() {
+    if (closed) {
+      return -1;
+    }
+    final int stripe = stripe();
+    counters.getAndIncrement(stripe * PADDING);
+    if (closed) {
+      exit(stripe);
+      return -1;
+    }
+    return stripe;
+  }
+
+  /**
+   * Exit the gate from the stripe returned by {@link #enter()}, possibly from another thread.
+   */
+  void exit(int stripe) {
+    if (counters.decrementAndGet(stripe * PADDING) == 0 && closed) {
+      LockSupport.unpark(closer);
+    }
+  }
+
+  /**
+   * Close the gate and wait up to {@code timeout} for running iterations to complete.
+   *
+   * @return {@code true} if all iterations completed, {@code false} if the timeout elapsed
+   */
+  boolean close(Duration timeout) {
+    closer = Thread.currentThread();
+    closed = true;
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      while (counters.get(stripe * PADDING) != 0) {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the number of iterations that entered the gate and did not exit yet.
+   */
+  long running() {
+    long running = 0;
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      running += counters.get(stripe * PADDING);
+    }
+    return running;
+  }
+
+  private int stripe() {
+    final long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & mask;
+  }
+}
@@ -0,0 +1,244 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Snapshot;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.ongres.benchmark.config.model.Config;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Search the highest load (parallelism in closed loop, rate in open loop) that a target sustains
+ * with the response time percentile under the SLO. The load is doubled until the SLO is missed
+ * and then bisected between the highest load that met it and the lowest load that missed it.
+ * Each load is measured in a window whose first part is discarded to let the system settle.
+ */
+public class SaturationSearch {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final double SETTLE_FRACTION = 0.2;
+
+  private final BenchmarkRunner runner;
+  private final LoadDriver driver;
+  private final boolean openLoop;
+  private final double initialLoad;
+  private final double maxLoad;
+  private final Duration window;
+  private final long sloNanos;
+  private final double percentile;
+  private final double tolerance;
+
+  /**
+   * Create a search that starts from {@code initialLoad}.
+   */
+  public SaturationSearch(BenchmarkRunner runner, LoadDriver driver, boolean openLoop,
+      double initialLoad, Config config) {
+    Preconditions.checkArgument(initialLoad > 0, "Initial load must be greater than 0");
+    Preconditions.checkArgument(config.getSearchMaxLoad() >= initialLoad,
+        "Search max load must be greater or equals to the initial load");
+    Preconditions.checkArgument(config.getSearchPercentile() > 0
+        && config.getSearchPercentile() < 100, "Search percentile must be between 0 and 100");
+    Preconditions.checkArgument(config.getSearchTolerance() > 0
+        && config.getSearchTolerance() < 1, "Search tolerance must be between 0 and 1");
+    this.runner = runner;
+    this.driver = driver;
+    this.openLoop = openLoop;
+    this.initialLoad = initialLoad;
+    this.maxLoad = config.getSearchMaxLoad();
+    this.window = config.getSearchWindowAsDuration();
+    this.sloNanos = config.getSearchSloAsDuration().toNanos();
+    this.percentile = config.getSearchPercentile();
+    this.tolerance = config.getSearchTolerance();
+  }
+
+  /**
+   * Run the search and return the measured points in the order they were measured.
+   */
+  public ImmutableList<Point> run() throws InterruptedException {
+    final ImmutableList<Point> points = search(this::measure);
+    runner.setStage(null);
+    return points;
+  }
+
+  /**
+   * Search with the points measured by {@code measurement} and return them in the order they
+   * were measured.
+   */
+  ImmutableList<Point> search(Measurement measurement) throws InterruptedException {
+    List<Point> points = new ArrayList<>();
+    double passedLoad = 0;
+    double failedLoad = Double.POSITIVE_INFINITY;
+    double load = initialLoad;
+    while (!driver.isDone()) {
+      Point point = measurement.measure(points.size(), load);
+      points.add(point);
+      logger.info(point);
+      if (point.isPassed()) {
+        passedLoad = load;
+      } else {
+        failedLoad = load;
+      }
+      if (failedLoad == Double.POSITIVE_INFINITY) {
+        if (load >= maxLoad) {
+          logger.info("Max load " + format(maxLoad) + " reached");
+          break;
+        }
+        load = roundLoad(Math.min(maxLoad, load * 2));
+        continue;
+      }
+      double nextLoad = roundLoad((passedLoad + failedLoad) / 2);
+      if (failedLoad - passedLoad <= failedLoad * tolerance
+          || nextLoad <= passedLoad || nextLoad >= failedLoad) {
+        break;
+      }
+      load = nextLoad;
+    }
+    return ImmutableList.copyOf(points);
+  }
+
+  private double roundLoad(double load) {
+    if (openLoop) {
+      return load;
+    }
+    return Math.max(1, Math.round(load));
+  }
+
+  private Point measure(int index, double load) throws InterruptedException {
+    driver.setLoad(load);
+    runner.setStage(null);
+    final long settleNanos = (long) (window.toNanos() * SETTLE_FRACTION);
+    TimeUnit.NANOSECONDS.sleep(settleNanos);
+    final String stage = "search-" + index;
+    runner.setStage(stage);
+    final long start = System.nanoTime();
+    TimeUnit.NANOSECONDS.sleep(window.toNanos() - settleNanos);
+    runner.setStage(null);
+    final long elapsed = System.nanoTime() - start;
+    final long iterations = MetricsManager.meter(Metric.ITERATIONS, stage).getCount();
+    final Snapshot snapshot = MetricsManager.timer(Metric.RESPONSE_TIME, stage).getSnapshot();
+    final double throughput = iterations * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    final double median = snapshot.getMedian();
+    final double percentileValue = iterations > 0 ? snapshot.getValue(percentile / 100) : 0;
+    final boolean passed = iterations > 0 && percentileValue <= sloNanos
+        && (!openLoop || throughput >= load * (1 - tolerance));
+    return new Point(load, throughput, median, percentileValue, passed);
+  }
+
+  /**
+   * Return the point with the highest throughput that met the SLO, if any.
+   */
+  public static Optional<Point> getKnee(List<Point> points) {
+    return points.stream()
+        .filter(Point::isPassed)
+        .max(Comparator.comparingDouble(Point::getThroughput));
+  }
+
+  /**
+   * Write the measured points, sorted by load, as CSV.
+   */
+  public void writeCsv(List<Point> points, Path path) throws IOException {
+    try (PrintWriter writer = new PrintWriter(
+        Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      writer.println("load,throughput,p50_ms,p" + format(percentile) + "_ms,passed");
+      points.stream()
+          .sorted(Comparator.comparingDouble(Point::getLoad))
+          .forEach(point -> writer.println(String.format(Locale.US, "%s,%.2f,%.3f,%.3f,%s",
+              format(point.getLoad()), point.getThroughput(),
+              point.getMedian() / TimeUnit.MILLISECONDS.toNanos(1),
+              point.getPercentile() / TimeUnit.MILLISECONDS.toNanos(1),
+              point.isPassed())));
+    }
+  }
+
+  private static String format(double value) {
+    if (value == Math.rint(value)) {
+      return String.valueOf((long) value);
+    }
+    return String.format(Locale.US, "%.2f", value);
+  }
+
+  interface Measurement {
+    Point measure(int index, double load) throws InterruptedException;
+  }
+
+  public class Point {
+    private final double load;
+    private final double throughput;
+    private final double median;
+    private final double percentileValue;
+    private final boolean passed;
+
+    Point(double load, double throughput, double median, double percentileValue,
+        boolean passed) {
+      this.load = load;
+      this.throughput = throughput;
+      this.median = median;
+      this.percentileValue = percentileValue;
+      this.passed = passed;
+    }
+
+    public double getLoad() {
+      return load;
+    }
+
+    public double getThroughput() {
+      return throughput;
+    }
+
+    public double getMedian() {
+      return median;
+    }
+
+    public double getPercentile() {
+      return percentileValue;
+    }
+
+    public boolean isPassed() {
+      return passed;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "%s %s: %.2f iterations/s, p50 %.3f ms, p%s %.3f ms (%s)",
+          openLoop ? "Rate" : "Parallelism", format(load), throughput,
+          median / TimeUnit.MILLISECONDS.toNanos(1), format(percentile),
+          percentileValue / TimeUnit.MILLISECONDS.toNanos(1),
+          passed ? "met SLO" : "missed SLO");
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Apply a {@code LoadProfile} to a {@code LoadDriver}, updating the load periodically and
+ * tagging the metrics of the {@code BenchmarkRunner} with the running stage. The driver is
+ * stopped when the last stage finishes.
+ */
+public class StageController implements Closeable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final long UPDATE_PERIOD_MILLIS = 100;
+
+  private final LoadProfile profile;
+  private final LoadDriver driver;
+  private final BenchmarkRunner runner;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("benchmark-stages").setDaemon(true).build());
+  private long startTime;
+  private int stageIndex = -1;
+
+  /**
+   * Create a controller for {@code profile}.
+   */
+  public StageController(LoadProfile profile, LoadDriver driver, BenchmarkRunner runner) {
+    this.profile = profile;
+    this.driver = driver;
+    this.runner = runner;
+  }
+
+  /**
+   * Start applying the load profile.
+   */
+  public StageController start() {
+    startTime = System.nanoTime();
+    update();
+    executor.scheduleAtFixedRate(this::update,
+        UPDATE_PERIOD_MILLIS, UPDATE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  private void update() {
+    try {
+      final long elapsed = System.nanoTime() - startTime;
+      final int currentStageIndex = profile.getStageIndex(elapsed);
+      if (currentStageIndex >= profile.size()) {
+        logger.info("All stages completed");
+        runner.setStage(null);
+        driver.stop();
+        executor.shutdown();
+        return;
+      }
+      if (currentStageIndex != stageIndex) {
+        stageIndex = currentStageIndex;
+        logger.info("Stage " + profile.getStageName(stageIndex) + " started");
+        runner.setStage(profile.getStageName(stageIndex));
+      }
+      driver.setLoad(profile.getLoad(elapsed));
+    } catch (RuntimeException ex) {
+      logger.error("Error while updating stage", ex);
+      driver.cancel(false);
+      executor.shutdown();
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
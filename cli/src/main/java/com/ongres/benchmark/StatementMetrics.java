@@ -0,0 +1,106 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.postgresql.PGStatement;
+
+/**
+ * Execution metrics of a JDBC statement, split between the executions the server had to parse
+ * and plan and the ones that reused a named server-side prepared statement.
+ *
+ * <p>The {@code prepared-latency-delta.<name>} gauge reports the difference in microseconds
+ * between the mean time of the executions of the statement that were parsed and the ones that
+ * were prepared. It is an estimate of the latency each prepared execution saves, not a
+ * measure of the parse and plan time, since both means also include the execution of the
+ * statement and the executions are not run with the same values at the same time.
+ */
+public class StatementMetrics {
+
+  private final Timer parsed;
+  private final Timer prepared;
+  private final LongAdder parsedNanos = new LongAdder();
+  private final LongAdder preparedNanos = new LongAdder();
+
+  private StatementMetrics(Timer parsed, Timer prepared) {
+    this.parsed = parsed;
+    this.prepared = prepared;
+  }
+
+  /**
+   * Create an instance of {@class StatementMetrics} for the statement {@code name}.
+   */
+  public static StatementMetrics create(String name) {
+    StatementMetrics statementMetrics = new StatementMetrics(
+        MetricsManager.timer(Metric.STATEMENT, name + ".parsed"),
+        MetricsManager.timer(Metric.STATEMENT, name + ".prepared"));
+    MetricsManager.gauge(Metric.PREPARED_LATENCY_DELTA, name,
+        (Gauge<Long>) statementMetrics::getPreparedLatencyDelta);
+    return statementMetrics;
+  }
+
+  /**
+   * Run {@code execution} with {@code statement} recording its time in the timer that matches
+   * how the driver will send it.
+   */
+  public <T> T execute(PreparedStatement statement, Execution<T> execution)
+      throws SQLException {
+    final boolean serverPrepared = statement.isWrapperFor(PGStatement.class)
+        && statement.unwrap(PGStatement.class).isUseServerPrepare();
+    final long start = System.nanoTime();
+    final T result = execution.execute(statement);
+    final long elapsed = System.nanoTime() - start;
+    if (serverPrepared) {
+      prepared.update(elapsed, TimeUnit.NANOSECONDS);
+      preparedNanos.add(elapsed);
+    } else {
+      parsed.update(elapsed, TimeUnit.NANOSECONDS);
+      parsedNanos.add(elapsed);
+    }
+    return result;
+  }
+
+  /**
+   * Return the difference in microseconds between the mean time of the parsed and the prepared
+   * executions, or {@code null} until the statement has been executed both ways.
+   */
+  public Long getPreparedLatencyDelta() {
+    final long parsedCount = parsed.getCount();
+    final long preparedCount = prepared.getCount();
+    if (parsedCount == 0 || preparedCount == 0) {
+      return null;
+    }
+    return TimeUnit.NANOSECONDS.toMicros(
+        parsedNanos.sum() / parsedCount - preparedNanos.sum() / preparedCount);
+  }
+
+  @FunctionalInterface
+  public interface Execution<T> {
+    T execute(PreparedStatement statement) throws SQLException;
+  }
+}
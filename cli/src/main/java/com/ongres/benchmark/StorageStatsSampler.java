@@ -0,0 +1,113 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.Config;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sample the storage statistics of the target every {@code --storage-stats-interval} into
+ * {@code storage.<name>} gauges, so that the metrics timeline shows how dead tuples, vacuums
+ * and storage sizes evolve during the run. Each gauge returns the last value sampled.
+ */
+public class StorageStatsSampler implements AutoCloseable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final Duration interval;
+  private final Sampler sampler;
+  private final Map<String, Long> values = new ConcurrentHashMap<>();
+  private ScheduledExecutorService executor;
+
+  private StorageStatsSampler(Duration interval, Sampler sampler) {
+    this.interval = interval;
+    this.sampler = sampler;
+  }
+
+  /**
+   * Create an instance of {@class StorageStatsSampler}.
+   */
+  public static StorageStatsSampler create(Config config, Sampler sampler) {
+    Preconditions.checkArgument(!config.getStorageStatsIntervalAsDuration().isNegative(),
+        "Storage stats interval must not be negative");
+    return new StorageStatsSampler(config.getStorageStatsIntervalAsDuration(), sampler);
+  }
+
+  public boolean isEnabled() {
+    return !interval.isZero();
+  }
+
+  /**
+   * Start sampling, if enabled.
+   */
+  public synchronized void start() {
+    if (!isEnabled() || executor != null) {
+      return;
+    }
+    final long period = interval.toMillis();
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("storage-stats-sampler").setDaemon(true).build());
+    executor.scheduleWithFixedDelay(this::sample, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void sample() {
+    try {
+      sampler.sample(this::record);
+    } catch (Exception ex) {
+      logger.warn("Error sampling storage statistics", ex);
+    }
+  }
+
+  private void record(String name, long value) {
+    if (values.put(name, value) == null) {
+      MetricsManager.gauge(Metric.STORAGE, name, () -> values.get(name));
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  @FunctionalInterface
+  public interface Sampler {
+
+    /**
+     * Sample the storage statistics passing each value with its name to {@code stats}.
+     */
+    void sample(ObjLongConsumer<String> stats) throws Exception;
+  }
+}
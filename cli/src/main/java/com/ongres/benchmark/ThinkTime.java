@@ -0,0 +1,110 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.ThinkTimeDistribution;
+import com.ongres.benchmark.config.model.ThinkTimePlacement;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Think time of a simulated user, sampled from a distribution with the configured mean.
+ */
+public class ThinkTime {
+
+  private final long meanNanos;
+  private final ThinkTimeDistribution distribution;
+  private final ThinkTimePlacement placement;
+
+  private ThinkTime(long meanNanos, ThinkTimeDistribution distribution,
+      ThinkTimePlacement placement) {
+    this.meanNanos = meanNanos;
+    this.distribution = distribution;
+    this.placement = placement;
+  }
+
+  /**
+   * Create an instance of {@class ThinkTime}.
+   */
+  public static ThinkTime create(Config config) {
+    Duration mean = config.getThinkTimeAsDuration();
+    Preconditions.checkArgument(!mean.isNegative(), "Think time must not be negative");
+    return new ThinkTime(mean.toNanos(), config.getThinkTimeDistributionAsEnum(),
+        config.getThinkTimePlacementAsEnum());
+  }
+
+  public boolean isZero() {
+    return meanNanos == 0;
+  }
+
+  public boolean isInsideTransaction() {
+    return placement == ThinkTimePlacement.INSIDE_TRANSACTION;
+  }
+
+  /**
+   * Return the next think time in nanoseconds.
+   */
+  public long next() {
+    switch (distribution) {
+      case UNIFORM:
+        return (long) (ThreadLocalRandom.current().nextDouble() * 2 * meanNanos);
+      case EXPONENTIAL:
+        return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanNanos);
+      case FIXED:
+      default:
+        return meanNanos;
+    }
+  }
+
+  /**
+   * Sleep the next think time. Parks instead of sleeping so that sub-millisecond think times
+   * are honored.
+   */
+  public void sleep() throws InterruptedException {
+    if (isZero()) {
+      return;
+    }
+    final long deadline = System.nanoTime() + next();
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Return a {@code Mono} that completes after the next think time.
+   */
+  public Mono<Void> delay() {
+    if (isZero()) {
+      return Mono.empty();
+    }
+    return Mono.defer(() -> Mono.delay(Duration.ofNanos(next())).then());
+  }
+}
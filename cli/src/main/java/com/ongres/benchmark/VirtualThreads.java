@@ -0,0 +1,55 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads through reflection, so that the project can still be compiled for
+ * releases where they are not available.
+ */
+public class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Return a {@code ThreadFactory} that creates virtual threads named with {@code prefix} followed
+   * by a counter.
+   *
+   * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+   */
+  public static ThreadFactory factory(String prefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ClassNotFoundException | NoSuchMethodException ex) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later"
+          + " (running on Java " + System.getProperty("java.version") + ")", ex);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      throw new UnsupportedOperationException("Virtual threads are not available", ex);
+    }
+  }
+}
@@ -22,6 +22,7 @@ package com.ongres.benchmark.config.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.mongodb.ReadConcern;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
@@ -34,7 +35,9 @@ import com.ongres.benchmark.config.picocli.PicocliArrayList;
 import java.sql.Connection;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -55,7 +58,8 @@ public class Config {
   private int parallelism = Runtime.getRuntime().availableProcessors();
   
   @Option(names = {"--benchmark-target"}, 
-      description = "Specify the benchmark target: postgres or mongo")
+      description = "Specify the benchmark target: postgres, postgres-reactive, mongo,"
+          + " mongo-reactive or noop (measures the overhead of the benchmark itself)")
   private String targetType = "postgres";
 
   @Option(names = {"--duration"}, 
@@ -69,16 +73,262 @@ public class Config {
       required = false)
   private Integer iterations;
 
+  @Option(names = {"--warmup"}, 
+      description = "Set warm-up duration. Metrics of the warm-up are collected apart and not"
+          + " reported with the benchmark metrics", 
+      required = false,
+      converter = DurationConverter.class)
+  private String warmup;
+
+  @Option(names = {"--warmup-iterations"}, 
+      description = "Set warm-up iterations. Metrics of the warm-up are collected apart and not"
+          + " reported with the benchmark metrics", 
+      required = false)
+  private Integer warmupIterations;
+
+  @Option(names = {"--prewarm"}, 
+      description = "Load schedule and aircraft into the database caches before the benchmark", 
+      required = true)
+  private boolean prewarm = false;
+
+  @Option(names = {"--target-rate"}, 
+      description = "Set the target rate of iterations per second. When set iterations are"
+          + " scheduled in open loop at this rate regardless of completed ones", 
+      required = false)
+  private Double targetRate;
+
+  @Option(names = {"--arrival-distribution"}, 
+      description = "Set the distribution of iterations arrivals when target rate is set:"
+          + " constant or poisson", 
+      required = true)
+  private String arrivalDistribution = ArrivalDistribution.CONSTANT.name();
+
+  private List<Stage> stages;
+
+  private Map<String, Double> workload;
+
+  @Option(names = {"--search"}, 
+      description = "Search the maximum throughput with response time percentile under the SLO."
+          + " Searches the parallelism, or the rate when target rate is set", 
+      required = true)
+  private boolean search = false;
+
+  @Option(names = {"--search-slo"}, 
+      description = "Set the SLO for the response time percentile of the search", 
+      required = true,
+      converter = DurationConverter.class)
+  private String searchSlo = "PT0.1S";
+
+  @Option(names = {"--search-percentile"}, 
+      description = "Set the response time percentile checked against the SLO in the search", 
+      required = true)
+  private double searchPercentile = 99;
+
+  @Option(names = {"--search-window"}, 
+      description = "Set the duration of each measurement window of the search", 
+      required = true,
+      converter = DurationConverter.class)
+  private String searchWindow = "PT30S";
+
+  @Option(names = {"--search-max-load"}, 
+      description = "Set the maximum parallelism or rate tried by the search", 
+      required = true)
+  private double searchMaxLoad = 1024;
+
+  @Option(names = {"--search-tolerance"}, 
+      description = "Set the relative precision at which the search stops", 
+      required = true)
+  private double searchTolerance = 0.05;
+
+  @Option(names = {"--coordinator"}, 
+      description = "Run as coordinator of distributed workers, merging their metrics", 
+      required = true)
+  private boolean coordinator = false;
+
+  @Option(names = {"--worker"}, 
+      description = "Run as a distributed worker of the coordinator", 
+      required = true)
+  private boolean worker = false;
+
+  @Option(names = {"--workers"}, 
+      description = "Set the number of distributed workers the coordinator waits for", 
+      required = true)
+  private int workers = 1;
+
+  @Option(names = {"--coordinator-address"}, 
+      description = "Set the host:port the coordinator listens on and workers connect to", 
+      required = true)
+  private String coordinatorAddress = "localhost:7777";
+
+  @Option(names = {"--distributed-report-interval"}, 
+      description = "Set the interval at which workers send metrics to the coordinator", 
+      required = true,
+      converter = DurationConverter.class)
+  private String distributedReportInterval = "PT1S";
+
+  @Option(names = {"--user-id-offset"}, 
+      description = "Set the first user id generated (distributed workers get disjoint ranges"
+          + " from the coordinator)", 
+      required = true)
+  private long userIdOffset = 0;
+
+  @Option(names = {"--drain-timeout"}, 
+      description = "Set how long to wait for running iterations when the benchmark ends before"
+          + " cancelling them", 
+      required = true,
+      converter = DurationConverter.class)
+  private String drainTimeout = "PT30S";
+
+  @Option(names = {"--virtual-threads"}, 
+      description = "Run each simulated user on a virtual thread (requires Java 21 or later)."
+          + " Iterations running concurrently are limited to max connections", 
+      required = true)
+  private boolean virtualThreads = false;
+
   @Option(names = {"--booking-sleep"}, 
       description = "Set booking sleep before inserting seat table", 
       required = true)
   private int bookingSleep = 0;
 
+  @Option(names = {"--think-time"}, 
+      description = "Set the mean think time of a user (for example PT0.25S or PT0.0005S)."
+          + " Overrides booking sleep", 
+      required = false,
+      converter = DurationConverter.class)
+  private String thinkTime;
+
+  @Option(names = {"--think-time-distribution"}, 
+      description = "Set the distribution of think time: fixed, uniform (between zero and"
+          + " twice the mean) or exponential", 
+      required = true)
+  private String thinkTimeDistribution = ThinkTimeDistribution.FIXED.name();
+
+  @Option(names = {"--think-time-placement"}, 
+      description = "Set where think time happens: inside_transaction (before inserting the"
+          + " seat, holding the connection) or outside_transaction (between iterations, with"
+          + " the connection released)", 
+      required = true)
+  private String thinkTimePlacement = ThinkTimePlacement.INSIDE_TRANSACTION.name();
+
+  @Option(names = {"--booking-mode"}, 
+      description = "Set how a booking is sent: statements (one round trip per statement),"
+          + " pipelined (Postgres, all statements in one round trip) or function (Postgres,"
+          + " one call to a PL/pgSQL function)", 
+      required = true)
+  private String bookingMode = BookingMode.STATEMENTS.name();
+
+  @Option(names = {"--capacity-control"}, 
+      description = "Set how bookings enforce the aircraft capacity of a flight day: none"
+          + " (flights are overbooked), pessimistic (lock the audit row or document before"
+          + " checking it), optimistic (check a version and retry on conflict) or conditional"
+          + " (a single update with the capacity as predicate)", 
+      required = true)
+  private String capacityControl = CapacityControl.NONE.name();
+
+  @Option(names = {"--capacity-retries"}, 
+      description = "Set the times an optimistic booking is retried on a version conflict"
+          + " before retrying the whole booking", 
+      required = true)
+  private int capacityRetries = 10;
+
   @Option(names = {"--day-range"}, 
       description = "Set day range when inserting / updating audit table", 
       required = true)
   private int dayRange = 1;
 
+  @Option(names = {"--scale-factor"}, 
+      description = "Set the number of copies of the seed schedule generated by setup, each"
+          + " copy synthesizes new routes, flights and validity windows", 
+      required = true)
+  private int scaleFactor = 1;
+
+  @Option(names = {"--history-bookings"}, 
+      description = "Set the number of past bookings (seat, payment and audit) generated by"
+          + " setup", 
+      required = true)
+  private long historyBookings = 0;
+
+  @Option(names = {"--load-parallelism"}, 
+      description = "Set the number of threads that generate and load data in setup", 
+      required = true)
+  private int loadParallelism = Runtime.getRuntime().availableProcessors();
+
+  @Option(names = {"--schedule-distribution"}, 
+      description = "Set the distribution of the booked schedule: uniform, zipfian (lower"
+          + " schedule ids are more popular), hotspot or latest (higher schedule ids are more"
+          + " popular)", 
+      required = true)
+  private String scheduleDistribution = KeyDistribution.UNIFORM.name();
+
+  @Option(names = {"--day-distribution"}, 
+      description = "Set the distribution of the booked day in the day range: uniform, zipfian"
+          + " (nearer days are more popular), hotspot or latest (farther days are more"
+          + " popular)", 
+      required = true)
+  private String dayDistribution = KeyDistribution.UNIFORM.name();
+
+  @Option(names = {"--zipfian-theta"}, 
+      description = "Set the skew of zipfian and latest distributions, between 0 (uniform) and"
+          + " 1 (excluded)", 
+      required = true)
+  private double zipfianTheta = 0.99;
+
+  @Option(names = {"--hotspot-fraction"}, 
+      description = "Set the fraction of keys that are hot in hotspot distribution", 
+      required = true)
+  private double hotspotFraction = 0.2;
+
+  @Option(names = {"--hotspot-access-fraction"}, 
+      description = "Set the fraction of accesses that go to hot keys in hotspot distribution", 
+      required = true)
+  private double hotspotAccessFraction = 0.8;
+
+  @Option(names = {"--flight-search-page-size"}, 
+      description = "Set the number of flights per page returned by the search operation", 
+      required = true)
+  private int flightSearchPageSize = 20;
+
+  @Option(names = {"--flight-search-pages"}, 
+      description = "Set the maximum number of pages read by each search operation", 
+      required = true)
+  private int flightSearchPages = 1;
+
+  @Option(names = {"--reporting-parallelism"}, 
+      description = "Set the number of concurrent reporting streams that run revenue and load"
+          + " factor reports alongside the benchmark load (0 disables reporting)", 
+      required = true)
+  private int reportingParallelism = 0;
+
+  @Option(names = {"--reporting-fetch-size"}, 
+      description = "Set the number of rows fetched at a time by reports", 
+      required = true)
+  private int reportingFetchSize = 1000;
+
+  @Option(names = {"--reporting-pause"}, 
+      description = "Set the pause of each reporting stream between reports", 
+      required = true,
+      converter = DurationConverter.class)
+  private String reportingPause = "PT0S";
+
+  @Option(names = {"--storage-stats-interval"}, 
+      description = "Set the interval between samples of the storage statistics of the"
+          + " bookings (dead tuples, vacuums and sizes in Postgres, sizes and reusable bytes in"
+          + " Mongo) reported as metrics (0 disables sampling)", 
+      required = true,
+      converter = DurationConverter.class)
+  private String storageStatsInterval = "PT0S";
+
+  @Option(names = {"--reference-cache-size"}, 
+      description = "Set the maximum number of schedules kept in the client-side reference"
+          + " cache read by bookings (0 disables the cache)", 
+      required = true)
+  private long referenceCacheSize = 0;
+
+  @Option(names = {"--reference-cache-preload"}, 
+      description = "Preload the reference cache at startup instead of loading it lazily", 
+      required = true)
+  private boolean referenceCachePreload = false;
+
   @Option(names = {"--metrics"}, 
       description = "Set metrics period", 
       required = false,
@@ -137,11 +387,74 @@ public class Config {
       required = true)
   private String mongoWriteConcern = "MAJORITY";
 
+  @Option(names = {"--mongo-schema"}, 
+      description = "Set the mongo data model: relational (seat, payment and audit collections"
+          + " written in a transaction) or embedded (seats embedded in flight day bucket"
+          + " documents written with a single document update)", 
+      required = true)
+  private String mongoSchema = MongoSchema.RELATIONAL.name();
+
+  @Option(names = {"--mongo-bucket-size"}, 
+      description = "Set the maximum number of seats embedded in a flight day bucket document"
+          + " of the embedded mongo data model", 
+      required = true)
+  private int mongoBucketSize = 500;
+
+  @Option(names = {"--mongo-denormalized-schedule"}, 
+      description = "Store the aircraft capacity and attributes in each mongo schedule document"
+          + " at setup, so bookings read it with a covered find instead of a $lookup", 
+      required = true)
+  private boolean mongoDenormalizedSchedule = false;
+
   @Option(names = {"--sql-isolation-level"}, 
       description = "Set SQL transaction isolation level", 
       required = true)
   private String sqlIsolationLevel = "REPEATABLE_READ";
 
+  @Option(names = {"--sql-prepare-threshold"}, 
+      description = "Set the executions of a statement on a connection after which the driver"
+          + " uses a named server-side prepared statement (0 never prepares statements on the"
+          + " server, -1 prepares them on the first execution)", 
+      required = true)
+  private int sqlPrepareThreshold = 5;
+
+  @Option(names = {"--sql-prepared-statement-cache-queries"}, 
+      description = "Set the number of prepared statements cached on each connection", 
+      required = true)
+  private int sqlPreparedStatementCacheQueries = 256;
+
+  @Option(names = {"--sql-prepared-statement-cache-size-mib"}, 
+      description = "Set the size in MiB of the prepared statements cache of each connection", 
+      required = true)
+  private int sqlPreparedStatementCacheSizeMib = 5;
+
+  @Option(names = {"--sql-partitioning"}, 
+      description = "Range partition seat and audit by day and payment by date with one"
+          + " partition per interval: none, day, week or month", 
+      required = true)
+  private String sqlPartitioning = PartitionInterval.NONE.name();
+
+  @Option(names = {"--sql-partitions-ahead"}, 
+      description = "Set the partitions kept created past the last bookable day", 
+      required = true)
+  private int sqlPartitionsAhead = 2;
+
+  @Option(names = {"--sql-partition-check-interval"}, 
+      description = "Set the interval between checks that roll partitions forward", 
+      required = true,
+      converter = DurationConverter.class)
+  private String sqlPartitionCheckInterval = "PT1M";
+
+  @Option(names = {"--sql-copy-format"}, 
+      description = "Set the format of the COPY that loads the setup data: csv or binary", 
+      required = true)
+  private String sqlCopyFormat = CopyFormat.CSV.name();
+
+  @Option(names = {"--sql-unlogged-load"}, 
+      description = "Load the setup data into unlogged tables that are set logged once loaded", 
+      required = true)
+  private boolean sqlUnloggedLoad = false;
+
   @Option(names = {"--skip-setup"}, 
       description = "Skip database setup", 
       required = true)
@@ -216,6 +529,238 @@ public class Config {
     this.iterations = iterations;
   }
 
+  public String getWarmup() {
+    return warmup;
+  }
+
+  @JsonIgnore
+  public Optional<Duration> getWarmupAsDuration() {
+    return Optional.ofNullable(warmup)
+        .map(m -> Duration.parse(m));
+  }
+
+  public void setWarmup(String warmup) {
+    this.warmup = warmup;
+  }
+
+  public Integer getWarmupIterations() {
+    return warmupIterations;
+  }
+
+  public void setWarmupIterations(Integer warmupIterations) {
+    this.warmupIterations = warmupIterations;
+  }
+
+  public boolean isPrewarm() {
+    return prewarm;
+  }
+
+  public void setPrewarm(boolean prewarm) {
+    this.prewarm = prewarm;
+  }
+
+  public Double getTargetRate() {
+    return targetRate;
+  }
+
+  public void setTargetRate(Double targetRate) {
+    this.targetRate = targetRate;
+  }
+
+  public String getArrivalDistribution() {
+    return arrivalDistribution;
+  }
+
+  @JsonIgnore
+  public ArrivalDistribution getArrivalDistributionAsEnum() {
+    return ArrivalDistribution.valueOf(arrivalDistribution.toUpperCase(Locale.US));
+  }
+
+  public void setArrivalDistribution(String arrivalDistribution) {
+    this.arrivalDistribution = arrivalDistribution;
+  }
+
+  public List<Stage> getStages() {
+    return stages;
+  }
+
+  /**
+   * Get stages.
+   */
+  @JsonIgnore
+  public ImmutableList<Stage> getStagesAsImmutableList() {
+    if (stages == null) {
+      return ImmutableList.of();
+    }
+    return ImmutableList.copyOf(stages);
+  }
+
+  public void setStages(List<Stage> stages) {
+    this.stages = stages;
+  }
+
+  public Map<String, Double> getWorkload() {
+    return workload;
+  }
+
+  /**
+   * Get workload operation weights by operation name.
+   */
+  @JsonIgnore
+  public ImmutableMap<String, Double> getWorkloadAsImmutableMap() {
+    if (workload == null) {
+      return ImmutableMap.of();
+    }
+    return ImmutableMap.copyOf(workload);
+  }
+
+  public void setWorkload(Map<String, Double> workload) {
+    this.workload = workload;
+  }
+
+  public boolean isSearch() {
+    return search;
+  }
+
+  public void setSearch(boolean search) {
+    this.search = search;
+  }
+
+  public String getSearchSlo() {
+    return searchSlo;
+  }
+
+  @JsonIgnore
+  public Duration getSearchSloAsDuration() {
+    return Duration.parse(searchSlo);
+  }
+
+  public void setSearchSlo(String searchSlo) {
+    this.searchSlo = searchSlo;
+  }
+
+  public double getSearchPercentile() {
+    return searchPercentile;
+  }
+
+  public void setSearchPercentile(double searchPercentile) {
+    this.searchPercentile = searchPercentile;
+  }
+
+  public String getSearchWindow() {
+    return searchWindow;
+  }
+
+  @JsonIgnore
+  public Duration getSearchWindowAsDuration() {
+    return Duration.parse(searchWindow);
+  }
+
+  public void setSearchWindow(String searchWindow) {
+    this.searchWindow = searchWindow;
+  }
+
+  public double getSearchMaxLoad() {
+    return searchMaxLoad;
+  }
+
+  public void setSearchMaxLoad(double searchMaxLoad) {
+    this.searchMaxLoad = searchMaxLoad;
+  }
+
+  public double getSearchTolerance() {
+    return searchTolerance;
+  }
+
+  public void setSearchTolerance(double searchTolerance) {
+    this.searchTolerance = searchTolerance;
+  }
+
+  public boolean isCoordinator() {
+    return coordinator;
+  }
+
+  public void setCoordinator(boolean coordinator) {
+    this.coordinator = coordinator;
+  }
+
+  public boolean isWorker() {
+    return worker;
+  }
+
+  public void setWorker(boolean worker) {
+    this.worker = worker;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public void setWorkers(int workers) {
+    this.workers = workers;
+  }
+
+  public String getCoordinatorAddress() {
+    return coordinatorAddress;
+  }
+
+  @JsonIgnore
+  public String getCoordinatorHost() {
+    return coordinatorAddress.substring(0, coordinatorAddress.lastIndexOf(':'));
+  }
+
+  @JsonIgnore
+  public int getCoordinatorPort() {
+    return Integer.parseInt(
+        coordinatorAddress.substring(coordinatorAddress.lastIndexOf(':') + 1));
+  }
+
+  public void setCoordinatorAddress(String coordinatorAddress) {
+    this.coordinatorAddress = coordinatorAddress;
+  }
+
+  public String getDistributedReportInterval() {
+    return distributedReportInterval;
+  }
+
+  @JsonIgnore
+  public Duration getDistributedReportIntervalAsDuration() {
+    return Duration.parse(distributedReportInterval);
+  }
+
+  public void setDistributedReportInterval(String distributedReportInterval) {
+    this.distributedReportInterval = distributedReportInterval;
+  }
+
+  public long getUserIdOffset() {
+    return userIdOffset;
+  }
+
+  public void setUserIdOffset(long userIdOffset) {
+    this.userIdOffset = userIdOffset;
+  }
+
+  public String getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  @JsonIgnore
+  public Duration getDrainTimeoutAsDuration() {
+    return Duration.parse(drainTimeout);
+  }
+
+  public void setDrainTimeout(String drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
   public String getMetrics() {
     return metrics;
   }
@@ -293,6 +838,84 @@ public class Config {
     this.bookingSleep = bookingSleep;
   }
 
+  public String getThinkTime() {
+    return thinkTime;
+  }
+
+  /**
+   * Return the mean think time, that defaults to booking sleep seconds.
+   */
+  @JsonIgnore
+  public Duration getThinkTimeAsDuration() {
+    return Optional.ofNullable(thinkTime)
+        .map(m -> Duration.parse(m))
+        .orElse(Duration.ofSeconds(bookingSleep));
+  }
+
+  public void setThinkTime(String thinkTime) {
+    this.thinkTime = thinkTime;
+  }
+
+  public String getThinkTimeDistribution() {
+    return thinkTimeDistribution;
+  }
+
+  @JsonIgnore
+  public ThinkTimeDistribution getThinkTimeDistributionAsEnum() {
+    return ThinkTimeDistribution.valueOf(thinkTimeDistribution.toUpperCase(Locale.US));
+  }
+
+  public void setThinkTimeDistribution(String thinkTimeDistribution) {
+    this.thinkTimeDistribution = thinkTimeDistribution;
+  }
+
+  public String getThinkTimePlacement() {
+    return thinkTimePlacement;
+  }
+
+  @JsonIgnore
+  public ThinkTimePlacement getThinkTimePlacementAsEnum() {
+    return ThinkTimePlacement.valueOf(thinkTimePlacement.toUpperCase(Locale.US));
+  }
+
+  public void setThinkTimePlacement(String thinkTimePlacement) {
+    this.thinkTimePlacement = thinkTimePlacement;
+  }
+
+  public String getBookingMode() {
+    return bookingMode;
+  }
+
+  @JsonIgnore
+  public BookingMode getBookingModeAsEnum() {
+    return BookingMode.valueOf(bookingMode.toUpperCase(Locale.US));
+  }
+
+  public void setBookingMode(String bookingMode) {
+    this.bookingMode = bookingMode;
+  }
+
+  public String getCapacityControl() {
+    return capacityControl;
+  }
+
+  @JsonIgnore
+  public CapacityControl getCapacityControlAsEnum() {
+    return CapacityControl.valueOf(capacityControl.toUpperCase(Locale.US));
+  }
+
+  public void setCapacityControl(String capacityControl) {
+    this.capacityControl = capacityControl;
+  }
+
+  public int getCapacityRetries() {
+    return capacityRetries;
+  }
+
+  public void setCapacityRetries(int capacityRetries) {
+    this.capacityRetries = capacityRetries;
+  }
+
   public int getDayRange() {
     return dayRange;
   }
@@ -301,6 +924,154 @@ public class Config {
     this.dayRange = dayRange;
   }
 
+  public int getScaleFactor() {
+    return scaleFactor;
+  }
+
+  public void setScaleFactor(int scaleFactor) {
+    this.scaleFactor = scaleFactor;
+  }
+
+  public long getHistoryBookings() {
+    return historyBookings;
+  }
+
+  public void setHistoryBookings(long historyBookings) {
+    this.historyBookings = historyBookings;
+  }
+
+  public int getLoadParallelism() {
+    return loadParallelism;
+  }
+
+  public void setLoadParallelism(int loadParallelism) {
+    this.loadParallelism = loadParallelism;
+  }
+
+  public String getScheduleDistribution() {
+    return scheduleDistribution;
+  }
+
+  @JsonIgnore
+  public KeyDistribution getScheduleDistributionAsEnum() {
+    return KeyDistribution.valueOf(scheduleDistribution.toUpperCase(Locale.US));
+  }
+
+  public void setScheduleDistribution(String scheduleDistribution) {
+    this.scheduleDistribution = scheduleDistribution;
+  }
+
+  public String getDayDistribution() {
+    return dayDistribution;
+  }
+
+  @JsonIgnore
+  public KeyDistribution getDayDistributionAsEnum() {
+    return KeyDistribution.valueOf(dayDistribution.toUpperCase(Locale.US));
+  }
+
+  public void setDayDistribution(String dayDistribution) {
+    this.dayDistribution = dayDistribution;
+  }
+
+  public double getZipfianTheta() {
+    return zipfianTheta;
+  }
+
+  public void setZipfianTheta(double zipfianTheta) {
+    this.zipfianTheta = zipfianTheta;
+  }
+
+  public double getHotspotFraction() {
+    return hotspotFraction;
+  }
+
+  public void setHotspotFraction(double hotspotFraction) {
+    this.hotspotFraction = hotspotFraction;
+  }
+
+  public double getHotspotAccessFraction() {
+    return hotspotAccessFraction;
+  }
+
+  public void setHotspotAccessFraction(double hotspotAccessFraction) {
+    this.hotspotAccessFraction = hotspotAccessFraction;
+  }
+
+  public int getFlightSearchPageSize() {
+    return flightSearchPageSize;
+  }
+
+  public void setFlightSearchPageSize(int flightSearchPageSize) {
+    this.flightSearchPageSize = flightSearchPageSize;
+  }
+
+  public int getFlightSearchPages() {
+    return flightSearchPages;
+  }
+
+  public void setFlightSearchPages(int flightSearchPages) {
+    this.flightSearchPages = flightSearchPages;
+  }
+
+  public int getReportingParallelism() {
+    return reportingParallelism;
+  }
+
+  public void setReportingParallelism(int reportingParallelism) {
+    this.reportingParallelism = reportingParallelism;
+  }
+
+  public int getReportingFetchSize() {
+    return reportingFetchSize;
+  }
+
+  public void setReportingFetchSize(int reportingFetchSize) {
+    this.reportingFetchSize = reportingFetchSize;
+  }
+
+  public String getReportingPause() {
+    return reportingPause;
+  }
+
+  @JsonIgnore
+  public Duration getReportingPauseAsDuration() {
+    return Duration.parse(reportingPause);
+  }
+
+  public void setReportingPause(String reportingPause) {
+    this.reportingPause = reportingPause;
+  }
+
+  public String getStorageStatsInterval() {
+    return storageStatsInterval;
+  }
+
+  @JsonIgnore
+  public Duration getStorageStatsIntervalAsDuration() {
+    return Duration.parse(storageStatsInterval);
+  }
+
+  public void setStorageStatsInterval(String storageStatsInterval) {
+    this.storageStatsInterval = storageStatsInterval;
+  }
+
+  public long getReferenceCacheSize() {
+    return referenceCacheSize;
+  }
+
+  public void setReferenceCacheSize(long referenceCacheSize) {
+    this.referenceCacheSize = referenceCacheSize;
+  }
+
+  public boolean isReferenceCachePreload() {
+    return referenceCachePreload;
+  }
+
+  public void setReferenceCachePreload(boolean referenceCachePreload) {
+    this.referenceCachePreload = referenceCachePreload;
+  }
+
   public int getMinConnections() {
     return minConnections;
   }
@@ -451,6 +1222,35 @@ public class Config {
     this.mongoWriteConcern = mongoWriteConcern;
   }
 
+  public String getMongoSchema() {
+    return mongoSchema;
+  }
+
+  @JsonIgnore
+  public MongoSchema getMongoSchemaAsEnum() {
+    return MongoSchema.valueOf(mongoSchema.toUpperCase(Locale.US));
+  }
+
+  public void setMongoSchema(String mongoSchema) {
+    this.mongoSchema = mongoSchema;
+  }
+
+  public int getMongoBucketSize() {
+    return mongoBucketSize;
+  }
+
+  public void setMongoBucketSize(int mongoBucketSize) {
+    this.mongoBucketSize = mongoBucketSize;
+  }
+
+  public boolean isMongoDenormalizedSchedule() {
+    return mongoDenormalizedSchedule;
+  }
+
+  public void setMongoDenormalizedSchedule(boolean mongoDenormalizedSchedule) {
+    this.mongoDenormalizedSchedule = mongoDenormalizedSchedule;
+  }
+
   public String getSqlIsolationLevel() {
     return sqlIsolationLevel;
   }
@@ -483,6 +1283,85 @@ public class Config {
     this.sqlIsolationLevel = sqlIsolationLevel;
   }
 
+  public int getSqlPrepareThreshold() {
+    return sqlPrepareThreshold;
+  }
+
+  public void setSqlPrepareThreshold(int sqlPrepareThreshold) {
+    this.sqlPrepareThreshold = sqlPrepareThreshold;
+  }
+
+  public int getSqlPreparedStatementCacheQueries() {
+    return sqlPreparedStatementCacheQueries;
+  }
+
+  public void setSqlPreparedStatementCacheQueries(int sqlPreparedStatementCacheQueries) {
+    this.sqlPreparedStatementCacheQueries = sqlPreparedStatementCacheQueries;
+  }
+
+  public int getSqlPreparedStatementCacheSizeMib() {
+    return sqlPreparedStatementCacheSizeMib;
+  }
+
+  public void setSqlPreparedStatementCacheSizeMib(int sqlPreparedStatementCacheSizeMib) {
+    this.sqlPreparedStatementCacheSizeMib = sqlPreparedStatementCacheSizeMib;
+  }
+
+  public String getSqlPartitioning() {
+    return sqlPartitioning;
+  }
+
+  @JsonIgnore
+  public PartitionInterval getSqlPartitioningAsEnum() {
+    return PartitionInterval.valueOf(sqlPartitioning.toUpperCase(Locale.US));
+  }
+
+  public void setSqlPartitioning(String sqlPartitioning) {
+    this.sqlPartitioning = sqlPartitioning;
+  }
+
+  public int getSqlPartitionsAhead() {
+    return sqlPartitionsAhead;
+  }
+
+  public void setSqlPartitionsAhead(int sqlPartitionsAhead) {
+    this.sqlPartitionsAhead = sqlPartitionsAhead;
+  }
+
+  public String getSqlPartitionCheckInterval() {
+    return sqlPartitionCheckInterval;
+  }
+
+  @JsonIgnore
+  public Duration getSqlPartitionCheckIntervalAsDuration() {
+    return Duration.parse(sqlPartitionCheckInterval);
+  }
+
+  public void setSqlPartitionCheckInterval(String sqlPartitionCheckInterval) {
+    this.sqlPartitionCheckInterval = sqlPartitionCheckInterval;
+  }
+
+  public String getSqlCopyFormat() {
+    return sqlCopyFormat;
+  }
+
+  @JsonIgnore
+  public CopyFormat getSqlCopyFormatAsEnum() {
+    return CopyFormat.valueOf(sqlCopyFormat.toUpperCase(Locale.US));
+  }
+
+  public void setSqlCopyFormat(String sqlCopyFormat) {
+    this.sqlCopyFormat = sqlCopyFormat;
+  }
+
+  public boolean isSqlUnloggedLoad() {
+    return sqlUnloggedLoad;
+  }
+
+  public void setSqlUnloggedLoad(boolean sqlUnloggedLoad) {
+    this.sqlUnloggedLoad = sqlUnloggedLoad;
+  }
+
   public boolean isSkipSetup() {
     return skipSetup;
   }
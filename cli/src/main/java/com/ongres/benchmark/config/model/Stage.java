@@ -0,0 +1,95 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.config.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Duration;
+
+public class Stage {
+
+  private String name;
+
+  private String duration;
+
+  private Integer parallelism;
+
+  private Double targetRate;
+
+  private boolean ramp = false;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getDuration() {
+    return duration;
+  }
+
+  @JsonIgnore
+  public Duration getDurationAsDuration() {
+    return Duration.parse(duration);
+  }
+
+  public void setDuration(String duration) {
+    this.duration = duration;
+  }
+
+  public Integer getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(Integer parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public Double getTargetRate() {
+    return targetRate;
+  }
+
+  public void setTargetRate(Double targetRate) {
+    this.targetRate = targetRate;
+  }
+
+  /**
+   * Return the load reached at the end of the stage: the target rate when set, the parallelism
+   * otherwise.
+   */
+  @JsonIgnore
+  public double getLoad() {
+    if (targetRate != null) {
+      return targetRate;
+    }
+    return parallelism;
+  }
+
+  public boolean isRamp() {
+    return ramp;
+  }
+
+  public void setRamp(boolean ramp) {
+    this.ramp = ramp;
+  }
+}
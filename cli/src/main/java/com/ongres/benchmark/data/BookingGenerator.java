@@ -0,0 +1,116 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.data;
+
+import com.google.common.base.Preconditions;
+
+import java.time.LocalDate;
+
+/**
+ * Generate the history of bookings made before the benchmark. Bookings are computed from their
+ * index, so that they can be generated in parallel. History users have negative ids so that
+ * they never collide with the users of the benchmark.
+ */
+public class BookingGenerator {
+
+  /**
+   * Days before today of the oldest booking of the history.
+   */
+  public static final int HISTORY_DAYS = 365;
+
+  private final ScheduleGenerator scheduleGenerator;
+  private final LocalDate firstDay;
+  private final int days;
+  private final long bookingCount;
+
+  private BookingGenerator(ScheduleGenerator scheduleGenerator, LocalDate firstDay, int days,
+      long bookingCount) {
+    this.scheduleGenerator = scheduleGenerator;
+    this.firstDay = firstDay;
+    this.days = days;
+    this.bookingCount = bookingCount;
+  }
+
+  /**
+   * Create an instance of {@class BookingGenerator} for {@code bookingCount} bookings of the
+   * schedules of {@code scheduleGenerator}, on days from a year before {@code today} to the end
+   * of the day range.
+   */
+  public static BookingGenerator create(ScheduleGenerator scheduleGenerator, LocalDate today,
+      int dayRange, long bookingCount) {
+    Preconditions.checkArgument(dayRange > 0);
+    Preconditions.checkArgument(bookingCount >= 0,
+        "History bookings must not be negative");
+    return new BookingGenerator(scheduleGenerator, today.minusDays(HISTORY_DAYS),
+        HISTORY_DAYS + dayRange, bookingCount);
+  }
+
+  public long getBookingCount() {
+    return bookingCount;
+  }
+
+  /**
+   * Return the booking with index {@code index}.
+   */
+  public Booking get(long index) {
+    Preconditions.checkArgument(index >= 0 && index < bookingCount,
+        "Booking index out of range");
+    final long hash = mix(index);
+    final Schedule schedule = scheduleGenerator.get(
+        (int) Long.remainderUnsigned(hash, scheduleGenerator.getScheduleCount()));
+    final LocalDate day = firstDay.plusDays(Long.remainderUnsigned(hash >>> 32, days));
+    return new Booking(-(index + 1), schedule, day);
+  }
+
+  /**
+   * SplitMix64 finalizer, spreads consecutive indexes over the whole range of longs.
+   */
+  private static long mix(long value) {
+    long z = value + 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  public static class Booking {
+    private final long userId;
+    private final Schedule schedule;
+    private final LocalDate day;
+
+    private Booking(long userId, Schedule schedule, LocalDate day) {
+      this.userId = userId;
+      this.schedule = schedule;
+      this.day = day;
+    }
+
+    public long getUserId() {
+      return userId;
+    }
+
+    public Schedule getSchedule() {
+      return schedule;
+    }
+
+    public LocalDate getDay() {
+      return day;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Load rows generated on the fly in parallel, splitting them in chunks that are loaded by a
+ * pool of threads. Rows are never staged, each chunk generates and streams its rows straight
+ * into the target. The rows and bytes loaded and the time spent are added up across loads, so
+ * the throughput of the whole setup can be reported.
+ */
+public class ParallelLoader {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final int parallelism;
+  private final int chunkSize;
+  private long totalRows;
+  private long totalBytes;
+  private long totalNanos;
+
+  private ParallelLoader(int parallelism, int chunkSize) {
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Create an instance of {@class ParallelLoader} that loads chunks of {@code chunkSize} rows
+   * with {@code parallelism} threads.
+   */
+  public static ParallelLoader create(int parallelism, int chunkSize) {
+    Preconditions.checkArgument(parallelism > 0, "Load parallelism must be greater than 0");
+    Preconditions.checkArgument(chunkSize > 0);
+    return new ParallelLoader(parallelism, chunkSize);
+  }
+
+  /**
+   * Load {@code rows} rows of {@code name} with {@code chunkLoader}, returning when all of them
+   * are loaded. If any chunk fails the chunks not yet loaded are cancelled and the failure is
+   * thrown.
+   */
+  public void load(String name, long rows, ChunkLoader chunkLoader) throws Exception {
+    if (rows <= 0) {
+      return;
+    }
+    final long chunks = (rows + chunkSize - 1) / chunkSize;
+    final AtomicLong loadedChunks = new AtomicLong();
+    final LongAdder loadedBytes = new LongAdder();
+    final long startTime = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        (int) Math.min(parallelism, chunks),
+        new ThreadFactoryBuilder().setNameFormat("loader-%d").setDaemon(true).build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (long chunk = 0; chunk < chunks; chunk++) {
+        final long from = chunk * chunkSize;
+        final long to = Math.min(rows, from + chunkSize);
+        futures.add(executor.submit(() -> {
+          loadedBytes.add(chunkLoader.load(from, to));
+          final long loaded = loadedChunks.incrementAndGet();
+          if (loaded * 10 / chunks > (loaded - 1) * 10 / chunks) {
+            logger.info("Loaded " + Math.min(rows, loaded * chunkSize) + " of " + rows
+                + " " + name);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          futures.forEach(otherFuture -> otherFuture.cancel(true));
+          if (ex.getCause() instanceof Exception) {
+            throw (Exception) ex.getCause();
+          }
+          throw ex;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    final long elapsedNanos = System.nanoTime() - startTime;
+    totalRows += rows;
+    totalBytes += loadedBytes.sum();
+    totalNanos += elapsedNanos;
+    logger.info("Loaded " + rows + " " + name + " in " + elapsedNanos / 1_000_000 + "ms ("
+        + throughput(rows, loadedBytes.sum(), elapsedNanos) + ")");
+  }
+
+  /**
+   * Log the rows and bytes loaded by all the loads of this loader and their throughput.
+   */
+  public void logTotal() {
+    logger.info("Loaded " + totalRows + " rows in " + totalNanos / 1_000_000 + "ms ("
+        + throughput(totalRows, totalBytes, totalNanos) + ")");
+  }
+
+  private String throughput(long rows, long bytes, long elapsedNanos) {
+    final double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000d;
+    if (bytes <= 0) {
+      return String.format(Locale.US, "%.0f rows/s", rows / seconds);
+    }
+    return String.format(Locale.US, "%.0f rows/s, %.2f MiB/s",
+        rows / seconds, bytes / seconds / (1024 * 1024));
+  }
+
+  @FunctionalInterface
+  public interface ChunkLoader {
+
+    /**
+     * Generate and load the rows from index {@code from} (inclusive) to {@code to}
+     * (exclusive), returning the number of bytes sent to the target or 0 if not known.
+     */
+    long load(long from, long to) throws Exception;
+  }
+}
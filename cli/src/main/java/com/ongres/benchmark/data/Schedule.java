@@ -0,0 +1,242 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.data;
+
+import com.google.common.base.Preconditions;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * A flight of the schedule.
+ */
+public class Schedule {
+
+  /**
+   * Mask of the {@code days} of a schedule that operates every day.
+   */
+  public static final int EVERY_DAY = 0x7f;
+
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final int scheduleId;
+  private final String fromAirport;
+  private final String toAirport;
+  private final String validFrom;
+  private final String validUntil;
+  private final String days;
+  private final String departure;
+  private final String arrival;
+  private final String flight;
+  private final String aircraft;
+  private final String duration;
+
+  Schedule(int scheduleId, String fromAirport, String toAirport, String validFrom,
+      String validUntil, String days, String departure, String arrival, String flight,
+      String aircraft, String duration) {
+    this.scheduleId = scheduleId;
+    this.fromAirport = fromAirport;
+    this.toAirport = toAirport;
+    this.validFrom = validFrom;
+    this.validUntil = validUntil;
+    this.days = days;
+    this.departure = departure;
+    this.arrival = arrival;
+    this.flight = flight;
+    this.aircraft = aircraft;
+    this.duration = duration;
+  }
+
+  public int getScheduleId() {
+    return scheduleId;
+  }
+
+  public String getFromAirport() {
+    return fromAirport;
+  }
+
+  public String getToAirport() {
+    return toAirport;
+  }
+
+  public String getValidFrom() {
+    return validFrom;
+  }
+
+  public String getValidUntil() {
+    return validUntil;
+  }
+
+  public String getDays() {
+    return days;
+  }
+
+  public int getDaysMask() {
+    return daysMask(days);
+  }
+
+  public String getDeparture() {
+    return departure;
+  }
+
+  public String getArrival() {
+    return arrival;
+  }
+
+  public String getFlight() {
+    return flight;
+  }
+
+  public String getAircraft() {
+    return aircraft;
+  }
+
+  public String getDuration() {
+    return duration;
+  }
+
+  public int getPaymentAmount() {
+    return paymentAmount(duration);
+  }
+
+  /**
+   * Return a new schedule with id {@code scheduleId} synthesized from this one for the copy
+   * {@code copy} of the schedule: it flies between airports of another region, with another
+   * flight number, other days of the week, a shifted time of day and validity window.
+   */
+  Schedule synthesize(int scheduleId, int copy) {
+    Preconditions.checkArgument(copy > 0);
+    final String region = Integer.toString(copy, Character.MAX_RADIX)
+        .toUpperCase(Locale.US);
+    final int timeShift = (copy * 5) % MINUTES_PER_DAY;
+    final int departureDays = departure == null ? 0
+        : (minutes(departure) + timeShift) / MINUTES_PER_DAY;
+    return new Schedule(scheduleId,
+        fromAirport + region,
+        toAirport + region,
+        shiftDate(validFrom, (copy * 7) % 364),
+        shiftDate(validUntil, (copy * 7) % 364),
+        shiftDays(days, copy % 7),
+        shiftTime(departure, timeShift, departureDays),
+        shiftTime(arrival, timeShift, departureDays),
+        renumberFlight(flight, copy),
+        aircraft,
+        duration);
+  }
+
+  /**
+   * Return a copy of this schedule with its validity window shifted {@code days} days.
+   */
+  Schedule shiftValidity(long days) {
+    return new Schedule(scheduleId, fromAirport, toAirport,
+        shiftDate(validFrom, days), shiftDate(validUntil, days),
+        this.days, departure, arrival, flight, aircraft, duration);
+  }
+
+  private static String shiftDate(String date, long days) {
+    if (date == null) {
+      return null;
+    }
+    return LocalDate.parse(date).plusDays(days).toString();
+  }
+
+  private static String shiftDays(String days, int shift) {
+    if (days == null || shift == 0) {
+      return days;
+    }
+    final int mask = daysMask(days);
+    final int shiftedMask = ((mask << shift) | (mask >>> (7 - shift))) & EVERY_DAY;
+    StringBuilder shiftedDays = new StringBuilder(7);
+    for (int day = 0; day < 7; day++) {
+      if ((shiftedMask & (1 << day)) != 0) {
+        shiftedDays.append((char) ('1' + day));
+      }
+    }
+    return shiftedDays.toString();
+  }
+
+  /**
+   * Return the minutes since the departure day of a time formatted as {@code HH:mm}, followed
+   * by {@code +<days>} when it is on a later day than the departure.
+   */
+  private static int minutes(String time) {
+    final int daysStart = time.indexOf('+');
+    final LocalTime timeOfDay = LocalTime.parse(
+        daysStart < 0 ? time : time.substring(0, daysStart));
+    final int days = daysStart < 0 ? 0 : Integer.parseInt(time.substring(daysStart + 1));
+    return days * MINUTES_PER_DAY + timeOfDay.getHour() * 60 + timeOfDay.getMinute();
+  }
+
+  private static String shiftTime(String time, int minutes, int departureDays) {
+    if (time == null || minutes == 0) {
+      return time;
+    }
+    final int shiftedMinutes = minutes(time) + minutes - departureDays * MINUTES_PER_DAY;
+    final String timeOfDay = LocalTime.ofSecondOfDay(
+        Math.floorMod(shiftedMinutes, MINUTES_PER_DAY) * 60L).toString();
+    final int days = Math.floorDiv(shiftedMinutes, MINUTES_PER_DAY);
+    return days > 0 ? timeOfDay + "+" + days : timeOfDay;
+  }
+
+  private static String renumberFlight(String flight, int copy) {
+    if (flight == null) {
+      return null;
+    }
+    int numberStart = flight.length();
+    while (numberStart > 0 && Character.isDigit(flight.charAt(numberStart - 1))) {
+      numberStart--;
+    }
+    if (numberStart == flight.length()) {
+      return flight + copy;
+    }
+    return flight.substring(0, numberStart)
+        + (Long.parseLong(flight.substring(numberStart)) + 10000L * copy);
+  }
+
+  /**
+   * Return the mask of {@code days}, a list of week day digits where 1 is Monday. A schedule
+   * without {@code days} operates every day.
+   */
+  public static int daysMask(String days) {
+    if (days == null || days.isEmpty()) {
+      return EVERY_DAY;
+    }
+    int mask = 0;
+    for (char day : days.toCharArray()) {
+      Preconditions.checkArgument(day >= '1' && day <= '7', "Invalid days " + days);
+      mask |= 1 << (day - '1');
+    }
+    return mask;
+  }
+
+  /**
+   * Return the amount paid for a flight of {@code duration} (formatted as {@code HH:mm}).
+   */
+  public static int paymentAmount(String duration) {
+    return Optional.ofNullable(duration)
+        .map(d -> d.split(":"))
+        .map(s -> Integer.parseInt(s[0]) * 60 + Integer.parseInt(s[1]))
+        .map(d -> Math.max(42, d * 42))
+        .orElse(42);
+  }
+}
@@ -0,0 +1,128 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Generate the schedule for a scale factor. The first copy is the seed schedule of
+ * {@code schedule.txt}, each other copy synthesizes a new schedule from the seed schedule.
+ * Schedules are computed from their id, so that they can be generated in parallel and
+ * looked up without keeping them in memory.
+ */
+public class ScheduleGenerator {
+
+  private static final ImmutableList<Schedule> SEEDS = readSeeds();
+  private static final LocalDate SEEDS_FIRST_DAY = firstDay(SEEDS);
+
+  private final int scaleFactor;
+  private final int scheduleCount;
+  private final long validityShift;
+
+  private ScheduleGenerator(int scaleFactor, long validityShift) {
+    this.scaleFactor = scaleFactor;
+    this.scheduleCount = SEEDS.size() * scaleFactor;
+    this.validityShift = validityShift;
+  }
+
+  /**
+   * Create an instance of {@class ScheduleGenerator} for {@code scaleFactor}. The validity
+   * windows of the seeds (from January 2009) are shifted so that the first one starts on
+   * {@code firstDay}, the day the schedules are loaded, and searches of the following days
+   * fall inside them.
+   */
+  public static ScheduleGenerator create(int scaleFactor, LocalDate firstDay) {
+    Preconditions.checkArgument(scaleFactor > 0, "Scale factor must be greater than 0");
+    Preconditions.checkArgument((long) SEEDS.size() * scaleFactor <= Integer.MAX_VALUE,
+        "Scale factor must not be greater than " + Integer.MAX_VALUE / SEEDS.size());
+    return new ScheduleGenerator(scaleFactor,
+        ChronoUnit.DAYS.between(SEEDS_FIRST_DAY, firstDay));
+  }
+
+  private static ImmutableList<Schedule> readSeeds() {
+    ImmutableList.Builder<Schedule> seeds = ImmutableList.builder();
+    try (CSVParser parser = CSVParser.parse(
+        ScheduleGenerator.class.getResourceAsStream("/schedule.txt"),
+        StandardCharsets.UTF_8, CSVFormat.newFormat(';')
+        .withNullString("\\N")
+        .withHeader("from_airport", "to_airport", "valid_from", "valid_until", "days",
+            "departure", "arrival", "flight", "aircraft", "duration"))) {
+      int scheduleId = 0;
+      for (CSVRecord record : parser) {
+        seeds.add(new Schedule(scheduleId++,
+            record.get("from_airport"),
+            record.get("to_airport"),
+            record.get("valid_from"),
+            record.get("valid_until"),
+            record.get("days"),
+            record.get("departure"),
+            record.get("arrival"),
+            record.get("flight"),
+            record.get("aircraft"),
+            record.get("duration")));
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return seeds.build();
+  }
+
+  private static LocalDate firstDay(ImmutableList<Schedule> seeds) {
+    return seeds.stream()
+        .flatMap(seed -> Stream.of(seed.getValidFrom(), seed.getValidUntil()))
+        .filter(Objects::nonNull)
+        .map(LocalDate::parse)
+        .min(LocalDate::compareTo)
+        .orElse(LocalDate.now());
+  }
+
+  public int getScaleFactor() {
+    return scaleFactor;
+  }
+
+  public int getScheduleCount() {
+    return scheduleCount;
+  }
+
+  /**
+   * Return the schedule with id {@code scheduleId}.
+   */
+  public Schedule get(int scheduleId) {
+    Preconditions.checkElementIndex(scheduleId, scheduleCount);
+    final Schedule seed = SEEDS.get(scheduleId % SEEDS.size());
+    final int copy = scheduleId / SEEDS.size();
+    final Schedule schedule = copy == 0 ? seed : seed.synthesize(scheduleId, copy);
+    return validityShift == 0 ? schedule : schedule.shiftValidity(validityShift);
+  }
+}
@@ -0,0 +1,228 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Coordinator side of the distributed mode: assigns disjoint user id ranges to the workers,
+ * starts them together once all are ready and merges their interval metrics into cluster-wide
+ * metrics.
+ */
+public class Coordinator {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Config config;
+  private final Histogram responseTime = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram serviceTime = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram intervalResponseTime = new Histogram(SIGNIFICANT_DIGITS);
+  private long iterations = 0;
+  private long retries = 0;
+  private long intervalIterations = 0;
+
+  public Coordinator(Config config) {
+    Preconditions.checkArgument(config.getWorkers() > 0, "Workers must be greater than 0");
+    this.config = config;
+  }
+
+  /**
+   * Wait for all the workers, run the benchmark on them and report the merged metrics.
+   */
+  public void run() throws Exception {
+    final int workers = config.getWorkers();
+    final List<Connection> connections = new ArrayList<>();
+    try (ServerSocket serverSocket = new ServerSocket()) {
+      serverSocket.bind(new InetSocketAddress(config.getCoordinatorPort()));
+      logger.info("Coordinator listening on port " + config.getCoordinatorPort()
+          + ", waiting for " + workers + " workers");
+      final long userIdRange = (Long.MAX_VALUE - config.getUserIdOffset()) / workers;
+      while (connections.size() < workers) {
+        Connection connection = new Connection(serverSocket.accept());
+        Protocol.expect(connection.in, Protocol.HELLO);
+        final int index = connections.size();
+        connection.out.writeByte(Protocol.ASSIGN);
+        connection.out.writeInt(index);
+        connection.out.writeInt(workers);
+        connection.out.writeLong(config.getUserIdOffset() + index * userIdRange);
+        connection.out.flush();
+        connections.add(connection);
+        logger.info("Worker " + index + " connected from "
+            + connection.socket.getRemoteSocketAddress());
+      }
+      for (int index = 0; index < workers; index++) {
+        Protocol.expect(connections.get(index).in, Protocol.READY);
+        logger.info("Worker " + index + " ready");
+      }
+      for (Connection connection : connections) {
+        connection.out.writeByte(Protocol.START);
+        connection.out.flush();
+      }
+      logger.info("Benchmark started on " + workers + " workers");
+      final long start = System.nanoTime();
+      collect(connections);
+      final long elapsed = System.nanoTime() - start;
+      logger.info("Benchmark completed");
+      report(elapsed);
+    } finally {
+      for (Connection connection : connections) {
+        connection.socket.close();
+      }
+    }
+  }
+
+  private void collect(List<Connection> connections) throws Exception {
+    final ExecutorService readers = Executors.newFixedThreadPool(connections.size(),
+        new ThreadFactoryBuilder()
+        .setNameFormat("benchmark-coordinator-%d")
+        .setDaemon(true)
+        .build());
+    final ScheduledExecutorService intervalReporter = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+        .setNameFormat("benchmark-coordinator-report")
+        .setDaemon(true)
+        .build());
+    try {
+      final long reportInterval = config.getDistributedReportIntervalAsDuration().toNanos();
+      intervalReporter.scheduleAtFixedRate(() -> reportInterval(reportInterval),
+          reportInterval, reportInterval, TimeUnit.NANOSECONDS);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int index = 0; index < connections.size(); index++) {
+        final int workerIndex = index;
+        final Connection connection = connections.get(index);
+        futures.add(readers.submit(() -> {
+          read(workerIndex, connection);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      intervalReporter.shutdownNow();
+      readers.shutdownNow();
+    }
+  }
+
+  private void read(int index, Connection connection) throws IOException {
+    while (true) {
+      byte type = connection.in.readByte();
+      if (type == Protocol.DONE) {
+        logger.info("Worker " + index + " completed");
+        return;
+      }
+      if (type != Protocol.INTERVAL) {
+        throw new IOException("Unexpected message " + (char) type + " from worker " + index);
+      }
+      merge(Interval.read(connection.in));
+    }
+  }
+
+  private synchronized void merge(Interval interval) {
+    iterations += interval.getIterations();
+    retries += interval.getRetries();
+    intervalIterations += interval.getIterations();
+    responseTime.add(interval.getResponseTime());
+    serviceTime.add(interval.getServiceTime());
+    intervalResponseTime.add(interval.getResponseTime());
+  }
+
+  private synchronized void reportInterval(long reportInterval) {
+    logger.info(String.format(Locale.US,
+        "Interval: %.2f iterations/s, response time p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+        intervalIterations * (double) TimeUnit.SECONDS.toNanos(1) / reportInterval,
+        intervalResponseTime.getValueAtPercentile(50) / NANOS_PER_MILLI,
+        intervalResponseTime.getValueAtPercentile(99) / NANOS_PER_MILLI,
+        intervalResponseTime.getMaxValue() / NANOS_PER_MILLI));
+    intervalIterations = 0;
+    intervalResponseTime.reset();
+  }
+
+  private synchronized void report(long elapsed) throws IOException {
+    logger.info(String.format(Locale.US, "Iterations: %d (%.2f iterations/s), retries: %d",
+        iterations, iterations * (double) TimeUnit.SECONDS.toNanos(1) / elapsed, retries));
+    logger.info(summary("Response time", responseTime));
+    logger.info(summary("Service time", serviceTime));
+    writePercentiles(responseTime, Paths.get(".", "response-time.hgrm"));
+    writePercentiles(serviceTime, Paths.get(".", "service-time.hgrm"));
+  }
+
+  private String summary(String name, Histogram histogram) {
+    return String.format(Locale.US,
+        "%s: mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+        name,
+        histogram.getMean() / NANOS_PER_MILLI,
+        histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+        histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+        histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+        histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+        histogram.getMaxValue() / NANOS_PER_MILLI);
+  }
+
+  private void writePercentiles(Histogram histogram, Path path) throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(path), false, "UTF-8")) {
+      histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+    }
+  }
+
+  private static class Connection {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private Connection(Socket socket) throws IOException {
+      socket.setTcpNoDelay(true);
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+  }
+}
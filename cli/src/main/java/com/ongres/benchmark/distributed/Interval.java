@@ -0,0 +1,109 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Metrics of a worker in an interval: iteration and retry counts plus the HDR histograms of
+ * response time and service time in nanoseconds.
+ */
+public class Interval {
+
+  private final long startTimestamp;
+  private final long endTimestamp;
+  private final long iterations;
+  private final long retries;
+  private final Histogram responseTime;
+  private final Histogram serviceTime;
+
+  Interval(long startTimestamp, long endTimestamp, long iterations, long retries,
+      Histogram responseTime, Histogram serviceTime) {
+    this.startTimestamp = startTimestamp;
+    this.endTimestamp = endTimestamp;
+    this.iterations = iterations;
+    this.retries = retries;
+    this.responseTime = responseTime;
+    this.serviceTime = serviceTime;
+  }
+
+  public long getStartTimestamp() {
+    return startTimestamp;
+  }
+
+  public long getEndTimestamp() {
+    return endTimestamp;
+  }
+
+  public long getIterations() {
+    return iterations;
+  }
+
+  public long getRetries() {
+    return retries;
+  }
+
+  public Histogram getResponseTime() {
+    return responseTime;
+  }
+
+  public Histogram getServiceTime() {
+    return serviceTime;
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeLong(startTimestamp);
+    out.writeLong(endTimestamp);
+    out.writeLong(iterations);
+    out.writeLong(retries);
+    writeHistogram(out, responseTime);
+    writeHistogram(out, serviceTime);
+  }
+
+  static Interval read(DataInputStream in) throws IOException {
+    return new Interval(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+        readHistogram(in), readHistogram(in));
+  }
+
+  private static void writeHistogram(DataOutputStream out, Histogram histogram)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+    int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+    out.writeInt(length);
+    out.write(buffer.array(), 0, length);
+  }
+
+  private static Histogram readHistogram(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    try {
+      return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+    } catch (DataFormatException ex) {
+      throw new IOException(ex);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Record iterations without contention and return the metrics of each interval, so that they
+ * can be merged exactly with the intervals of other workers.
+ */
+public class IntervalRecorder {
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Recorder responseTimeRecorder = new Recorder(SIGNIFICANT_DIGITS);
+  private final Recorder serviceTimeRecorder = new Recorder(SIGNIFICANT_DIGITS);
+  private final LongAdder iterations = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private long intervalStart = System.currentTimeMillis();
+
+  /**
+   * Record the response time and service time, in nanoseconds, of an iteration.
+   */
+  public void recordTimes(long responseTime, long serviceTime) {
+    responseTimeRecorder.recordValue(Math.max(0, responseTime));
+    serviceTimeRecorder.recordValue(Math.max(0, serviceTime));
+  }
+
+  public void recordIteration() {
+    iterations.increment();
+  }
+
+  public void recordRetry() {
+    retries.increment();
+  }
+
+  /**
+   * Return the metrics recorded since the previous call and start a new interval.
+   */
+  public synchronized Interval nextInterval() {
+    final long intervalEnd = System.currentTimeMillis();
+    final Histogram responseTime = responseTimeRecorder.getIntervalHistogram();
+    final Histogram serviceTime = serviceTimeRecorder.getIntervalHistogram();
+    final Interval interval = new Interval(intervalStart, intervalEnd,
+        iterations.sumThenReset(), retries.sumThenReset(), responseTime, serviceTime);
+    intervalStart = intervalEnd;
+    return interval;
+  }
+}
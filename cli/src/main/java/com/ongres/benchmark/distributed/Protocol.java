@@ -0,0 +1,55 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Messages exchanged between coordinator and workers over TCP. Each message starts with its
+ * type byte followed by its fields encoded with {@code DataOutputStream}.
+ */
+class Protocol {
+
+  /** Worker to coordinator: worker connected. */
+  static final byte HELLO = 'H';
+  /** Coordinator to worker: index, number of workers and first user id. */
+  static final byte ASSIGN = 'A';
+  /** Worker to coordinator: setup completed, waiting at the barrier. */
+  static final byte READY = 'R';
+  /** Coordinator to worker: all workers ready, start the benchmark. */
+  static final byte START = 'S';
+  /** Worker to coordinator: metrics of an interval. */
+  static final byte INTERVAL = 'I';
+  /** Worker to coordinator: benchmark completed, no more intervals. */
+  static final byte DONE = 'D';
+
+  private Protocol() {
+  }
+
+  static void expect(DataInputStream in, byte type) throws IOException {
+    byte received = in.readByte();
+    if (received != type) {
+      throw new IOException("Expected message " + (char) type + " but received "
+          + (char) received);
+    }
+  }
+}
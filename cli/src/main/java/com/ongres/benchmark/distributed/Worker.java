@@ -0,0 +1,195 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.benchmark.config.model.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Worker side of the distributed mode: receives its assignment from the coordinator, waits at
+ * the start barrier and streams interval metrics until the benchmark completes.
+ */
+public class Worker implements Closeable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final Duration CONNECT_TIMEOUT = Duration.ofMinutes(1);
+  private static final Duration CONNECT_RETRY = Duration.ofMillis(500);
+
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final Duration reportInterval;
+  private ScheduledExecutorService reporter = null;
+  private IntervalRecorder recorder = null;
+
+  private Worker(Socket socket, Duration reportInterval) throws IOException {
+    this.socket = socket;
+    this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    this.reportInterval = reportInterval;
+  }
+
+  /**
+   * Connect to the coordinator, retrying while it is not yet listening.
+   */
+  public static Worker connect(Config config) throws IOException, InterruptedException {
+    Preconditions.checkArgument(!config.getDistributedReportIntervalAsDuration().isZero()
+        && !config.getDistributedReportIntervalAsDuration().isNegative(),
+        "Distributed report interval must be greater than 0");
+    final long deadline = System.nanoTime() + CONNECT_TIMEOUT.toNanos();
+    while (true) {
+      Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(
+            config.getCoordinatorHost(), config.getCoordinatorPort()));
+        socket.setTcpNoDelay(true);
+        logger.info("Connected to coordinator " + config.getCoordinatorAddress());
+        return new Worker(socket, config.getDistributedReportIntervalAsDuration());
+      } catch (ConnectException ex) {
+        socket.close();
+        if (System.nanoTime() - deadline > 0) {
+          throw ex;
+        }
+        TimeUnit.NANOSECONDS.sleep(CONNECT_RETRY.toNanos());
+      }
+    }
+  }
+
+  /**
+   * Announce this worker and wait for its assignment.
+   */
+  public Assignment awaitAssignment() throws IOException {
+    out.writeByte(Protocol.HELLO);
+    out.flush();
+    Protocol.expect(in, Protocol.ASSIGN);
+    Assignment assignment = new Assignment(in.readInt(), in.readInt(), in.readLong());
+    logger.info("Assigned as worker " + assignment.getIndex() + " of "
+        + assignment.getWorkers() + ", first user id " + assignment.getUserIdOffset());
+    return assignment;
+  }
+
+  /**
+   * Notify the coordinator that this worker is ready and wait until all workers are.
+   */
+  public void awaitStart() throws IOException {
+    out.writeByte(Protocol.READY);
+    out.flush();
+    logger.info("Waiting for other workers");
+    Protocol.expect(in, Protocol.START);
+  }
+
+  /**
+   * Periodically send the intervals of {@code recorder} to the coordinator.
+   */
+  public synchronized void startReporting(IntervalRecorder recorder) {
+    Preconditions.checkState(this.reporter == null, "Reporting already started");
+    this.recorder = recorder;
+    this.reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("benchmark-worker")
+        .setDaemon(true)
+        .build());
+    reporter.scheduleAtFixedRate(this::sendInterval,
+        reportInterval.toNanos(), reportInterval.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private void sendInterval() {
+    try {
+      writeInterval();
+    } catch (IOException ex) {
+      logger.error("Can not send interval to coordinator", ex);
+      reporter.shutdown();
+    }
+  }
+
+  private synchronized void writeInterval() throws IOException {
+    out.writeByte(Protocol.INTERVAL);
+    recorder.nextInterval().write(out);
+    out.flush();
+  }
+
+  /**
+   * Send the last interval and notify the coordinator that the benchmark completed.
+   */
+  public void done() throws IOException, InterruptedException {
+    if (reporter != null) {
+      reporter.shutdown();
+      reporter.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    synchronized (this) {
+      if (recorder != null) {
+        writeInterval();
+      }
+      out.writeByte(Protocol.DONE);
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (reporter != null) {
+      reporter.shutdownNow();
+    }
+    socket.close();
+  }
+
+  public static class Assignment {
+    private final int index;
+    private final int workers;
+    private final long userIdOffset;
+
+    private Assignment(int index, int workers, long userIdOffset) {
+      this.index = index;
+      this.workers = workers;
+      this.userIdOffset = userIdOffset;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public int getWorkers() {
+      return workers;
+    }
+
+    public long getUserIdOffset() {
+      return userIdOffset;
+    }
+  }
+}
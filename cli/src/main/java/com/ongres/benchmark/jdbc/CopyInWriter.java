@@ -0,0 +1,262 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.jdbc;
+
+import com.ongres.benchmark.config.model.CopyFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.jdbc.PgConnection;
+
+/**
+ * Stream rows to a {@code COPY ... FROM STDIN} as they are generated, buffering them so that
+ * rows are sent in large messages. Rows are written as CSV ({@code DELIMITER ';' NULL '\N'}) or
+ * in the binary format, that the server does not have to parse but requires each value to have
+ * the exact type of its column: {@code String} for text, {@code Integer} for int, {@code Long}
+ * for bigint, {@code LocalDate} for date and {@code Timestamp} for timestamp without time zone.
+ */
+public class CopyInWriter implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] BINARY_SIGNATURE =
+      "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+  private static final LocalDate POSTGRES_EPOCH = LocalDate.of(2000, 1, 1);
+  private static final int MONEY_DIGITS = 2;
+  private static final long MONEY_SCALE = 100;
+
+  private final CopyIn copyIn;
+  private final CopyFormat format;
+  private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE * 2);
+  private final ByteArrayOutputStream binaryBuffer = new ByteArrayOutputStream(BUFFER_SIZE * 2);
+  private final DataOutputStream binary = new DataOutputStream(binaryBuffer);
+  private final ByteArrayOutputStream binaryRowBuffer = new ByteArrayOutputStream();
+  private final DataOutputStream binaryRow = new DataOutputStream(binaryRowBuffer);
+  private boolean rowStart = true;
+  private short rowColumns;
+  private long bytesWritten;
+
+  private CopyInWriter(CopyIn copyIn, CopyFormat format) {
+    this.copyIn = copyIn;
+    this.format = format;
+  }
+
+  /**
+   * Start the copy into {@code target}, a table followed by its column list, on
+   * {@code connection} with the format {@code format}.
+   */
+  public static CopyInWriter create(Connection connection, String target, CopyFormat format)
+      throws SQLException {
+    return create(connection.unwrap(PgConnection.class)
+        .getCopyAPI()
+        .copyIn("copy " + target + " from stdin" + (format == CopyFormat.BINARY
+            ? " with (format binary)" : " with csv delimiter ';' null '\\N'")),
+        format);
+  }
+
+  /**
+   * Write the rows to the started copy {@code copyIn} with the format {@code format}.
+   */
+  static CopyInWriter create(CopyIn copyIn, CopyFormat format) {
+    final CopyInWriter writer = new CopyInWriter(copyIn, format);
+    if (format == CopyFormat.BINARY) {
+      writer.binary(() -> {
+        writer.binary.write(BINARY_SIGNATURE);
+        writer.binary.writeInt(0);
+        writer.binary.writeInt(0);
+      });
+    }
+    return writer;
+  }
+
+  /**
+   * Append a column value to the current row, {@code null} values are written as {@code \N}.
+   */
+  public CopyInWriter value(Object value) {
+    if (format == CopyFormat.BINARY) {
+      binary(() -> binaryValue(value));
+      return this;
+    }
+    if (!rowStart) {
+      buffer.append(';');
+    }
+    rowStart = false;
+    if (value == null) {
+      buffer.append("\\N");
+      return this;
+    }
+    final String text = value.toString();
+    if (text.indexOf(';') >= 0 || text.indexOf('"') >= 0
+        || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+      buffer.append('"').append(text.replace("\"", "\"\"")).append('"');
+    } else {
+      buffer.append(text);
+    }
+    return this;
+  }
+
+  /**
+   * Append a money column value to the current row. In the binary format money is sent as
+   * cents, assuming the two fractional digits of the usual {@code lc_monetary}, that
+   * {@link #checkMoneyDigits(Connection)} checks.
+   */
+  public CopyInWriter money(long amount) {
+    return value(format == CopyFormat.BINARY ? Long.valueOf(amount * MONEY_SCALE)
+        : Long.valueOf(amount));
+  }
+
+  private void binaryValue(Object value) throws IOException {
+    rowColumns++;
+    if (value == null) {
+      binaryRow.writeInt(-1);
+    } else if (value instanceof String) {
+      final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+      binaryRow.writeInt(bytes.length);
+      binaryRow.write(bytes);
+    } else if (value instanceof Integer) {
+      binaryRow.writeInt(Integer.BYTES);
+      binaryRow.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      binaryRow.writeInt(Long.BYTES);
+      binaryRow.writeLong((Long) value);
+    } else if (value instanceof LocalDate) {
+      binaryRow.writeInt(Integer.BYTES);
+      binaryRow.writeInt((int) ChronoUnit.DAYS.between(POSTGRES_EPOCH, (LocalDate) value));
+    } else if (value instanceof Timestamp) {
+      binaryRow.writeInt(Long.BYTES);
+      binaryRow.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH.atStartOfDay(),
+          ((Timestamp) value).toLocalDateTime()));
+    } else if (value instanceof LocalDateTime) {
+      binaryRow.writeInt(Long.BYTES);
+      binaryRow.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH.atStartOfDay(),
+          (LocalDateTime) value));
+    } else {
+      throw new IllegalArgumentException("Value of type " + value.getClass().getName()
+          + " is not supported by binary copy");
+    }
+  }
+
+  /**
+   * End the current row.
+   */
+  public void endRow() throws SQLException {
+    if (format == CopyFormat.BINARY) {
+      binary(() -> {
+        binary.writeShort(rowColumns);
+        binaryRowBuffer.writeTo(binary);
+      });
+      binaryRowBuffer.reset();
+      rowColumns = 0;
+      if (binaryBuffer.size() >= BUFFER_SIZE) {
+        flush();
+      }
+      return;
+    }
+    buffer.append('\n');
+    rowStart = true;
+    if (buffer.length() >= BUFFER_SIZE) {
+      flush();
+    }
+  }
+
+  private void flush() throws SQLException {
+    final byte[] bytes;
+    if (format == CopyFormat.BINARY) {
+      bytes = binaryBuffer.toByteArray();
+      binaryBuffer.reset();
+    } else {
+      bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+      buffer.setLength(0);
+    }
+    copyIn.writeToCopy(bytes, 0, bytes.length);
+    bytesWritten += bytes.length;
+  }
+
+  /**
+   * Return the number of bytes sent to the copy so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Check that money has the {@link #MONEY_DIGITS} fractional digits that the binary format of
+   * {@link #money(long)} assumes with the {@code lc_monetary} of {@code connection}.
+   */
+  public static void checkMoneyDigits(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(
+            "select scale(1::money::numeric), current_setting('lc_monetary')")) {
+      resultSet.next();
+      if (resultSet.getInt(1) != MONEY_DIGITS) {
+        throw new IllegalStateException("Binary copy sends money with " + MONEY_DIGITS
+            + " fractional digits but lc_monetary " + resultSet.getString(2) + " has "
+            + resultSet.getInt(1) + ", use the csv copy format");
+      }
+    }
+  }
+
+  /**
+   * Send the buffered rows and end the copy, returning the number of rows copied.
+   */
+  public long finish() throws SQLException {
+    if (format == CopyFormat.BINARY) {
+      binary(() -> binary.writeShort(-1));
+    }
+    flush();
+    return copyIn.endCopy();
+  }
+
+  /**
+   * Cancel the copy if it was not finished.
+   */
+  @Override
+  public void close() throws SQLException {
+    if (copyIn.isActive()) {
+      copyIn.cancelCopy();
+    }
+  }
+
+  private void binary(BinaryWrite write) {
+    try {
+      write.write();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  @FunctionalInterface
+  private interface BinaryWrite {
+    void write() throws IOException;
+  }
+}
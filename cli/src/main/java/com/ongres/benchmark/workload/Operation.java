@@ -0,0 +1,65 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.workload;
+
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * An operation of a workload, run as an iteration of the benchmark.
+ */
+@FunctionalInterface
+public interface Operation {
+
+  /**
+   * Run the operation blocking the calling thread.
+   */
+  void run() throws Exception;
+
+  /**
+   * Return a {@code Mono} that run the operation when subscribed. By default the operation is
+   * run blocking the subscribing thread.
+   */
+  default Mono<Void> runReactive() {
+    return Mono.fromCallable(() -> {
+      run();
+      return Boolean.TRUE;
+    }).then();
+  }
+
+  /**
+   * Create a non-blocking operation from a supplier of the {@code Mono} that run it.
+   */
+  static Operation reactive(Supplier<Mono<Void>> operation) {
+    return new Operation() {
+      @Override
+      public void run() {
+        operation.get().block();
+      }
+
+      @Override
+      public Mono<Void> runReactive() {
+        return Mono.defer(operation);
+      }
+    };
+  }
+}
@@ -0,0 +1,160 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.workload;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.ongres.benchmark.Benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted mix of operations. Each iteration runs one operation chosen at random with
+ * probability proportional to its weight.
+ */
+public class Workload {
+
+  private final ImmutableList<WeightedOperation> operations;
+  private final double[] cumulativeWeights;
+  private final double totalWeight;
+
+  private Workload(ImmutableList<WeightedOperation> operations) {
+    this.operations = operations;
+    this.cumulativeWeights = new double[operations.size()];
+    double totalWeight = 0;
+    for (int index = 0; index < operations.size(); index++) {
+      totalWeight += operations.get(index).getWeight();
+      cumulativeWeights[index] = totalWeight;
+    }
+    this.totalWeight = totalWeight;
+  }
+
+  /**
+   * Create the workload for {@code benchmark} of target {@code target} with the operations
+   * registered by the {@code WorkloadProvider}s of the target and weights from {@code mix}.
+   */
+  public static Workload create(String target, Benchmark benchmark, Map<String, Double> mix) {
+    Preconditions.checkArgument(!mix.isEmpty(), "Workload must have at least one operation");
+    Map<String, Operation> available = new HashMap<>();
+    Map<String, String> unsupported = new HashMap<>();
+    for (WorkloadProvider provider : ServiceLoader.load(WorkloadProvider.class)) {
+      if (provider.getTarget().equals(target)) {
+        available.putAll(provider.getOperations(benchmark));
+        unsupported.putAll(provider.getUnsupportedOperations(benchmark));
+      }
+    }
+    for (String operation : mix.keySet()) {
+      Preconditions.checkArgument(!unsupported.containsKey(operation),
+          "Operation " + operation + " is not supported by target " + target
+          + ": " + unsupported.get(operation));
+    }
+    return create(target, available, mix);
+  }
+
+  /**
+   * Create the workload of the reports for {@code benchmark} of target {@code target}
+   * registered by the {@code WorkloadProvider}s of the target, all with the same weight.
+   */
+  public static Workload createReports(String target, Benchmark benchmark) {
+    Map<String, Operation> available = new HashMap<>();
+    for (WorkloadProvider provider : ServiceLoader.load(WorkloadProvider.class)) {
+      if (provider.getTarget().equals(target)) {
+        available.putAll(provider.getReports(benchmark));
+      }
+    }
+    Preconditions.checkArgument(!available.isEmpty(),
+        "No reports are available for target " + target);
+    Map<String, Double> mix = new HashMap<>();
+    available.keySet().forEach(report -> mix.put(report, 1d));
+    return create(target, available, mix);
+  }
+
+  /**
+   * Create the workload of target {@code target} with the {@code available} operations and
+   * weights from {@code mix}.
+   */
+  static Workload create(String target, Map<String, Operation> available,
+      Map<String, Double> mix) {
+    ImmutableList.Builder<WeightedOperation> operations = ImmutableList.builder();
+    for (Map.Entry<String, Double> entry : mix.entrySet()) {
+      Preconditions.checkArgument(available.containsKey(entry.getKey()),
+          "Operation " + entry.getKey() + " is not available for target " + target
+          + ". Must be one of " + available.keySet());
+      Preconditions.checkArgument(entry.getValue() != null && entry.getValue() >= 0,
+          "Weight of operation " + entry.getKey() + " must not be negative");
+      if (entry.getValue() > 0) {
+        operations.add(new WeightedOperation(entry.getKey(), entry.getValue(),
+            available.get(entry.getKey())));
+      }
+    }
+    Workload workload = new Workload(operations.build());
+    Preconditions.checkArgument(workload.totalWeight > 0,
+        "Workload must have at least one operation with weight greater than 0");
+    return workload;
+  }
+
+  public ImmutableList<WeightedOperation> getOperations() {
+    return operations;
+  }
+
+  /**
+   * Return the operation for the next iteration.
+   */
+  public WeightedOperation next() {
+    if (operations.size() == 1) {
+      return operations.get(0);
+    }
+    final double value = ThreadLocalRandom.current().nextDouble(totalWeight);
+    for (int index = 0; index < cumulativeWeights.length - 1; index++) {
+      if (value < cumulativeWeights[index]) {
+        return operations.get(index);
+      }
+    }
+    return operations.get(cumulativeWeights.length - 1);
+  }
+
+  public static class WeightedOperation {
+    private final String name;
+    private final double weight;
+    private final Operation operation;
+
+    private WeightedOperation(String name, double weight, Operation operation) {
+      this.name = name;
+      this.weight = weight;
+      this.operation = operation;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public double getWeight() {
+      return weight;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+  }
+}
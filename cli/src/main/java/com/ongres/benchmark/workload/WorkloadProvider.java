@@ -0,0 +1,59 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.workload;
+
+import com.google.common.collect.ImmutableMap;
+import com.ongres.benchmark.Benchmark;
+
+/**
+ * Service that provides the operations of a benchmark target, found with
+ * {@code ServiceLoader}. Register implementations in
+ * {@code META-INF/services/com.ongres.benchmark.workload.WorkloadProvider}.
+ */
+public interface WorkloadProvider {
+
+  /**
+   * Return the benchmark target type the operations run on (for example {@code postgres}).
+   */
+  String getTarget();
+
+  /**
+   * Return the operations by name for the benchmark created for the target.
+   */
+  ImmutableMap<String, Operation> getOperations(Benchmark benchmark);
+
+  /**
+   * Return the analytical reports by name for the benchmark created for the target. Reports run
+   * on their own streams alongside the operations. By default the target has no reports.
+   */
+  default ImmutableMap<String, Operation> getReports(Benchmark benchmark) {
+    return ImmutableMap.of();
+  }
+
+  /**
+   * Return by name the reason why operations of the target are not available for the benchmark
+   * created for the target, so that a workload with any of them fails with the reason. By
+   * default all the operations of the target are available.
+   */
+  default ImmutableMap<String, String> getUnsupportedOperations(Benchmark benchmark) {
+    return ImmutableMap.of();
+  }
+}
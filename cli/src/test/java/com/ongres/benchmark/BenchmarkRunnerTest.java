@@ -0,0 +1,54 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class BenchmarkRunnerTest {
+
+  @Test
+  public void closedIterationsAreNotRecorded() throws Exception {
+    final BenchmarkRunner runner = new BenchmarkRunner(new NoopBenchmark());
+    runner.setStage("closed-iterations");
+    runner.run();
+    runner.runReactive().block();
+    runner.close();
+    assertThrows(BenchmarkClosedException.class, runner::run);
+    assertThrows(BenchmarkClosedException.class, () -> runner.runReactive().block());
+    assertEquals(2, MetricsManager.meter(Metric.ITERATIONS, "closed-iterations").getCount());
+    assertEquals(2, MetricsManager.timer(Metric.SERVICE_TIME, "closed-iterations").getCount());
+  }
+
+  @Test
+  public void closedLoopStopsWhenClosed() throws Exception {
+    final BenchmarkRunner runner = new BenchmarkRunner(new NoopBenchmark());
+    final ClosedLoopDriver driver = new ClosedLoopDriver(runner, 8, 8, Long.MAX_VALUE).start();
+    TimeUnit.MILLISECONDS.sleep(100);
+    runner.close();
+    driver.get(10, TimeUnit.SECONDS);
+    driver.getTermination().get(10, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,107 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ongres.benchmark.config.model.Config;
+import com.ongres.benchmark.config.model.KeyDistribution;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyGeneratorTest {
+
+  private static final int ITEMS = 100;
+  private static final int DRAWS = 100_000;
+
+  @Test
+  public void zetaApproximation() {
+    for (double theta : new double[] { 0, 0.5, 0.99 }) {
+      for (int items : new int[] { 1, 2, 1000, 1001, 100_000, 1_000_000 }) {
+        double exact = 0;
+        for (int i = 1; i <= items; i++) {
+          exact += 1 / Math.pow(i, theta);
+        }
+        assertEquals(exact, KeyGenerator.zeta(items, theta), exact * 1e-9,
+            "zeta(" + items + ", " + theta + ")");
+      }
+    }
+  }
+
+  @Test
+  public void zipfian() {
+    final int[] counts = draw(KeyDistribution.ZIPFIAN, ITEMS);
+    assertEquals(1 / KeyGenerator.zeta(ITEMS, 0.99), counts[0] / (double) DRAWS, 0.01);
+    assertTrue(counts[0] > counts[1]);
+    assertTrue(sum(counts, 0, ITEMS / 10) > sum(counts, ITEMS / 10, ITEMS));
+  }
+
+  @Test
+  public void latest() {
+    final int[] counts = draw(KeyDistribution.LATEST, ITEMS);
+    assertEquals(1 / KeyGenerator.zeta(ITEMS, 0.99), counts[ITEMS - 1] / (double) DRAWS, 0.01);
+    assertTrue(counts[ITEMS - 1] > counts[ITEMS - 2]);
+    assertTrue(sum(counts, ITEMS - ITEMS / 10, ITEMS) > sum(counts, 0, ITEMS - ITEMS / 10));
+  }
+
+  @Test
+  public void hotspot() {
+    final int[] counts = draw(KeyDistribution.HOTSPOT, ITEMS);
+    assertEquals(0.8, sum(counts, 0, 20) / (double) DRAWS, 0.01);
+    assertEquals(0.2, sum(counts, 20, ITEMS) / (double) DRAWS, 0.01);
+  }
+
+  @Test
+  public void uniform() {
+    final int[] counts = draw(KeyDistribution.UNIFORM, ITEMS);
+    assertEquals(0.5, sum(counts, 0, ITEMS / 2) / (double) DRAWS, 0.01);
+  }
+
+  @Test
+  public void singleItem() {
+    for (KeyDistribution distribution : KeyDistribution.values()) {
+      assertEquals(DRAWS, draw(distribution, 1)[0], distribution.name());
+    }
+  }
+
+  private int[] draw(KeyDistribution distribution, int items) {
+    final KeyGenerator generator = KeyGenerator.create(distribution, items, new Config());
+    final SplittableRandom random = new SplittableRandom(1);
+    final int[] counts = new int[items];
+    for (int i = 0; i < DRAWS; i++) {
+      final int key = generator.next(random);
+      assertTrue(key >= 0 && key < items, distribution + " key " + key + " out of bounds");
+      counts[key]++;
+    }
+    return counts;
+  }
+
+  private int sum(int[] counts, int from, int to) {
+    int sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += counts[i];
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,99 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ongres.benchmark.config.ConfigUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class LoadProfileTest {
+
+  @Test
+  public void closedLoop() throws IOException {
+    final LoadProfile profile = parse("stages:\n"
+        + "- name: warmup\n"
+        + "  duration: PT10S\n"
+        + "  parallelism: 2\n"
+        + "- duration: PT20S\n"
+        + "  parallelism: 10\n"
+        + "  ramp: true\n");
+    assertFalse(profile.isOpenLoop());
+    assertEquals(2, profile.size());
+    assertEquals("warmup", profile.getStageName(0));
+    assertEquals("stage-1", profile.getStageName(1));
+    assertEquals(0, profile.getStageIndex(seconds(0)));
+    assertEquals(1, profile.getStageIndex(seconds(10)));
+    assertEquals(2, profile.getStageIndex(seconds(30)));
+    assertEquals(2, profile.getLoad(seconds(5)), 0);
+    assertEquals(6, profile.getLoad(seconds(20)), 1e-9);
+    assertEquals(10, profile.getLoad(seconds(40)), 0);
+    assertEquals(10, profile.getMaxLoad(), 0);
+  }
+
+  @Test
+  public void openLoop() throws IOException {
+    final LoadProfile profile = parse("stages:\n"
+        + "- duration: PT10S\n"
+        + "  targetRate: 100\n"
+        + "  ramp: true\n"
+        + "- duration: PT10S\n"
+        + "  targetRate: 50.5\n");
+    assertTrue(profile.isOpenLoop());
+    assertEquals(25, profile.getLoad(seconds(2.5)), 1e-9);
+    assertEquals(50.5, profile.getLoad(seconds(15)), 0);
+    assertEquals(100, profile.getMaxLoad(), 0);
+  }
+
+  @Test
+  public void invalidStages() {
+    assertThrows(IllegalArgumentException.class, () -> parse("stages: []\n"));
+    assertThrows(IllegalArgumentException.class, () -> parse("stages:\n"
+        + "- parallelism: 2\n"));
+    assertThrows(IllegalArgumentException.class, () -> parse("stages:\n"
+        + "- duration: PT10S\n"
+        + "  parallelism: 2\n"
+        + "- duration: PT10S\n"
+        + "  targetRate: 100\n"));
+    assertThrows(IllegalArgumentException.class, () -> parse("stages:\n"
+        + "- duration: PT10S\n"
+        + "  parallelism: -1\n"));
+  }
+
+  private LoadProfile parse(String yaml) throws IOException {
+    return new LoadProfile(ConfigUtils.parseConfig(
+        new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)))
+        .getStagesAsImmutableList());
+  }
+
+  private long seconds(double seconds) {
+    return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+  }
+}
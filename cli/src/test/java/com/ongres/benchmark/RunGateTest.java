@@ -0,0 +1,91 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class RunGateTest {
+
+  private static final int THREADS = 32;
+  private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(10);
+
+  @Test
+  public void closeWithSpinningThreads() throws Exception {
+    final RunGate gate = new RunGate();
+    final AtomicLong iterations = new AtomicLong();
+    final CountDownLatch started = new CountDownLatch(THREADS);
+    final List<Thread> threads = new ArrayList<>();
+    for (int index = 0; index < THREADS; index++) {
+      final Thread thread = new Thread(() -> {
+        started.countDown();
+        while (true) {
+          final int stripe = gate.enter();
+          if (stripe < 0) {
+            return;
+          }
+          iterations.incrementAndGet();
+          gate.exit(stripe);
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+    started.await();
+    TimeUnit.MILLISECONDS.sleep(100);
+    final long start = System.nanoTime();
+    assertTrue(gate.close(DRAIN_TIMEOUT));
+    assertTrue(System.nanoTime() - start < DRAIN_TIMEOUT.toNanos());
+    for (Thread thread : threads) {
+      thread.join(DRAIN_TIMEOUT.toMillis());
+      assertFalse(thread.isAlive());
+    }
+    assertTrue(iterations.get() > 0);
+    assertEquals(0, gate.running());
+    assertEquals(-1, gate.enter());
+  }
+
+  @Test
+  public void closeWaitsForRunningIterations() throws Exception {
+    final RunGate gate = new RunGate();
+    final int stripe = gate.enter();
+    assertTrue(stripe >= 0);
+    assertFalse(gate.close(Duration.ofMillis(50)));
+    assertEquals(1, gate.running());
+    assertEquals(-1, gate.enter());
+    final Thread exit = new Thread(() -> gate.exit(stripe));
+    exit.start();
+    exit.join();
+    assertTrue(gate.close(DRAIN_TIMEOUT));
+    assertEquals(0, gate.running());
+  }
+}
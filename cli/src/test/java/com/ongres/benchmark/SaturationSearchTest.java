@@ -0,0 +1,110 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.ongres.benchmark.config.model.Config;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class SaturationSearchTest {
+
+  @Test
+  public void closedLoopBisection() throws InterruptedException {
+    final SaturationSearch search = create(false, 1, 1000);
+    final List<SaturationSearch.Point> points = search.search(
+        (index, load) -> search.new Point(load, load, 0, 0, load <= 37));
+    assertEquals(ImmutableList.of(1d, 2d, 4d, 8d, 16d, 32d, 64d, 48d, 40d, 36d, 38d, 37d),
+        loads(points));
+    assertEquals(37, SaturationSearch.getKnee(points).get().getLoad(), 0);
+  }
+
+  @Test
+  public void openLoopBisection() throws InterruptedException {
+    final SaturationSearch search = create(true, 100, 1000);
+    final List<SaturationSearch.Point> points = search.search(
+        (index, load) -> search.new Point(load, load, 0, 0, load <= 150));
+    assertEquals(ImmutableList.of(100d, 200d, 150d, 175d, 162.5d, 156.25d), loads(points));
+    assertEquals(150, SaturationSearch.getKnee(points).get().getLoad(), 0);
+  }
+
+  @Test
+  public void stopsAtMaxLoad() throws InterruptedException {
+    final SaturationSearch search = create(false, 1, 10);
+    final List<SaturationSearch.Point> points = search.search(
+        (index, load) -> search.new Point(load, load, 0, 0, true));
+    assertEquals(ImmutableList.of(1d, 2d, 4d, 8d, 10d), loads(points));
+  }
+
+  @Test
+  public void stopsWhenDriverIsDone() throws InterruptedException {
+    final TestLoadDriver driver = new TestLoadDriver();
+    final SaturationSearch search = new SaturationSearch(null, driver, false, 1,
+        config(1000));
+    final List<SaturationSearch.Point> points = search.search((index, load) -> {
+      if (index == 2) {
+        driver.complete(null);
+      }
+      return search.new Point(load, load, 0, 0, true);
+    });
+    assertEquals(ImmutableList.of(1d, 2d, 4d), loads(points));
+  }
+
+  private SaturationSearch create(boolean openLoop, double initialLoad, double maxLoad) {
+    return new SaturationSearch(null, new TestLoadDriver(), openLoop, initialLoad,
+        config(maxLoad));
+  }
+
+  private Config config(double maxLoad) {
+    final Config config = new Config();
+    config.setSearchMaxLoad(maxLoad);
+    return config;
+  }
+
+  private List<Double> loads(List<SaturationSearch.Point> points) {
+    return points.stream()
+        .map(SaturationSearch.Point::getLoad)
+        .collect(Collectors.toList());
+  }
+
+  private static class TestLoadDriver extends CompletableFuture<Void> implements LoadDriver {
+    @Override
+    public void setLoad(double load) {
+    }
+
+    @Override
+    public void stop() {
+      complete(null);
+    }
+
+    @Override
+    public Future<Void> getTermination() {
+      return this;
+    }
+  }
+}
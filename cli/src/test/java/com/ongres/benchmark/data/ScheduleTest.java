@@ -0,0 +1,82 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ScheduleTest {
+
+  private static final Schedule SEED = new Schedule(1, "AAL", "AAR", "2009-01-09",
+      "2009-03-31", "135", "23:58", "01:10+1", "BA8278", "D38", "01:12");
+
+  @Test
+  public void synthesizeFirstCopy() {
+    final Schedule schedule = SEED.synthesize(42, 1);
+    assertEquals(42, schedule.getScheduleId());
+    assertEquals("AAL1", schedule.getFromAirport());
+    assertEquals("AAR1", schedule.getToAirport());
+    assertEquals("2009-01-16", schedule.getValidFrom());
+    assertEquals("2009-04-07", schedule.getValidUntil());
+    assertEquals("246", schedule.getDays());
+    assertEquals("00:03", schedule.getDeparture());
+    assertEquals("01:15", schedule.getArrival());
+    assertEquals("BA18278", schedule.getFlight());
+    assertEquals("D38", schedule.getAircraft());
+    assertEquals("01:12", schedule.getDuration());
+    assertEquals(SEED.getPaymentAmount(), schedule.getPaymentAmount());
+  }
+
+  @Test
+  public void synthesizeWrapsDaysAndRegion() {
+    final Schedule seed = new Schedule(1, "AAL", "AAR", "2009-01-09", null, "7",
+        "10:40", "11:05", "BA", "D38", "00:25");
+    final Schedule schedule = seed.synthesize(2, 37);
+    assertEquals("AAL11", schedule.getFromAirport());
+    assertEquals("2009-09-25", schedule.getValidFrom());
+    assertNull(schedule.getValidUntil());
+    assertEquals("2", schedule.getDays());
+    assertEquals("13:45", schedule.getDeparture());
+    assertEquals("14:10", schedule.getArrival());
+    assertEquals("BA37", schedule.getFlight());
+  }
+
+  @Test
+  public void synthesizeKeepsMissingValues() {
+    final Schedule seed = new Schedule(1, "AAL", "AAR", null, null, null,
+        null, null, null, "D38", null);
+    final Schedule schedule = seed.synthesize(2, 7);
+    assertNull(schedule.getValidFrom());
+    assertNull(schedule.getDays());
+    assertEquals(Schedule.EVERY_DAY, schedule.getDaysMask());
+    assertNull(schedule.getDeparture());
+    assertNull(schedule.getArrival());
+    assertNull(schedule.getFlight());
+  }
+
+  @Test
+  public void synthesizeRequiresCopy() {
+    assertThrows(IllegalArgumentException.class, () -> SEED.synthesize(2, 0));
+  }
+}
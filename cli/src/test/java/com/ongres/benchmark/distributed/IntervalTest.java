@@ -0,0 +1,97 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.distributed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+public class IntervalTest {
+
+  @Test
+  public void writeAndRead() throws IOException {
+    final IntervalRecorder recorder = new IntervalRecorder();
+    for (long value = 1; value <= 1000; value++) {
+      recorder.recordTimes(value * 1000, value * 500);
+      recorder.recordIteration();
+    }
+    recorder.recordRetry();
+    final Interval interval = recorder.nextInterval();
+    final Interval read = writeAndRead(interval);
+    assertEquals(interval.getStartTimestamp(), read.getStartTimestamp());
+    assertEquals(interval.getEndTimestamp(), read.getEndTimestamp());
+    assertEquals(1000, read.getIterations());
+    assertEquals(1, read.getRetries());
+    assertEquals(interval.getResponseTime(), read.getResponseTime());
+    assertEquals(interval.getServiceTime(), read.getServiceTime());
+  }
+
+  @Test
+  public void nextIntervalResets() {
+    final IntervalRecorder recorder = new IntervalRecorder();
+    recorder.recordTimes(1000, 1000);
+    recorder.recordIteration();
+    final Interval first = recorder.nextInterval();
+    final Interval second = recorder.nextInterval();
+    assertEquals(first.getEndTimestamp(), second.getStartTimestamp());
+    assertEquals(0, second.getIterations());
+    assertEquals(0, second.getResponseTime().getTotalCount());
+  }
+
+  @Test
+  public void mergeIsExact() throws IOException {
+    final IntervalRecorder first = new IntervalRecorder();
+    final IntervalRecorder second = new IntervalRecorder();
+    final Histogram expected = new Histogram(3);
+    for (long value = 1; value <= 10_000; value++) {
+      final long responseTime = value * value;
+      (value % 3 == 0 ? first : second).recordTimes(responseTime, responseTime);
+      expected.recordValue(responseTime);
+    }
+    final Histogram merged = new Histogram(3);
+    merged.add(writeAndRead(first.nextInterval()).getResponseTime());
+    merged.add(writeAndRead(second.nextInterval()).getResponseTime());
+    assertEquals(expected.getTotalCount(), merged.getTotalCount());
+    assertEquals(expected.getMaxValue(), merged.getMaxValue());
+    for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+      assertEquals(expected.getValueAtPercentile(percentile),
+          merged.getValueAtPercentile(percentile));
+    }
+  }
+
+  private Interval writeAndRead(Interval interval) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      interval.write(out);
+    }
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      return Interval.read(in);
+    }
+  }
+}
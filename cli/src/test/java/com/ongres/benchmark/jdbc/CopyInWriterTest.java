@@ -0,0 +1,144 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.ongres.benchmark.config.model.CopyFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+
+public class CopyInWriterTest {
+
+  @Test
+  public void binaryRow() throws Exception {
+    final CapturedCopyIn copyIn = new CapturedCopyIn();
+    try (CopyInWriter writer = CopyInWriter.create(copyIn, CopyFormat.BINARY)) {
+      writeRow(writer);
+      writer.finish();
+      assertEquals(copyIn.bytes.size(), writer.getBytesWritten());
+    }
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(expected);
+    out.write("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1));
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeShort(7);
+    out.writeInt(1);
+    out.write('a');
+    out.writeInt(4);
+    out.writeInt(1);
+    out.writeInt(8);
+    out.writeLong(2);
+    out.writeInt(4);
+    out.writeInt(1);
+    out.writeInt(8);
+    out.writeLong(1_000_000);
+    out.writeInt(8);
+    out.writeLong(300);
+    out.writeInt(-1);
+    out.writeShort(-1);
+    assertArrayEquals(expected.toByteArray(), copyIn.bytes.toByteArray());
+  }
+
+  @Test
+  public void csvRow() throws Exception {
+    final CapturedCopyIn copyIn = new CapturedCopyIn();
+    try (CopyInWriter writer = CopyInWriter.create(copyIn, CopyFormat.CSV)) {
+      writeRow(writer);
+      writer.value("b;\"c\"").endRow();
+      writer.finish();
+    }
+    assertEquals("a;1;2;2000-01-02;2000-01-01 00:00:01.0;3;\\N\n\"b;\"\"c\"\"\"\n",
+        new String(copyIn.bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private void writeRow(CopyInWriter writer) throws Exception {
+    writer.value("a")
+        .value(Integer.valueOf(1))
+        .value(Long.valueOf(2))
+        .value(LocalDate.of(2000, 1, 2))
+        .value(Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0, 1)))
+        .money(3)
+        .value(null)
+        .endRow();
+  }
+
+  private static class CapturedCopyIn implements CopyIn {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private boolean active = true;
+
+    @Override
+    public void writeToCopy(byte[] buf, int off, int siz) {
+      bytes.write(buf, off, siz);
+    }
+
+    @Override
+    public void flushCopy() {
+    }
+
+    @Override
+    public long endCopy() {
+      active = false;
+      return 0;
+    }
+
+    @Override
+    public int getFieldCount() {
+      return 0;
+    }
+
+    @Override
+    public int getFormat() {
+      return 0;
+    }
+
+    @Override
+    public int getFieldFormat(int field) {
+      return 0;
+    }
+
+    @Override
+    public boolean isActive() {
+      return active;
+    }
+
+    @Override
+    public void cancelCopy() {
+      active = false;
+    }
+
+    @Override
+    public long getHandledRowCount() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*-
+ *  § 
+ * benchmark: command-line
+ *    
+ * Copyright (C) 2019 OnGres, Inc.
+ *    
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * § §
+ */
+
+package com.ongres.benchmark.workload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class WorkloadTest {
+
+  private static final int DRAWS = 100_000;
+
+  private static final Map<String, Operation> AVAILABLE = ImmutableMap.of(
+      "search", () -> { },
+      "book", () -> { },
+      "cancel", () -> { });
+
+  @Test
+  public void nextFollowsWeights() {
+    final Workload workload = Workload.create("test", AVAILABLE,
+        ImmutableMap.of("search", 3d, "book", 1d, "cancel", 0d));
+    assertEquals(2, workload.getOperations().size());
+    int searches = 0;
+    for (int i = 0; i < DRAWS; i++) {
+      final String name = workload.next().getName();
+      if (name.equals("search")) {
+        searches++;
+      } else {
+        assertEquals("book", name);
+      }
+    }
+    assertEquals(0.75, searches / (double) DRAWS, 0.01);
+  }
+
+  @Test
+  public void nextWithSingleOperation() {
+    final Workload workload = Workload.create("test", AVAILABLE,
+        ImmutableMap.of("book", 0.5d));
+    for (int i = 0; i < 100; i++) {
+      assertEquals("book", workload.next().getName());
+    }
+  }
+
+  @Test
+  public void invalidMix() {
+    assertThrows(IllegalArgumentException.class, () -> Workload.create("test", AVAILABLE,
+        ImmutableMap.of("book", -1d)));
+    assertThrows(IllegalArgumentException.class, () -> Workload.create("test", AVAILABLE,
+        ImmutableMap.of("unknown", 1d)));
+    assertThrows(IllegalArgumentException.class, () -> Workload.create("test", AVAILABLE,
+        ImmutableMap.of("book", 0d)));
+  }
+}